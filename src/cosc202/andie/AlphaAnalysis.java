@@ -0,0 +1,179 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Works out whether an image has any pixels that are not fully opaque.
+ * </p>
+ *
+ * <p>
+ * Exporting asks this of every image it writes, and the file menu asks before offering
+ * to save as a format without transparency. An image whose colour model has no alpha
+ * is answered straight away. Otherwise the alpha samples are scanned in bands of rows
+ * on the fork-join pool, and every band stops as soon as any of them finds a
+ * transparent pixel, so most images with transparency are answered after a few rows.
+ * </p>
+ *
+ * <p>
+ * Answers are cached for each image. {@link EditableImage} never changes an image
+ * once an operation has produced it, so an image is a version of the picture: asking
+ * again about the same one costs a map lookup, and any edit gives a new image to scan.
+ * Images that are changed in place afterwards must be {@link #forget forgotten}.
+ * The cache holds images weakly, so it does not keep them alive.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class AlphaAnalysis {
+
+    /** Images with fewer pixels than this are scanned on the calling thread. */
+    private static final int PARALLEL_PIXELS = 1 << 16;
+
+    /** The number of rows in each band scanned in parallel. */
+    private static final int BAND_HEIGHT = 64;
+
+    /** The answers so far, by image identity. */
+    private static final Map<BufferedImage, Boolean> CACHE =
+            Collections.synchronizedMap(new WeakHashMap<BufferedImage, Boolean>());
+
+    private AlphaAnalysis() {
+    }
+
+    /**
+     * <p>
+     * Check if an image has any pixels that are not fully opaque.
+     * </p>
+     *
+     * @param image The image to check.
+     * @return True if some pixel is even partly transparent.
+     */
+    public static boolean hasAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        Boolean cached = CACHE.get(image);
+        if (cached != null) {
+            return cached;
+        }
+        boolean alpha = scan(image);
+        CACHE.put(image, alpha);
+        return alpha;
+    }
+
+    /**
+     * <p>
+     * Forget the cached answer for an image, for when it has been changed in place.
+     * </p>
+     *
+     * @param image The image that has changed.
+     */
+    public static void forget(BufferedImage image) {
+        CACHE.remove(image);
+    }
+
+    /**
+     * Looks at the pixels of an image for one that is not fully opaque.
+     *
+     * @param image the image, whose colour model has alpha
+     * @return whether one was found
+     */
+    private static boolean scan(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Rows rows = rows(image);
+        if ((long) width * height < PARALLEL_PIXELS) {
+            return rows.transparent(0, height, new AtomicBoolean());
+        }
+        AtomicBoolean found = new AtomicBoolean();
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        return IntStream.range(0, bands).parallel()
+                .anyMatch(band -> rows.transparent(band * BAND_HEIGHT, Math.min(height, (band + 1) * BAND_HEIGHT), found));
+    }
+
+    /** Scans a range of rows of one image. */
+    private interface Rows {
+        /**
+         * Checks rows y0 up to y1, giving up once another band has found something.
+         *
+         * @param y0    the first row
+         * @param y1    the row after the last
+         * @param found set when any band finds a transparent pixel
+         * @return whether these rows have a transparent pixel
+         */
+        boolean transparent(int y0, int y1, AtomicBoolean found);
+    }
+
+    /**
+     * Picks the quickest way of reading an image's alpha.
+     *
+     * @param image the image
+     * @return a scanner for its rows
+     */
+    private static Rows rows(BufferedImage image) {
+        int width = image.getWidth();
+        int[] data = PixelArrays.data(image);
+        if (data != null && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            // packed ARGB, AND each row together and check the alpha of the result
+            return (y0, y1, found) -> {
+                for (int y = y0; y < y1 && !found.get(); y++) {
+                    int all = 0xFFFFFFFF;
+                    for (int i = y * width, end = i + width; i < end; i++) {
+                        all &= data[i];
+                    }
+                    if (all >>> 24 != 0xFF) {
+                        found.set(true);
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+        ColorModel cm = image.getColorModel();
+        WritableRaster raster = image.getRaster();
+        if ((cm instanceof DirectColorModel || cm instanceof ComponentColorModel)
+                && raster.getNumBands() == cm.getNumComponents()) {
+            // the alpha samples are the last band, whatever the layout
+            int band = cm.getNumComponents() - 1;
+            int opaque = (1 << cm.getComponentSize(band)) - 1;
+            return (y0, y1, found) -> {
+                int[] samples = new int[width];
+                for (int y = y0; y < y1 && !found.get(); y++) {
+                    raster.getSamples(0, y, width, 1, band, samples);
+                    for (int sample : samples) {
+                        if (sample != opaque) {
+                            found.set(true);
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            };
+        }
+        // palettes and anything else, through the accessor
+        PixelAccessor pixels = PixelAccessor.of(image);
+        return (y0, y1, found) -> {
+            int[] argb = new int[width];
+            for (int y = y0; y < y1 && !found.get(); y++) {
+                pixels.getRow(0, y, width, argb, 0);
+                for (int value : argb) {
+                    if (value >>> 24 != 0xFF) {
+                        found.set(true);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        };
+    }
+}
@@ -2,6 +2,7 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.swing.*;
 
@@ -136,8 +137,9 @@ public class Andie {
      * @see Toolbar
      */
     public static void setToolbar() {
-        // Check if there is a image 
-        boolean enableButtons = ImageAction.getTarget().getImage().getCurrentImage() == null ? false : true;
+        // Check if there is a image, and it is not still being read
+        EditableImage image = ImageAction.getTarget().getImage();
+        boolean enableButtons = image.hasImage() && !image.isLoading();
 
         // Create a new toolbar if it doesn't exist, or update the existing toolbar
         if (toolbar == null) {
@@ -158,10 +160,20 @@ public class Andie {
      * As a result, this is essentially a wrapper around {@code createAndShowGUI()}.
      * </p>
      * 
-     * @param args Command line arguments, not currently used
+     * <p>
+     * Started with {@code --batch}, no GUI is shown and the remaining arguments are
+     * passed to {@link Batch#main}, to apply a macro to a directory of images.
+     * </p>
+     * 
+     * @param args Command line arguments, only used for {@code --batch}
      * @see #createAndShowGUI()
+     * @see Batch
      */
     public static void main(String[] args){
+        if (args != null && args.length > 0 && args[0].equals("--batch")) {
+            Batch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
                 try {
@@ -0,0 +1,248 @@
+package cosc202.andie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.imageio.ImageIO;
+
+/**
+ * <p>
+ * Applies a macro to every image in a directory, without the user interface.
+ * </p>
+ *
+ * <p>
+ * A macro recorded with {@link EditableImage#record()} and saved as an ops file can
+ * otherwise only be applied to one open image at a time. This runs it over a whole
+ * directory instead:
+ * </p>
+ *
+ * <pre>
+ * java cosc202.andie.Batch macro.ops input-dir output-dir [--threads n] [--format ext]
+ *     [--decoders n] [--encoders n] [--queue n]
+ * </pre>
+ *
+ * <p>
+ * (or {@code java cosc202.andie.Andie --batch ...}). Each readable image in the input
+ * directory is decoded, has the macro applied and is written to the output directory
+ * under the same name, in the same format unless {@code --format} is given. Decoding,
+ * applying and encoding are separate stages with their own thread counts, joined by
+ * queues of a fixed size so only so many images are held in memory at once (see
+ * {@link BatchPipeline}).
+ * A line with the decode, apply and encode times is printed for each image, and
+ * failures are reported without stopping the rest. The exit status is 1 if any image
+ * failed.
+ * </p>
+ *
+ * <p>
+ * Nothing here opens a window or a dialog, and Java is put in headless mode, so it
+ * can run on a server with no display.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class Batch {
+
+    private Batch() {
+    }
+
+    /**
+     * <p>
+     * The outcome of processing one image.
+     * </p>
+     */
+    public static final class Result {
+        /** The image read. */
+        public final File input;
+        /** The image written, or where it would have been. */
+        public final File output;
+        /** Time spent reading and decoding the image, in nanoseconds. */
+        public final long decodeNanos;
+        /** Time spent applying the macro, in nanoseconds. */
+        public final long applyNanos;
+        /** Time spent encoding and writing the image, in nanoseconds. */
+        public final long encodeNanos;
+        /** Why the image failed, or null if it succeeded. */
+        public final Exception error;
+
+        Result(File input, File output, long decodeNanos, long applyNanos, long encodeNanos, Exception error) {
+            this.input = input;
+            this.output = output;
+            this.decodeNanos = decodeNanos;
+            this.applyNanos = applyNanos;
+            this.encodeNanos = encodeNanos;
+            this.error = error;
+        }
+
+        /**
+         * Whether the image was processed and written.
+         *
+         * @return True if there was no error
+         */
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * <p>
+     * Run a macro over a directory from the command line.
+     * </p>
+     *
+     * @param args The ops file, input directory and output directory, followed by the
+     *             optional {@code --threads n}, {@code --decoders n}, {@code --encoders n},
+     *             {@code --queue n} and {@code --format ext}
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        List<String> positional = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int decoders = 0;
+        int encoders = 0;
+        int queue = 0;
+        String format = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--decoders" -> decoders = Integer.parseInt(args[++i]);
+                    case "--encoders" -> encoders = Integer.parseInt(args[++i]);
+                    case "--queue" -> queue = Integer.parseInt(args[++i]);
+                    case "--format" -> format = args[++i].toLowerCase(Locale.ROOT);
+                    default -> positional.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            positional.clear();
+        }
+        // anything not given is sized from the transform threads, as run() does
+        decoders = decoders > 0 ? decoders : Math.max(1, threads / 2);
+        encoders = encoders > 0 ? encoders : Math.max(1, threads / 2);
+        queue = queue > 0 ? queue : threads;
+        if (positional.size() != 3 || threads < 1) {
+            System.err.println("usage: java cosc202.andie.Batch macro.ops input-dir output-dir"
+                    + " [--threads n] [--decoders n] [--encoders n] [--queue n] [--format ext]");
+            System.exit(2);
+        }
+
+        List<ImageOperation> macro;
+        try {
+            macro = OpsFile.read(positional.get(0));
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Could not read macro " + positional.get(0) + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        File inputDir = new File(positional.get(1));
+        File outputDir = new File(positional.get(2));
+        if (!inputDir.isDirectory()) {
+            System.err.println("Not a directory: " + inputDir);
+            System.exit(2);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Could not create " + outputDir);
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        List<Result> results;
+        try {
+            results = new BatchPipeline(macro, outputDir, format, decoders, threads, encoders, queue, System.out)
+                    .run(listImages(inputDir));
+        } catch (InterruptedException e) {
+            System.exit(1);
+            return;
+        }
+        long failed = results.stream().filter(result -> !result.succeeded()).count();
+        System.out.printf(Locale.ROOT, "%d images, %d failed, %.1f s%n",
+                results.size(), failed, (System.nanoTime() - start) / 1e9);
+        // time spent in each stage, to see which one needs more threads
+        System.out.printf(Locale.ROOT, "decode %.1f s, apply %.1f s, encode %.1f s%n",
+                results.stream().mapToLong(result -> result.decodeNanos).sum() / 1e9,
+                results.stream().mapToLong(result -> result.applyNanos).sum() / 1e9,
+                results.stream().mapToLong(result -> result.encodeNanos).sum() / 1e9);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * <p>
+     * Apply a macro to every image in a directory.
+     * </p>
+     *
+     * <p>
+     * The images go through a {@link BatchPipeline} with {@code threads} threads applying
+     * the macro, half as many each decoding and encoding, and room for {@code threads}
+     * images between stages. A line is printed to {@code log} as each image finishes, so
+     * lines are in the order images finish.
+     * </p>
+     *
+     * @param macro     The operations to apply, in order
+     * @param inputDir  The directory of images to read
+     * @param outputDir The directory to write the results to, which must exist
+     * @param format    The format to write, or null to use each input's own
+     * @param threads   The number of images to apply the macro to at once
+     * @param log       Where to print the timings and failures, may be null
+     * @return The result for each image, in the order of their names, or empty if interrupted
+     */
+    public static List<Result> run(List<? extends ImageOperation> macro, File inputDir, File outputDir,
+            String format, int threads, PrintStream log) {
+        int codecs = Math.max(1, threads / 2);
+        BatchPipeline pipeline = new BatchPipeline(macro, outputDir, format, codecs, threads, codecs, threads, log);
+        try {
+            return pipeline.run(listImages(inputDir));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<Result>();
+        }
+    }
+
+    /**
+     * Finds the files in a directory with an extension ImageIO can read.
+     *
+     * @param dir the directory
+     * @return the images, sorted by name
+     */
+    private static List<File> listImages(File dir) {
+        Set<String> suffixes = new HashSet<String>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        File[] files = dir.listFiles(file -> {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            return file.isFile() && dot > 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        });
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Prints the line for one finished image.
+     *
+     * @param result the finished image
+     * @param log    where to print
+     */
+    static void report(Result result, PrintStream log) {
+        if (result.succeeded()) {
+            log.printf(Locale.ROOT, "%-40s decode %8.1f ms  apply %8.1f ms  encode %8.1f ms%n",
+                    result.input.getName(), result.decodeNanos / 1e6, result.applyNanos / 1e6, result.encodeNanos / 1e6);
+        } else {
+            log.printf(Locale.ROOT, "%-40s FAILED %s%n", result.input.getName(), result.error);
+        }
+    }
+}
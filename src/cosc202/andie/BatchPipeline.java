@@ -0,0 +1,364 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cosc202.andie.actions.filter.Revert;
+
+/**
+ * <p>
+ * Decodes, transforms and encodes images in three stages, each on its own threads.
+ * </p>
+ *
+ * <p>
+ * The three steps of a batch job are limited by different things: decoding and
+ * encoding by the disk and the codec, applying operations by the processor. If one
+ * thread does all three for an image, processors sit idle while it waits on a file and
+ * the encoder waits while it filters. Here each stage has its own number of threads,
+ * and stages are joined by bounded queues. A stage that gets ahead blocks once the
+ * queue after it is full, so the number of decoded images in memory is capped at the
+ * number of threads plus the two queue capacities, however many files there are.
+ * </p>
+ *
+ * <p>
+ * Decoding converts to the working format (see {@link PixelArrays#toWorking}),
+ * transforming applies a planned macro (see {@link OperationPlanner}), and encoding
+ * uses {@link EditableImage#toWritable}, the same steps as opening, applying and
+ * exporting in the editor. A file that fails in any stage is reported and skipped, and the rest
+ * carry on. Inputs that would be written over each other are rejected before starting.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see Batch
+ * @author agent
+ * @version 1.0
+ */
+public final class BatchPipeline {
+
+    /** An image on its way through the stages. */
+    private static final class Job {
+        final int index;
+        final File input;
+        final File output;
+        final String extension;
+        BufferedImage image;
+        /** The type the image was read as. */
+        int type;
+        long decodeNanos;
+        long applyNanos;
+
+        Job(int index, File input, File output, String extension) {
+            this.index = index;
+            this.input = input;
+            this.output = output;
+            this.extension = extension;
+        }
+    }
+
+    /** Put on a queue to tell the next stage there is nothing more to come. */
+    private static final Job END = new Job(-1, null, null, null);
+
+    private final List<ImageOperation> plan;
+    private final File outputDir;
+    private final String format;
+    private final int decoders;
+    private final int transformers;
+    private final int encoders;
+    private final int capacity;
+    private final PrintStream log;
+
+    /**
+     * <p>
+     * Create a pipeline for a macro.
+     * </p>
+     *
+     * <p>
+     * A {@link Revert} in the macro goes back to the image as it was read, so only the
+     * operations after the last one are applied. It is not applied itself, as it
+     * looks for the original in the editor, which a batch run does not have.
+     * </p>
+     *
+     * @param macro        The operations to apply, in order
+     * @param outputDir    The directory to write the results to, which must exist
+     * @param format       The format to write, or null to use each input's own
+     * @param decoders     The number of threads reading images
+     * @param transformers The number of threads applying the macro
+     * @param encoders     The number of threads writing images
+     * @param capacity     The number of images each queue between stages can hold
+     * @param log          Where to print the timings and failures, may be null
+     */
+    public BatchPipeline(List<? extends ImageOperation> macro, File outputDir, String format,
+            int decoders, int transformers, int encoders, int capacity, PrintStream log) {
+        if (decoders < 1 || transformers < 1 || encoders < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Every stage needs at least one thread and queue slot");
+        }
+        int start = 0;
+        for (int i = 0; i < macro.size(); i++) {
+            if (macro.get(i) instanceof Revert) {
+                start = i + 1;
+            }
+        }
+        this.plan = OperationPlanner.plan(macro.subList(start, macro.size()));
+        this.outputDir = outputDir;
+        this.format = format;
+        this.decoders = decoders;
+        this.transformers = transformers;
+        this.encoders = encoders;
+        this.capacity = capacity;
+        this.log = log;
+    }
+
+    /**
+     * <p>
+     * Process a list of images, returning once all of them are written or have failed.
+     * </p>
+     *
+     * <p>
+     * If a stage thread hits an error that is not an exception, such as running out of
+     * memory, every stage is stopped and the error is thrown from here.
+     * </p>
+     *
+     * @param inputs The images to read
+     * @return The result for each image, in the same order as the inputs
+     * @throws InterruptedException If interrupted while waiting, which stops every stage
+     */
+    public List<Batch.Result> run(List<File> inputs) throws InterruptedException {
+        Batch.Result[] results = new Batch.Result[inputs.size()];
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<Job>(capacity);
+        BlockingQueue<Job> transformed = new ArrayBlockingQueue<Job>(capacity);
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        Job[] jobs = jobs(inputs, results);
+
+        // the last thread to finish a stage tells every thread of the next stage to stop,
+        // if a stage fails instead every thread is interrupted
+        AtomicInteger decoding = new AtomicInteger(decoders);
+        AtomicInteger transforming = new AtomicInteger(transformers);
+        for (int i = 0; i < decoders; i++) {
+            threads.add(stage("andie-decode-" + i, failure, threads, () -> {
+                for (int index = next.getAndIncrement(); index < inputs.size(); index = next.getAndIncrement()) {
+                    Job job = jobs[index];
+                    if (job == null) {
+                        // already reported, see jobs()
+                        continue;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        job.image = FlightEvents.read(job.input);
+                        if (job.image == null) {
+                            throw new IOException("not a readable image");
+                        }
+                        job.type = job.image.getType();
+                        job.image = PixelArrays.toWorking(job.image);
+                        job.decodeNanos = System.nanoTime() - start;
+                    } catch (Exception e) {
+                        finish(results, job, 0, e);
+                        continue;
+                    }
+                    decoded.put(job);
+                }
+                if (decoding.decrementAndGet() == 0) {
+                    end(decoded, transformers);
+                }
+            }));
+        }
+        for (int i = 0; i < transformers; i++) {
+            threads.add(stage("andie-transform-" + i, failure, threads, () -> {
+                for (Job job = decoded.take(); job != END; job = decoded.take()) {
+                    try {
+                        long start = System.nanoTime();
+                        for (ImageOperation step : plan) {
+                            job.image = FlightEvents.apply(step, job.image);
+                        }
+                        job.applyNanos = System.nanoTime() - start;
+                    } catch (Exception e) {
+                        finish(results, job, 0, e);
+                        continue;
+                    }
+                    transformed.put(job);
+                }
+                if (transforming.decrementAndGet() == 0) {
+                    end(transformed, encoders);
+                }
+            }));
+        }
+        for (int i = 0; i < encoders; i++) {
+            threads.add(stage("andie-encode-" + i, failure, threads, () -> {
+                for (Job job = transformed.take(); job != END; job = transformed.take()) {
+                    try {
+                        long start = System.nanoTime();
+                        if (!FlightEvents.write(EditableImage.toWritable(job.image, job.extension, job.type), job.extension, job.output)) {
+                            throw new IOException("no writer for " + job.extension);
+                        }
+                        finish(results, job, System.nanoTime() - start, null);
+                    } catch (Exception e) {
+                        finish(results, job, 0, e);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return Arrays.asList(results);
+    }
+
+    /** A stage's work, which may be interrupted while waiting on a queue. */
+    private interface Work {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * Makes a thread for a stage, which stops every stage if it fails.
+     *
+     * @param name    the thread name
+     * @param failure where the first failure is kept
+     * @param threads every thread of the pipeline
+     * @param work    what the thread does
+     * @return the thread, not started
+     */
+    private static Thread stage(String name, AtomicReference<Throwable> failure, List<Thread> threads, Work work) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (failure.get() != null) {
+                    // started after another stage failed, too late to be interrupted
+                    return;
+                }
+                work.run();
+            } catch (InterruptedException e) {
+                // stopped because another stage failed, or run() was interrupted
+            } catch (Throwable t) {
+                if (failure.compareAndSet(null, t)) {
+                    for (Thread other : threads) {
+                        other.interrupt();
+                    }
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Works out where every input will be written, before anything is read.
+     *
+     * <p>
+     * An input is rejected, and reported straight away, if it has no extension to pick
+     * the output format by, or if it would be written to the same file as an earlier
+     * input, for example <code>a.png</code> and <code>a.jpg</code> both converted to png.
+     * Otherwise they would overwrite each other and both be reported as written.
+     * </p>
+     *
+     * @param inputs  the input files
+     * @param results where rejected inputs are recorded
+     * @return a job for each input, null for the rejected ones
+     */
+    private Job[] jobs(List<File> inputs, Batch.Result[] results) {
+        Job[] jobs = new Job[inputs.size()];
+        Map<String, File> outputs = new HashMap<String, File>();
+        for (int index = 0; index < jobs.length; index++) {
+            Job job = job(index, inputs.get(index));
+            IOException problem = null;
+            if (job.extension.isEmpty()) {
+                problem = new IOException("no extension to choose the output format by");
+            } else {
+                // ignoring case, as on case-insensitive file systems these would clash too
+                String key = job.output.getAbsoluteFile().toPath().normalize().toString().toLowerCase(Locale.ROOT);
+                File earlier = outputs.putIfAbsent(key, job.input);
+                if (earlier != null) {
+                    problem = new IOException("would overwrite the output of " + earlier.getName());
+                }
+            }
+            if (problem != null) {
+                finish(results, job, 0, problem);
+            } else {
+                jobs[index] = job;
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Works out where an input will be written.
+     *
+     * @param index the input's position in the list
+     * @param input the input file
+     * @return a job for the input, with an empty extension if there is no format and the
+     *         input has none
+     */
+    private Job job(int index, File input) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        String own = dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        String extension = format != null ? format : own;
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new Job(index, input, new File(outputDir, base + "." + extension), extension);
+    }
+
+    /**
+     * Records and reports an image that has finished, one way or the other.
+     *
+     * @param results     where results are kept
+     * @param job         the finished image
+     * @param encodeNanos the time spent encoding
+     * @param error       why it failed, or null
+     */
+    private void finish(Batch.Result[] results, Job job, long encodeNanos, Exception error) {
+        Batch.Result result = new Batch.Result(job.input, job.output, job.decodeNanos, job.applyNanos, encodeNanos, error);
+        // release the pixels as soon as the image is done with
+        job.image = null;
+        synchronized (results) {
+            results[job.index] = result;
+        }
+        if (log != null) {
+            Batch.report(result, log);
+        }
+    }
+
+    /**
+     * Tells every thread of a stage that there is nothing more to come.
+     *
+     * @param queue   the queue the stage takes from
+     * @param threads the number of threads in the stage
+     * @throws InterruptedException if interrupted while the queue is full
+     */
+    private static void end(BlockingQueue<Job> queue, int threads) throws InterruptedException {
+        for (int i = 0; i < threads; i++) {
+            queue.put(END);
+        }
+    }
+}
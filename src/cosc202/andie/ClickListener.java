@@ -107,13 +107,12 @@ public class ClickListener implements MouseListener, MouseMotionListener {
      * @param e The mouse event.
      */
     public void mousePressed(MouseEvent e) {
-        if (!active)
+        // nothing to draw on until an image being opened has been read
+        if (!active || target.getImage().isLoading())
             return;
         setStart(e.getPoint());
         setEnd(e.getPoint());
-        target.getImage().applyTemp(operation);
-        target.repaint();
-        target.getParent().revalidate();
+        preview();
     }
 
     /**
@@ -122,7 +121,8 @@ public class ClickListener implements MouseListener, MouseMotionListener {
      * @param e The mouse event.
      */
     public void mouseReleased(MouseEvent e) {
-        if (!active)
+        // nothing to draw on until an image being opened has been read
+        if (!active || target.getImage().isLoading())
             return;
         setEnd(e.getPoint());
         target.getImage().apply(operationFinal);
@@ -162,12 +162,31 @@ public class ClickListener implements MouseListener, MouseMotionListener {
      * @param e The mouse event.
      */
     public void mouseDragged(MouseEvent e) {
-        if (!active)
+        // nothing to draw on until an image being opened has been read
+        if (!active || target.getImage().isLoading())
             return;
         setEnd(e.getPoint());
+        preview();
+    }
+
+    /**
+     * Shows the live feedback for the current selection, recording how long it takes as a
+     * {@link FlightEvents.DragPreviewEvent}.
+     */
+    private void preview() {
+        FlightEvents.DragPreviewEvent event = new FlightEvents.DragPreviewEvent();
+        event.begin();
         target.getImage().applyTemp(operation);
         target.repaint();
         target.getParent().revalidate();
+        if (event.shouldCommit()) {
+            event.operation = operation.getClass().getName();
+            event.x = Math.min(operation.getX1(), operation.getX2());
+            event.y = Math.min(operation.getY1(), operation.getY2());
+            event.width = Math.abs(operation.getX2() - operation.getX1());
+            event.height = Math.abs(operation.getY2() - operation.getY1());
+            event.commit();
+        }
     }
 
     /**
@@ -3,10 +3,21 @@ package cosc202.andie;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.prefs.Preferences;
 import java.io.*;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.RenderingHints;
 import java.awt.image.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
 
 /**
  * <p>
@@ -33,6 +44,40 @@ import javax.imageio.*;
  * </p>
  * 
  * <p>
+ * Intermediate images are kept in a {@link SnapshotCache} limited by memory, so
+ * undoing or redoing only replays the operations after the nearest kept image
+ * rather than the whole stack. The budget and checkpoint interval can be changed
+ * with the <code>undo_budget_mb</code> and <code>undo_checkpoint_interval</code>
+ * preferences.
+ * </p>
+ * 
+ * <p>
+ * By default operations are applied lazily. Applying, undoing, redoing and importing a
+ * macro only change the stack of operations, and the queued operations are rendered
+ * together, planned by the {@link OperationPlanner}, when the pixels are next needed:
+ * when the panel paints, on export, or by {@link getCurrentImage}. Several colour
+ * operations applied in a row are then done in a single pass, and the images between
+ * them are never made. The <code>lazy_apply</code> preference turns this off. If an
+ * operation fails when it is rendered, it and any queued after it are dropped and the
+ * error is shown, rather than failing every time the panel paints.
+ * </p>
+ * 
+ * <p>
+ * Images are converted to packed ARGB ({@link PixelArrays#toWorking}) when they are
+ * opened, whatever ImageIO read them as, so operations only ever see that one layout.
+ * Exporting converts back to the layout the file was read as where nothing is lost.
+ * Very large images can be opened with {@link openProgressive}, which reads the whole
+ * image in the background and shows a smaller copy meanwhile where one is cheap to read.
+ * </p>
+ * 
+ * <p>
+ * Applying, previewing, undoing, redoing, refreshing, rendering, opening and exporting are timed
+ * by {@link OperationMetrics}, which can be read over JMX. Previews rendered in the
+ * background by {@link applyTempAsync} are timed as <code>preview</code>, and those
+ * rendered straight away by {@link applyTemp} as <code>applyTemp</code>.
+ * </p>
+ * 
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA
  * 4.0</a>
  * </p>
@@ -46,20 +91,76 @@ public class EditableImage {
 
     /** The original image. This should never be altered by ANDIE. */
     private BufferedImage original;
+    /** The type ImageIO read the original as, restored where possible when writing. */
+    private int originalType;
+    /** The whole image being read in the background by {@link openProgressive}, or null. */
+    private Future<Decoded> loading;
+    /** The file being read in the background. */
+    private String loadingFilename;
+    /** Called once the image being read in the background is open. */
+    private Runnable loadingReady;
+    /** The smaller copy shown while {@link loading}, or null until it has been read. */
+    private BufferedImage loadingPreview;
+    /** The size of the image being read in the background. */
+    private int loadingWidth, loadingHeight;
+    /** When the image file was last modified as of opening it, to tell if it has been written since. */
+    private long imageModified;
     /**
-     * The current image, the result of applying {@link ops} to {@link original}.
+     * The current image, the result of applying the first {@link rendered} of the
+     * {@link ops} to {@link original}.
      */
     private BufferedImage current;
+    /** The number of {@link ops} applied to {@link current}, any after it are still queued. */
+    private int rendered;
+    /** Whether operations are queued until the image is needed, rather than applied straight away. */
+    private boolean lazy;
     
     // a temporary buffered image for when dealing with visual changes
     private BufferedImage tempStore;
     private boolean editing;
+    /** Renders previews off the event thread, see {@link applyTempAsync}. */
+    private PreviewExecutor previews;
+    /** A preview rendered on a smaller copy of the image, shown instead of {@link current}. */
+    private BufferedImage proxyPreview;
+    /** The image the cached {@link proxy} was made from. */
+    private BufferedImage proxySource;
+    /** A smaller copy of {@link proxySource} to render previews on. */
+    private BufferedImage proxy;
+    /** Previews are rendered on a smaller copy when zoomed out below this. */
+    private static final double PROXY_THRESHOLD = 0.75;
+    /** About how many pixels {@link openProgressive} reads of a JPEG for the copy it shows first. */
+    private static final int PREVIEW_PIXELS = 2 * 1024 * 1024;
+    /** The thread {@link openProgressive} reads whole images on, shared by every image. */
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "andie-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** An image read in the background and the type it was read as. */
+    private static class Decoded {
+        int type;
+        BufferedImage image;
+
+        Decoded(int type, BufferedImage image) {
+            this.type = type;
+            this.image = image;
+        }
+    }
+    /** The operation being previewed a rectangle at a time, see {@link extendPreview}. */
+    private ImageOperation regionOp;
+    /** The operation the {@link tiles} were rendered with. */
+    private ImageOperation tilesOp;
+    /** The rectangles of a preview rendered so far, drawn over {@link current}. */
+    private Map<Rectangle, BufferedImage> tiles = new LinkedHashMap<Rectangle, BufferedImage>();
     /** The sequence of operations currently applied to the image. */
     private Stack<ImageOperation> ops;
-    private loopStack<BufferedImage> undoImages;
     /** A memory of 'undone' operations to support 'redo'. */
     private Stack<ImageOperation> redoOps;
-    private loopStack<BufferedImage> redoImages;
+    /** Images part way through the history, stored by the number of operations applied. */
+    private SnapshotCache snapshots;
+    /** Results of operations already computed, by input and parameters. */
+    private ResultCache results;
     /** The file where the original image is stored/ */
     private String imageFilename;
     /** The file where the operation sequence is stored. */
@@ -69,6 +170,8 @@ public class EditableImage {
 
     private Stack<ImageOperation> recordedOps = new Stack<ImageOperation>();
 
+    private Preferences prefs = Preferences.userNodeForPackage(EditableImage.class);
+
     /**
      * <p>
      * Create a new EditableImage.
@@ -83,9 +186,14 @@ public class EditableImage {
         original = null;
         current = null;
         ops = new Stack<ImageOperation>();
-        undoImages = new loopStack<BufferedImage>();
         redoOps = new Stack<ImageOperation>();
-        redoImages = new loopStack<BufferedImage>();
+        previews = new PreviewExecutor(this);
+        // default to a quarter of the heap, checkpointing every 4 operations
+        long budget = prefs.getLong("undo_budget_mb", Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+        snapshots = new SnapshotCache(budget * 1024 * 1024, Math.max(1, prefs.getInt("undo_checkpoint_interval", 4)));
+        // and an eighth for results that may be asked for again
+        results = new ResultCache(prefs.getLong("result_cache_mb", Runtime.getRuntime().maxMemory() / 8 / (1024 * 1024)) * 1024 * 1024);
+        lazy = prefs.getBoolean("lazy_apply", true);
         imageFilename = null;
         opsFilename = null;
     }
@@ -98,113 +206,54 @@ public class EditableImage {
      * @return True if there is an image, false otherwise.
      */
     public boolean hasImage() {
-        return original != null;
+        return original != null || loading != null;
     }
 
 
 
     /**
+     * <p>
+     * Check if the original or current image has any pixels that are not fully opaque.
+     * </p>
+     * 
+     * <p>
+     * Answered by {@link AlphaAnalysis}, which remembers the answer for each image, so
+     * asking again before the next edit does not scan the pixels again.
+     * </p>
+     * 
      * @param b True to check if the original image had an alpha channel, false for current.
      * @return True if the image has an alpha channel
      */
     public boolean hasAlpha(boolean b){
-        /*
-         * A wrapper for the hasAlpha boolean
-         */
-        final class Alpha {
-            public boolean hasAlpha = false;
-        }
-        Alpha alpha = new Alpha();
-        // make it pick either current or original
-        BufferedImage image = b ? original : current;
-
-        /* looping over each pixel rather than getting the whole argbArray 
-         * if it has alpha it'll probably be present early rather than late.
-         * For images without alpha unlucky
-        */
-        ArrayDeque<Integer> horizontalOps = new ArrayDeque<Integer>(image.getWidth());
-        for (int i = 0; i < image.getWidth(); horizontalOps.add(i++));
-
-        ArrayDeque<Integer> verticalOps = new ArrayDeque<Integer>(image.getHeight());
-        for (int i = 0; i < image.getHeight(); verticalOps.add(i++));
-
-        // calculate if it has an alpha channel
-        horizontalOps.stream().takeWhile(i -> (!alpha.hasAlpha)).forEach(x -> {
-            verticalOps.stream().takeWhile(i -> (!alpha.hasAlpha)).forEach(y -> {
-                if ((((image.getRGB(x, y) & 0xFF000000) >>> 24) != 255)){
-                    alpha.hasAlpha = true;
-                }
-            });
-        });
-
-        return alpha.hasAlpha;
+        awaitLoad();
+        return AlphaAnalysis.hasAlpha(b ? original : getCurrentImage());
     }
 
-    private class loopStack<T> extends Stack<T> {
-        private final int MAX_SIZE = 3;
-        loopStack(){
-            super();
-        }
-
-        public T push(T item){
-
-            super.push(item);
-            if (super.size() > MAX_SIZE){
-                super.remove(0);
-            }
-            return item;
-        }
-    }
     /**
      * <p>
-     * Make a 'deep' copy of a BufferedImage.
+     * Choose whether operations are applied lazily.
      * </p>
      * 
      * <p>
-     * Object instances in Java are accessed via references, which means that
-     * assignment does
-     * not copy an object, it merely makes another reference to the original.
-     * In order to make an independent copy, the {@code clone()} method is generally
-     * used.
-     * {@link BufferedImage} does not implement {@link Cloneable} interface, and so
-     * the
-     * {@code clone()} method is not accessible.
+     * When lazy, operations are queued and only rendered when the image is needed. When
+     * not, every change to the operations renders the image straight away. Turning it
+     * off renders anything still queued.
      * </p>
      * 
-     * <p>
-     * This method makes a cloned copy of a BufferedImage.
-     * This requires knoweldge of some details about the internals of the
-     * BufferedImage,
-     * but essentially comes down to making a new BufferedImage made up of copies of
-     * the internal parts of the input.
-     * </p>
-     * 
-     * <p>
-     * This code is taken from StackOverflow:
-     * <a href=
-     * "https://stackoverflow.com/a/3514297">https://stackoverflow.com/a/3514297</a>
-     * in response to
-     * <a href=
-     * "https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage">https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage</a>.
-     * Code by Klark used under the CC BY-SA 2.5 license.
-     * </p>
-     * 
-     * <p>
-     * This method (only) is released under
-     * <a href="https://creativecommons.org/licenses/by-sa/2.5/">CC BY-SA 2.5</a>
-     * </p>
-     * 
-     * @param bi The BufferedImage to copy.
-     * @return A deep copy of the input.
+     * @param lazy True to queue operations, false to apply them straight away.
      */
-    private static BufferedImage deepCopy(BufferedImage bi) throws java.lang.NullPointerException {
-        if (bi == null) {
-            throw new java.lang.NullPointerException("Argument was null");
+    public void setLazy(boolean lazy){
+        this.lazy = lazy;
+        if (!lazy){
+            render();
         }
-        ColorModel cm = bi.getColorModel();
-        boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
-        WritableRaster raster = bi.copyData(null);
-        return new BufferedImage(cm, raster, isAlphaPremultiplied, null);
+    }
+
+    /**
+     * @return True if operations are queued until the image is needed
+     */
+    public boolean isLazy(){
+        return lazy;
     }
 
     /**
@@ -221,61 +270,182 @@ public class EditableImage {
      * read the operations from <code>some/path/to/image.png.ops</code>.
      * </p>
      * 
+     * <p>
+     * If the images rendered when the project was last saved are still valid (see
+     * {@link RenderCache}) they are used, rather than replaying the operations.
+     * </p>
+     * 
      * @param filePath The file to open the image from.
      */
     public void open(String filePath) {
-        String imageFilename;
-        String opsFilename;
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        cancelLoad();
         BufferedImage original;
-        BufferedImage current;
         try {
-            imageFilename = filePath;
-            opsFilename = imageFilename + ".ops";
-            File imageFile = new File(imageFilename);
-            original = ImageIO.read(imageFile);
+            original = FlightEvents.read(new File(filePath));
         } catch (IOException e) {
             ExceptionHandler.displayError(language.getTranslated("open_file_io_exception"));
             return;
         }
 
-        
-
-        try {
-            current = deepCopy(original);
-        } catch (java.lang.NullPointerException e) {
+        if (original == null) {
             // file wasn't an image
             ExceptionHandler.displayError(language.getTranslated("non_image_file"));
             return;
         }
-        // image is correct
-        this.imageFilename = imageFilename;
-        this.opsFilename = opsFilename;
-        this.original = original;
-        this.current = current;
+        load(filePath, original.getType(), PixelArrays.toWorking(original));
+        sample.stop("open", null, current);
+    }
 
-        try {
-            FileInputStream fileIn = new FileInputStream(this.opsFilename);
+    /**
+     * <p>
+     * Open an image from a file, reading it in the background.
+     * </p>
+     * 
+     * <p>
+     * Reading a very large image takes seconds. If the image has more pixels than the
+     * <code>progressive_open_mp</code> preference (in megapixels, 16 by default), only its
+     * size is read straight away, and the whole image is read on a background thread and
+     * opened as by {@link open} on the event thread when it is ready.
+     * </p>
+     * 
+     * <p>
+     * Before the whole image, a smaller copy is read on the same thread where that is
+     * cheap: a thumbnail stored in the file, or every few pixels of a JPEG with
+     * {@link ImageReadParam#setSourceSubsampling}. Other formats have to be decoded in
+     * full even to read every few pixels, so nothing is shown until the whole image is
+     * ready. The copy is returned by {@link getLoadingPreview} to be painted at full size.
+     * </p>
+     * 
+     * <p>
+     * Until then {@link isLoading} is true and {@link getWidth} and {@link getHeight}
+     * give the size of the whole image. The image itself cannot be edited until it is
+     * read, so callers should not offer editing while {@link isLoading} is true; anything
+     * that needs it anyway, such as applying an operation or {@link getCurrentImage},
+     * waits for it on the calling thread. Smaller images, or turning off the
+     * <code>progressive_open</code> preference, open straight away with {@link open}.
+     * </p>
+     * 
+     * <p>
+     * The image that was open before, and its operations, are kept until the whole image
+     * is read. If it cannot be, the error is shown and that image is left open.
+     * </p>
+     * 
+     * @param filePath The file to open the image from.
+     * @param onPreview Called on the event thread once the smaller copy has been read,
+     *                  may be null.
+     * @param onReady Called on the event thread once the whole image is open, or has
+     *                failed to open, may be null.
+     */
+    public void openProgressive(String filePath, Runnable onPreview, Runnable onReady) {
+        cancelLoad();
+        File file = new File(filePath);
+        int[] size = null;
+        if (prefs.getBoolean("progressive_open", true)) {
+            try {
+                size = readSize(file);
+            } catch (IOException | RuntimeException e) {
+                // read it the usual way, which reports the problem
+            }
+        }
+        if (size == null || (long) size[0] * size[1] <= prefs.getLong("progressive_open_mp", 16) * 1000000) {
+            open(filePath);
+            if (onReady != null) onReady.run();
+            return;
+        }
 
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
+        // drop any preview of the last image, the rest of it is only replaced by load()
+        // once the new one is read, so nothing is lost if reading fails
+        revert();
+        loadingFilename = filePath;
+        loadingReady = onReady;
+        loadingPreview = null;
+        int width = size[0], height = size[1];
+        loadingWidth = width;
+        loadingHeight = height;
+        FutureTask<Decoded> decode = new FutureTask<>(() -> {
+            BufferedImage full = FlightEvents.read(file);
+            return full == null ? null : new Decoded(full.getType(), PixelArrays.toWorking(full));
+        });
+        loading = decode;
+        // the loader runs one task at a time, so the smaller copy is read before the whole image
+        LOADER.execute(() -> {
+            if (decode.isCancelled()) {
+                return;
+            }
+            OperationMetrics.Sample sample = OperationMetrics.start();
+            BufferedImage preview;
+            try {
+                preview = readPreview(file, width, height);
+            } catch (IOException | RuntimeException e) {
+                // the whole image is still read, and reports the problem if it has one
+                return;
+            }
+            if (preview == null) {
+                return;
+            }
+            sample.stop("preview", null, preview);
+            SwingUtilities.invokeLater(() -> {
+                if (loading == decode) {
+                    loadingPreview = preview;
+                    if (onPreview != null) onPreview.run();
+                }
+            });
+        });
+        LOADER.execute(decode);
+        LOADER.execute(() -> SwingUtilities.invokeLater(() -> {
+            // whether it is ready or failed, finish unless another file was opened since
+            if (loading == decode) {
+                finishLoad();
+            }
+        }));
+    }
 
-            // Silence the Java compiler warning about type casting.
-            // Understanding the cause of the warning is way beyond
-            // the scope of COSC202, but if you're interested, it has
-            // to do with "type erasure" in Java: the compiler cannot
-            // produce code that fails at this point in all cases in
-            // which there is actually a type mismatch for one of the
-            // elements within the Stack, i.e., a non-ImageOperation.
+    /**
+     * <p>
+     * Check if an image is still being read by {@link openProgressive}.
+     * </p>
+     * 
+     * @return True while only the smaller copy of the image has been read.
+     */
+    public boolean isLoading() {
+        return loading != null;
+    }
 
-            @SuppressWarnings("unchecked")
-            Stack<ImageOperation> opsFromFile = (Stack<ImageOperation>) objIn.readObject();
+    /**
+     * <p>
+     * Get the smaller copy of an image shown while it is read by {@link openProgressive}.
+     * </p>
+     * 
+     * @return The smaller copy, or null if no image is being read.
+     */
+    public BufferedImage getLoadingPreview() {
+        return loading != null ? loadingPreview : null;
+    }
 
-            ops = opsFromFile;
-            objIn.close();
-            fileIn.close();
+    /**
+     * Sets up a newly read image and its operations, the rest of {@link open}.
+     * 
+     * @param imageFilename the file the image was read from
+     * @param type the type ImageIO read the image as
+     * @param original the image, already converted to packed ARGB
+     */
+    private void load(String imageFilename, int type, BufferedImage original) {
+        // image is correct, the current image is worked out by refresh() once the ops are read
+        this.imageFilename = imageFilename;
+        this.opsFilename = imageFilename + ".ops";
+        this.originalType = type;
+        this.original = original;
+        this.imageModified = new File(imageFilename).lastModified();
+        snapshots.clear();
+        current = null;
+        rendered = 0;
+
+        try {
+            ops = OpsFile.read(this.opsFilename);
         } catch (Exception e) {
             // ops file didn't exist, image still loaded so clear application stack
             ops.clear();
-            undoImages.clear();
 
             // Could be no file or something else. Carry on for now.
         } finally {
@@ -283,12 +453,144 @@ public class EditableImage {
             redoOps.clear();
             recordedOps.clear();
             recording = false;
-            redoImages.clear();
         }
 
+        loadRenders();
         this.refresh();
     }
 
+    /**
+     * Reads the size of an image without reading the image itself.
+     * 
+     * @param file the image file
+     * @return the width and height, or null if no reader recognises the file
+     * @throws IOException if the file cannot be read
+     */
+    private static int[] readSize(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads a smaller copy of an image, enough to show it at screen size, where that is
+     * much quicker than reading the whole image.
+     * 
+     * @param file the image file
+     * @param width the width of the whole image
+     * @param height the height of the whole image
+     * @return the largest thumbnail stored in the file, every few pixels of a JPEG, or
+     *         null if neither is possible
+     * @throws IOException if the file cannot be read
+     */
+    private static BufferedImage readPreview(File file, int width, int height) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                if (reader.readerSupportsThumbnails() && reader.hasThumbnails(0)) {
+                    int largest = 0;
+                    for (int i = 1; i < reader.getNumThumbnails(0); i++) {
+                        if ((long) reader.getThumbnailWidth(0, i) * reader.getThumbnailHeight(0, i)
+                                > (long) reader.getThumbnailWidth(0, largest) * reader.getThumbnailHeight(0, largest)) {
+                            largest = i;
+                        }
+                    }
+                    return reader.readThumbnail(0, largest);
+                }
+                // a JPEG decoder skips the pixels it is not asked for, most others decode them anyway
+                if (!reader.getFormatName().equalsIgnoreCase("jpeg")) {
+                    return null;
+                }
+                int step = (int) Math.ceil(Math.sqrt((double) width * height / PREVIEW_PIXELS));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Opens the image read in the background, if {@link openProgressive} is still waiting
+     * for it, then calls {@link loadingReady} whether it could be read or not. Must be
+     * called on the event thread.
+     */
+    private void finishLoad() {
+        Future<Decoded> decode = loading;
+        if (decode == null) {
+            return;
+        }
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        Decoded decoded = null;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    decoded = decode.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // fall through to the error below
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        Runnable ready = loadingReady;
+        loading = null;
+        loadingReady = null;
+        loadingPreview = null;
+        if (decoded == null) {
+            // back to the image that was open before, at its own size
+            if (ready != null) ready.run();
+            ExceptionHandler.displayError(language.getTranslated("open_file_io_exception"));
+            return;
+        }
+        load(loadingFilename, decoded.type, decoded.image);
+        sample.stop("open", null, current);
+        if (ready != null) ready.run();
+    }
+
+    /**
+     * Waits for an image being read by {@link openProgressive}, so it can be edited.
+     * The interface does not offer editing until the image is read, so this only blocks
+     * when the image is used from code before then.
+     */
+    private void awaitLoad() {
+        if (loading != null) {
+            finishLoad();
+        }
+    }
+
+    /**
+     * Stops reading an image in the background, when another is opened instead.
+     */
+    private void cancelLoad() {
+        if (loading != null) {
+            loading.cancel(true);
+            loading = null;
+            loadingReady = null;
+            loadingPreview = null;
+        }
+    }
+
     /**
      * <p>
      * Save an image to file.
@@ -305,16 +607,17 @@ public class EditableImage {
      * 
      */
     public void save() {
+        awaitLoad();
+        if (original == null) return;
         try {
             if (this.opsFilename == null) {
                 this.opsFilename = this.imageFilename + ".ops";
             }
+            // render first, it drops any operation that fails, which should not be saved
+            render();
             // Write operations file
-            FileOutputStream fileOut = new FileOutputStream(this.opsFilename);
-            ObjectOutputStream objOut = new ObjectOutputStream(fileOut);
-            objOut.writeObject(this.ops);
-            objOut.close();
-            fileOut.close();
+            OpsFile.write(this.opsFilename, this.ops);
+            saveRenders();
         } catch (FileNotFoundException fileException) {
             ExceptionHandler.displayError(language.getTranslated("file_not_found_exception"));
 
@@ -323,6 +626,69 @@ public class EditableImage {
         }
     }
 
+    /**
+     * <p>
+     * Put the images saved with the ops file into the snapshots.
+     * </p>
+     * 
+     * <p>
+     * Called when opening, once the operations are read. If the {@link RenderCache} is
+     * still valid the final image is one of them, so nothing has to be replayed.
+     * </p>
+     */
+    private void loadRenders(){
+        if (ops.isEmpty() || !prefs.getBoolean("render_cache", true)) return;
+        try {
+            for (RenderCache.Entry entry : RenderCache.read(imageFilename, opsFilename)){
+                if (entry.depth > 0 && entry.depth <= ops.size()){
+                    snapshots.put(entry.depth, entry.image, entry.cost);
+                }
+            }
+        } catch (IOException e) {
+            // only a cache, the operations are replayed instead
+        }
+    }
+
+    /**
+     * <p>
+     * Save the final image and the deepest checkpoints beside the ops file.
+     * </p>
+     * 
+     * <p>
+     * Only checkpoints already in the snapshots are saved, none are rendered for it.
+     * Nothing is saved if the image file has been written since it was opened, as by
+     * {@link saveAs}, because the original in memory might not be what is read from it
+     * next time.
+     * </p>
+     * 
+     * <p>
+     * Failing to write the cache is not an error, the ops file is already saved. An old
+     * cache left behind does not match the new ops file, so it is ignored.
+     * </p>
+     */
+    private void saveRenders() {
+        if (!prefs.getBoolean("render_cache", true)) return;
+        try {
+            if (ops.isEmpty() || new File(imageFilename).lastModified() != imageModified){
+                RenderCache.delete(opsFilename);
+                return;
+            }
+            render();
+            List<RenderCache.Entry> entries = new ArrayList<RenderCache.Entry>();
+            entries.add(new RenderCache.Entry(ops.size(), Math.max(0, snapshots.getCost(ops.size())), current));
+            int interval = snapshots.getCheckpointInterval();
+            int wanted = prefs.getInt("render_cache_checkpoints", 3);
+            for (int depth = snapshots.floor(ops.size() - 1); depth > 0 && entries.size() <= wanted; depth = snapshots.floor(depth - 1)){
+                if (depth % interval == 0){
+                    entries.add(new RenderCache.Entry(depth, snapshots.getCost(depth), snapshots.get(depth)));
+                }
+            }
+            RenderCache.write(imageFilename, opsFilename, entries);
+        } catch (IOException e) {
+            // only a cache, the operations are replayed next time instead
+        }
+    }
+
     /**
      * <p>
      * Save an image to a speficied file.
@@ -339,6 +705,8 @@ public class EditableImage {
      * @param imageFilename The file location to save the image to.
      */
     public void saveAs(String imageFilename, String extension) {
+        awaitLoad();
+        if (original == null) return;
         try {
             // Write image file based on file extension
             exportSave(imageFilename, extension);
@@ -364,7 +732,7 @@ public class EditableImage {
      * @param op The operation to apply.
      */
     public void apply(ImageOperation op) {
-        
+        awaitLoad();
         // image isn't loaded
         if (current == null)
             return;
@@ -372,26 +740,283 @@ public class EditableImage {
             revert();
         }
 
-        undoImages.push(current);
-        
-        current = op.apply(current);
+        // the snapshots after this point belonged to the undone operations
+        snapshots.truncate(ops.size());
+
         ops.add(op);
         if(recording) recordedOps.add(op);
+        if (!lazy){
+            OperationMetrics.Sample sample = OperationMetrics.start();
+            BufferedImage input = current;
+            catchUp();
+            sample.stop("apply", op, input);
+        }
         
         redoOps.clear();
-        redoImages.clear();
     }
 
     public void applyTemp(ImageOperation op){
+        awaitLoad();
         if (current == null) return;
+        render();
+        previews.cancel();
+        proxyPreview = null;
+        regionOp = null;
+        clearTiles();
         if (!editing){
             tempStore = current;
             editing = true;
         }
-        current = op.apply(tempStore);
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        current = results.apply(op, tempStore);
+        sample.stop("applyTemp", op, tempStore);
+    }
+
+    /**
+     * <p>
+     * Preview an {@link ImageOperation} without applying it, rendering in the background.
+     * </p>
+     * 
+     * <p>
+     * Like {@link applyTemp}, but the operation is applied on a background thread so the
+     * interface stays responsive. Only the newest preview is shown, any preview still
+     * rendering when a new one is asked for is thrown away. Must be called on the event thread.
+     * </p>
+     * 
+     * <p>
+     * When the image is shown zoomed out, there is no point rendering every pixel. The
+     * preview is rendered on a copy of the image shrunk to the zoom (see {@link getProxy}),
+     * with the operation {@link ImageOperation#scaled} to match, and shown stretched back
+     * to full size by {@link getDisplayImage}. {@link current} is left at full size, and
+     * applying the operation for real still renders at full resolution.
+     * </p>
+     * 
+     * <p>
+     * At larger zooms only part of the image is on screen. If the operation has a halo
+     * radius (see {@link ImageOperation#getHaloRadius}) just the visible rectangle is
+     * rendered, and shown over the unchanged image by {@link getPreviewTiles}. The rest
+     * is rendered as it scrolls into view, by {@link extendPreview}, or when the
+     * operation is applied.
+     * </p>
+     * 
+     * @param op The operation to preview.
+     * @param zoom The scale the image is shown at, 1 for actual size.
+     * @param visible The part of the image on screen, in image pixels, or null if unknown.
+     * @param onPublish Called on the event thread once the preview is showing, may be null.
+     */
+    public void applyTempAsync(ImageOperation op, double zoom, Rectangle visible, Runnable onPublish){
+        awaitLoad();
+        if (current == null) return;
+        render();
+        if (!editing){
+            tempStore = current;
+            editing = true;
+        }
+        double scale = zoom < PROXY_THRESHOLD ? zoom : 1.0;
+        Rectangle bounds = new Rectangle(tempStore.getWidth(), tempStore.getHeight());
+        if (scale < 1.0 || visible == null || op.getHaloRadius() == ImageOperation.NOT_LOCAL
+                || !visible.intersects(bounds) || visible.contains(bounds)){
+            regionOp = null;
+            previews.submit(op, tempStore, scale, onPublish);
+        } else {
+            regionOp = op;
+            previews.submitRegion(op, tempStore, visible.intersection(bounds), onPublish);
+        }
+    }
+
+    /**
+     * <p>
+     * Render the part of a preview that has just come into view.
+     * </p>
+     * 
+     * <p>
+     * Does nothing unless a preview is being rendered a rectangle at a time (see
+     * {@link applyTempAsync}). Otherwise the part of the visible rectangle not rendered yet
+     * is rendered in the background. Must be called on the event thread.
+     * </p>
+     * 
+     * @param visible The part of the image on screen, in image pixels.
+     * @param onPublish Called on the event thread once the new part is showing, may be null.
+     */
+    public void extendPreview(Rectangle visible, Runnable onPublish){
+        if (!editing || regionOp == null){
+            return;
+        }
+        Rectangle bounds = new Rectangle(tempStore.getWidth(), tempStore.getHeight());
+        Area missing = new Area(visible.intersection(bounds));
+        if (tilesOp == regionOp){
+            for (Rectangle done : tiles.keySet()){
+                missing.subtract(new Area(done));
+            }
+        }
+        if (!missing.isEmpty()){
+            previews.submitRegion(regionOp, tempStore, missing.getBounds(), onPublish);
+        }
+    }
+
+    /**
+     * <p>
+     * Show a finished rectangle of a preview, if the image is still being previewed.
+     * </p>
+     * 
+     * <p>
+     * Rectangles of the same operation build up, a rectangle of a new operation
+     * replaces them.
+     * </p>
+     * 
+     * @param op The operation the rectangle was rendered with.
+     * @param region Where the rectangle is in the image.
+     * @param tile The rendered rectangle.
+     */
+    void showTile(ImageOperation op, Rectangle region, BufferedImage tile){
+        if (!editing){
+            return;
+        }
+        if (tilesOp != op){
+            clearTiles();
+            tilesOp = op;
+        }
+        current = tempStore;
+        proxyPreview = null;
+        tiles.put(region, tile);
+    }
+
+    /**
+     * <p>
+     * Get the rectangles of a preview being rendered a rectangle at a time.
+     * </p>
+     * 
+     * <p>
+     * Each should be drawn at its rectangle's position over {@link getDisplayImage}.
+     * Empty unless such a preview is showing.
+     * </p>
+     * 
+     * @return The rendered rectangles, by where they are in the image.
+     */
+    public Map<Rectangle, BufferedImage> getPreviewTiles(){
+        return Collections.unmodifiableMap(tiles);
+    }
+
+    /**
+     * Stops showing any rectangles of a preview.
+     */
+    private void clearTiles(){
+        tiles.clear();
+        tilesOp = null;
+    }
+
+    /**
+     * <p>
+     * Show a finished preview, if the image is still being previewed.
+     * </p>
+     * 
+     * @param preview The preview to show.
+     * @param scale The size of the preview relative to the image, 1 for full size.
+     */
+    void showTemp(BufferedImage preview, double scale){
+        if (!editing){
+            return;
+        }
+        clearTiles();
+        if (scale < 1.0){
+            current = tempStore;
+            proxyPreview = preview;
+        } else {
+            current = preview;
+            proxyPreview = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image, reusing the result if it has been computed before.
+     * </p>
+     * 
+     * <p>
+     * Used by the {@link PreviewExecutor}, so moving a slider back to a setting it has
+     * already shown does not render the preview again.
+     * </p>
+     * 
+     * @param op The operation to apply.
+     * @param input The image to apply it to, which is not changed.
+     * @return The result, which must not be changed.
+     */
+    BufferedImage applyCached(ImageOperation op, BufferedImage input){
+        return results.apply(op, input);
+    }
+
+    /**
+     * <p>
+     * Get a smaller copy of an image to render previews on.
+     * </p>
+     * 
+     * <p>
+     * The copy is cached, so it is only made again when the image or scale changes
+     * rather than on every preview.
+     * </p>
+     * 
+     * @param source The image to shrink.
+     * @param scale The size of the copy relative to the image.
+     * @return The smaller copy.
+     */
+    synchronized BufferedImage getProxy(BufferedImage source, double scale){
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        if (proxySource == source && proxy.getWidth() == width && proxy.getHeight() == height){
+            return proxy;
+        }
+        // halve repeatedly then finish with one bilinear step, which avoids the
+        // aliasing of shrinking a long way in one step
+        BufferedImage shrunk = source;
+        while (shrunk.getWidth() / 2 >= width && shrunk.getHeight() / 2 >= height){
+            shrunk = resize(shrunk, shrunk.getWidth() / 2, shrunk.getHeight() / 2);
+        }
+        if (shrunk.getWidth() != width || shrunk.getHeight() != height){
+            shrunk = resize(shrunk, width, height);
+        }
+        proxySource = source;
+        proxy = shrunk;
+        return proxy;
+    }
+
+    /**
+     * Resizes an image with bilinear interpolation.
+     * 
+     * @param image the image to resize
+     * @param width the new width
+     * @param height the new height
+     * @return the resized image
+     */
+    private static BufferedImage resize(BufferedImage image, int width, int height){
+        BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D gfx = output.createGraphics();
+        gfx.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        gfx.drawImage(image, 0, 0, width, height, null);
+        gfx.dispose();
+        return output;
+    }
+
+    /**
+     * <p>
+     * Get the image to show on screen.
+     * </p>
+     * 
+     * <p>
+     * This is the current image, unless a preview rendered on a smaller copy is showing.
+     * It should be drawn stretched to the size of the current image.
+     * </p>
+     * 
+     * @return The image to show.
+     */
+    public BufferedImage getDisplayImage(){
+        return proxyPreview != null ? proxyPreview : getCurrentImage();
     }
 
     public void revert(){
+        previews.cancel();
+        proxyPreview = null;
+        regionOp = null;
+        clearTiles();
         if (editing){
             current = tempStore;
             editing = false;
@@ -403,17 +1028,25 @@ public class EditableImage {
      * <p>
      * Undo the last {@link ImageOperation} applied to the image.
      * </p>
+     * 
+     * <p>
+     * The image before the operation is taken from the snapshots, or rebuilt from
+     * the nearest snapshot before it.
+     * </p>
      */
     public void undo() {
+        awaitLoad();
         if (!ops.isEmpty()) {
+            if (editing){
+                revert();
+            }
+            OperationMetrics.Sample sample = OperationMetrics.start();
             redoOps.push(ops.pop());
-            if (!undoImages.isEmpty()){
-                redoImages.push(current);
-                current =  undoImages.pop();
-            } else {
-                redoImages.push(current);
-                refresh();
+            seek(ops.size());
+            if (!lazy){
+                catchUp();
             }
+            sample.stop("undo", redoOps.peek(), current);
         }
         if(recording && recordedOps.size() !=0) recordedOps.pop();
     }
@@ -424,19 +1057,24 @@ public class EditableImage {
      * </p>
      */
     public void redo() {
+        awaitLoad();
         if (!redoOps.isEmpty()) {
-            if (!redoImages.isEmpty()){
-                undoImages.push(current);
-                current = redoImages.pop();
-            } else {
-                undoImages.push(current);
-                current = redoOps.peek().apply(current);
+            if (editing){
+                revert();
             }
-            
-            ops.add(redoOps.pop());
+            OperationMetrics.Sample sample = OperationMetrics.start();
+            BufferedImage input = current;
+            ImageOperation op = redoOps.pop();
+            ops.add(op);
             if (recording){
-                recordedOps.add(ops.peek());
+                recordedOps.add(op);
+            }
+            // the image after the operation may still be in the snapshots
+            seek(ops.size());
+            if (!lazy){
+                catchUp();
             }
+            sample.stop("redo", op, input);
         }
 
     }
@@ -446,10 +1084,17 @@ public class EditableImage {
      * Get the current image after the operations have been applied.
      * </p>
      * 
+     * <p>
+     * Any operations still queued are rendered first. If the image is still being read
+     * by {@link openProgressive}, this waits for it.
+     * </p>
+     * 
      * @return The result of applying all of the current operations to the
      *         {@link original} image.
      */
     public BufferedImage getCurrentImage() {
+        awaitLoad();
+        render();
         return current;
     }
 
@@ -460,18 +1105,141 @@ public class EditableImage {
      * 
      * <p>
      * While the latest version of the image is stored in {@link current}, this
-     * method makes a fresh copy of the original and applies the operations to it in
-     * sequence.
-     * This is useful when undoing changes to the image, or in any other case where
-     * {@link current}
-     * cannot be easily incrementally updated.
+     * method works it out again from the deepest snapshot still in the cache,
+     * applying only the operations after it. With no snapshots (for example just
+     * after opening an image with an ops file) every operation is applied to the
+     * original. When operations are applied lazily this is left to {@link render}.
+     * This is useful in any case where {@link current} cannot be easily
+     * incrementally updated.
+     * </p>
+     * 
+     * <p>
+     * The operations are replayed as planned by the {@link OperationPlanner}, so runs of
+     * colour operations are done in a single pass.
      * </p>
      */
     private void refresh() {
-        current = deepCopy(original);
-        for (ImageOperation op : ops) {
-            undoImages.push(current);
-            current = op.apply(current);
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        seek(ops.size());
+        if (!lazy){
+            catchUp();
+        }
+        sample.stop("refresh", null, current);
+    }
+
+    /**
+     * <p>
+     * Render any queued operations.
+     * </p>
+     * 
+     * <p>
+     * Called whenever the pixels of the current image are needed. Does nothing if
+     * nothing is queued, or there is no image.
+     * </p>
+     */
+    private void render() {
+        if (current == null || rendered == ops.size()) {
+            return;
+        }
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        BufferedImage input = current;
+        ImageOperation only = ops.size() - rendered == 1 ? ops.peek() : null;
+        catchUp();
+        sample.stop("render", only, input);
+    }
+
+    /**
+     * Applies the operations after {@link rendered} to {@link current}.
+     *
+     * <p>
+     * If an operation throws, or runs out of memory, the image is left at the last
+     * operation that worked, and it and the operations after it are dropped, without
+     * going on the redo stack. Otherwise it would stay queued and fail again every time
+     * the image is painted. The error is shown once the current event is done.
+     * </p>
+     */
+    private void catchUp() {
+        try {
+            replay(ops.size());
+        } catch (RuntimeException | OutOfMemoryError e) {
+            while (ops.size() > rendered) {
+                ImageOperation dropped = ops.pop();
+                if (recording && !recordedOps.isEmpty() && recordedOps.peek() == dropped) {
+                    recordedOps.pop();
+                }
+            }
+            snapshots.truncate(rendered);
+            // not shown straight away, this may be in the middle of painting
+            SwingUtilities.invokeLater(() -> {
+                ExceptionHandler.debugException(e instanceof Exception ? (Exception) e : new RuntimeException(e));
+                ExceptionHandler.displayError(language.getTranslated("unapplied_filter_error"));
+            });
+        }
+    }
+
+    /**
+     * <p>
+     * Move {@link current} to the nearest image at or before a depth that is at hand.
+     * </p>
+     * 
+     * <p>
+     * Used when the operations change. Nothing is rendered: the image is the snapshot at
+     * the depth if there is one, otherwise {@link current} if it is still part of the
+     * history and no snapshot is closer, otherwise the nearest snapshot, or the original.
+     * {@link render} then only has to apply what is left.
+     * </p>
+     * 
+     * @param depth The number of operations the image should have applied.
+     */
+    private void seek(int depth) {
+        BufferedImage image = snapshots.get(depth);
+        if (image != null) {
+            current = image;
+            rendered = depth;
+            return;
+        }
+        int from = snapshots.floor(depth);
+        if (current != null && rendered <= depth && rendered >= from) {
+            return;
+        }
+        if (from >= 0) {
+            current = snapshots.get(from);
+            rendered = from;
+        } else {
+            // operations never change their input, so the original itself will do, and
+            // keeps the key the ResultCache already has for it
+            current = original;
+            rendered = 0;
+        }
+    }
+
+    /**
+     * <p>
+     * Apply the operations after {@link rendered} to {@link current}, storing the results
+     * in the snapshots.
+     * </p>
+     * 
+     * <p>
+     * The operations are planned by the {@link OperationPlanner}, so there is no
+     * image to store between the operations of a fused run. Each step goes through
+     * the {@link ResultCache}, so redoing an operation that was undone, or applying it
+     * again with the same settings, is a lookup.
+     * </p>
+     * 
+     * <p>
+     * {@link current} and {@link rendered} are moved on after every step, so if a step
+     * fails they are left at the last one that worked.
+     * </p>
+     * 
+     * @param to The number of operations to have applied at the end.
+     */
+    private void replay(int to) {
+        for (ImageOperation step : OperationPlanner.plan(ops.subList(rendered, to))) {
+            long start = System.nanoTime();
+            BufferedImage image = results.apply(step, current);
+            current = image;
+            rendered += OperationPlanner.size(step);
+            snapshots.put(rendered, image, System.nanoTime() - start);
         }
     }
 
@@ -494,21 +1262,16 @@ public class EditableImage {
     public void export(String imageFilename, String extension) throws Exception {
         
         String exportFilename = imageFilename + "." + extension;
+        awaitLoad();
         if (original == null) return;
-        BufferedImage writeImage;
-
-        if (!extension.equals("png")){
-            writeImage = new BufferedImage(current.getWidth(), current.getHeight(), BufferedImage.TYPE_INT_RGB);
-            Graphics2D gfx = writeImage.createGraphics();
-            gfx.drawImage(current,0,0,null);
-            gfx.dispose();
-        } else {
-            writeImage = current;
-        }
+        render();
+        OperationMetrics.Sample sample = OperationMetrics.start();
+        BufferedImage writeImage = toWritable(current, extension, originalType);
 
         try {
             if(!testWrite(imageFilename)) throw (new java.lang.IllegalArgumentException("Cant write file"));
-            ImageIO.write(writeImage, extension, new File(exportFilename));
+            FlightEvents.write(writeImage, extension, new File(exportFilename));
+            sample.stop("export", null, writeImage);
         } catch (Exception ex) {
             ExceptionHandler.displayError(SetLanguage.getInstance().getTranslated("save_file_io_excepton"));
             return;
@@ -537,27 +1300,91 @@ public class EditableImage {
         
         String exportFilename = imageFilename + "." + extension;
 
-        BufferedImage writeImage;
-        
-        if (!extension.equals("png")){
-            writeImage = new BufferedImage(original.getWidth(), original.getHeight(), BufferedImage.TYPE_INT_RGB);
-            Graphics2D gfx = writeImage.createGraphics();
-            gfx.drawImage(original,0,0,null);
-            gfx.dispose();
-        } else {
-            writeImage = original;
-        }
+        BufferedImage writeImage = toWritable(original, extension, originalType);
 
         try {
             String exten2 = extension.substring(1 + extension.lastIndexOf(".")).toLowerCase();
             if(!testWrite(imageFilename)) throw (new java.lang.IllegalArgumentException("Cant write file"));
-            ImageIO.write(writeImage, exten2, new File(exportFilename));
+            FlightEvents.write(writeImage, exten2, new File(exportFilename));
         } catch (Exception ex) {
             ExceptionHandler.displayError(SetLanguage.getInstance().getTranslated("save_file_io_excepton"));
             return;
         }
     }
 
+    /**
+     * <p>
+     * Get an image in a form that can be written in an image format.
+     * </p>
+     * 
+     * <p>
+     * Only png is written with an alpha channel. For any other format the image is drawn
+     * onto an opaque copy first, as writers like jpeg reject or garble ARGB images.
+     * </p>
+     * 
+     * @param image The image to write.
+     * @param extension The format it will be written in, such as {@code "png"} or {@code "jpg"}.
+     * @return The image itself for png, otherwise an opaque RGB copy.
+     */
+    public static BufferedImage toWritable(BufferedImage image, String extension){
+        if (extension.equals("png")){
+            return image;
+        }
+        BufferedImage writeImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D gfx = writeImage.createGraphics();
+        gfx.drawImage(image,0,0,null);
+        gfx.dispose();
+        return writeImage;
+    }
+
+    /**
+     * <p>
+     * Get an image in a form that can be written, in the layout its file was read as
+     * where that loses nothing.
+     * </p>
+     * 
+     * <p>
+     * Images with transparent pixels are handled as by {@link #toWritable(BufferedImage, String)}.
+     * Opaque images are written without an alpha channel, unless they were read with one
+     * (or with a palette) and are going to a png. Grey images read as
+     * {@link BufferedImage#TYPE_BYTE_GRAY} are written as grey again if every pixel
+     * survives the conversion.
+     * </p>
+     * 
+     * @param image The image to write, in the working format.
+     * @param extension The format it will be written in, such as {@code "png"} or {@code "jpg"}.
+     * @param type The type the image was read as.
+     * @return An image to write.
+     */
+    public static BufferedImage toWritable(BufferedImage image, String extension, int type){
+        if (AlphaAnalysis.hasAlpha(image)) {
+            return toWritable(image, extension);
+        }
+        switch (type) {
+            case BufferedImage.TYPE_BYTE_GRAY:
+                // the grey colour space is linear, so not every sRGB grey has a grey level
+                BufferedImage grey = PixelArrays.convert(image, type);
+                if (Arrays.equals(PixelArrays.read(grey), PixelArrays.read(image))) {
+                    return grey;
+                }
+                return PixelArrays.convert(image, BufferedImage.TYPE_3BYTE_BGR);
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return PixelArrays.convert(image, type);
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_USHORT_565_RGB:
+            case BufferedImage.TYPE_USHORT_555_RGB:
+            case BufferedImage.TYPE_USHORT_GRAY:
+                return PixelArrays.convert(image, BufferedImage.TYPE_3BYTE_BGR);
+            default:
+                // read with an alpha channel, or a palette that may have had transparent entries
+                if (extension.equals("png")) {
+                    return image;
+                }
+                return PixelArrays.convert(image, BufferedImage.TYPE_3BYTE_BGR);
+        }
+    }
+
    /**
      * <p>
      * Imports a .ops file that contains a series of operations 
@@ -574,34 +1401,23 @@ public class EditableImage {
 
 
     public void importMacro(String filePath) {
-
+        awaitLoad();
         if (current == null) return;
         
         try {
-            File macroFile = new File(filePath);
-            FileInputStream fileIn = new FileInputStream(macroFile);
-
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
+            Stack<ImageOperation> opsFromFile = OpsFile.read(filePath);
 
-            // Silence the Java compiler warning about type casting.
-            // Understanding the cause of the warning is way beyond
-            // the scope of COSC202, but if you're interested, it has
-            // to do with "type erasure" in Java: the compiler cannot
-            // produce code that fails at this point in all cases in
-            // which there is actually a type mismatch for one of the
-            // elements within the Stack, i.e., a non-ImageOperation.
-
-            @SuppressWarnings("unchecked")
-            Stack<ImageOperation> opsFromFile = (Stack<ImageOperation>) objIn.readObject();
-
-            for (ImageOperation op : opsFromFile){
-                apply(op);
+            if (editing) {
+                revert();
             }
-
-            objIn.close();
-            fileIn.close();
-
-            this.refresh();
+            // Queue the macro, it is rendered as planned so runs of colour operations are done in one pass
+            snapshots.truncate(ops.size());
+            ops.addAll(opsFromFile);
+            if (recording) recordedOps.addAll(opsFromFile);
+            if (!lazy) {
+                catchUp();
+            }
+            redoOps.clear();
         } catch (Exception e) {
             // wasn't an ops file
         }
@@ -626,11 +1442,11 @@ public class EditableImage {
     }
 
     public int getHeight(){
-        return current.getHeight();
+        return loading != null ? loadingHeight : getCurrentImage().getHeight();
     }
 
     public int getWidth(){
-        return current.getWidth();
+        return loading != null ? loadingWidth : getCurrentImage().getWidth();
     }
     /**
      * <p>
@@ -666,11 +1482,7 @@ public class EditableImage {
     public void stoprecord(String filepath, String extension){
         recording = false;
         try{
-        FileOutputStream fileOut = new FileOutputStream(filepath + "." + extension);
-            ObjectOutputStream objOut = new ObjectOutputStream(fileOut);
-            objOut.writeObject(this.recordedOps);
-            objOut.close();
-            fileOut.close();
+            OpsFile.write(filepath + "." + extension, this.recordedOps);
             recordedOps.clear();
         }
         catch (IOException a) {
@@ -697,6 +1509,7 @@ public class EditableImage {
      * @return the orignal imported image 
      */
     public BufferedImage getOriginal(){
+        awaitLoad();
         return original;
     }
 }
@@ -0,0 +1,292 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>
+ * Java Flight Recorder events for the slow parts of ANDIE.
+ * </p>
+ *
+ * <p>
+ * With a recording running ({@code java -XX:StartFlightRecording ...}, or started from
+ * JDK Mission Control), these show up under the ANDIE category alongside the JVM's own
+ * events. Each event is tagged with the thread it ran on, so a stall of the
+ * AWT-EventQueue thread can be matched to the operation, repaint or file read that
+ * caused it. When no recording is running the events cost next to nothing, and
+ * operation parameters are only worked out for events that will be recorded.
+ * </p>
+ *
+ * <p>
+ * Operations and ImageIO calls go through {@link #apply}, {@link #applyRegion},
+ * {@link #read} and {@link #write}, the panel and drag events are created where they
+ * happen.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /** An {@link ImageOperation} applied to an image. */
+    @Name("cosc202.andie.Operation")
+    @Label("Image Operation")
+    @Category("ANDIE")
+    @Description("An image operation being applied")
+    public static class OperationEvent extends Event {
+        @Label("Operation")
+        public String operation;
+        @Label("Parameters")
+        public String parameters;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("Region")
+        @Description("The part of the image computed, if not all of it")
+        public String region;
+    }
+
+    /** The image panel being painted. */
+    @Name("cosc202.andie.Paint")
+    @Label("Image Paint")
+    @Category("ANDIE")
+    @Description("The image panel painting the image")
+    public static class PaintEvent extends Event {
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("Zoom")
+        public double zoom;
+        @Label("Proxy")
+        @Description("Whether a preview rendered at a smaller size was stretched to fit")
+        public boolean proxy;
+        @Label("Preview Tiles")
+        public int tiles;
+    }
+
+    /** A live preview while a selection is dragged out with the mouse. */
+    @Name("cosc202.andie.DragPreview")
+    @Label("Drag Preview")
+    @Category("ANDIE")
+    @Description("A selection previewed while the mouse is dragged")
+    public static class DragPreviewEvent extends Event {
+        @Label("Operation")
+        public String operation;
+        @Label("X")
+        public int x;
+        @Label("Y")
+        public int y;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+    }
+
+    /** An image file read or written. */
+    @Name("cosc202.andie.ImageIO")
+    @Label("Image File")
+    @Category("ANDIE")
+    @Description("An image file being decoded or encoded")
+    public static class ImageIOEvent extends Event {
+        @Label("Write")
+        @Description("True for writing, false for reading")
+        public boolean write;
+        @Label("Path")
+        public String path;
+        @Label("Format")
+        public String format;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image, recording an {@link OperationEvent}.
+     * </p>
+     *
+     * @param op    The operation
+     * @param input The image to apply it to
+     * @return The result of the operation
+     */
+    public static BufferedImage apply(ImageOperation op, BufferedImage input) {
+        OperationEvent event = new OperationEvent();
+        event.begin();
+        BufferedImage output = op.apply(input);
+        if (event.shouldCommit()) {
+            describe(event, op, input);
+            event.commit();
+        }
+        return output;
+    }
+
+    /**
+     * <p>
+     * Apply an operation to part of an image (see {@link ImageOperation#applyRegion}),
+     * recording an {@link OperationEvent}.
+     * </p>
+     *
+     * @param op     The operation
+     * @param input  The image to apply it to
+     * @param region The rectangle to compute
+     * @return The result for the rectangle
+     */
+    public static BufferedImage applyRegion(ImageOperation op, BufferedImage input, Rectangle region) {
+        OperationEvent event = new OperationEvent();
+        event.begin();
+        BufferedImage output = op.applyRegion(input, region);
+        if (event.shouldCommit()) {
+            describe(event, op, input);
+            event.region = region.x + "," + region.y + " " + region.width + "x" + region.height;
+            event.commit();
+        }
+        return output;
+    }
+
+    /**
+     * <p>
+     * Read an image file with {@link ImageIO#read(File)}, recording an {@link ImageIOEvent}.
+     * </p>
+     *
+     * @param file The file to read
+     * @return The image, or null if no reader recognised the file
+     * @throws IOException If the file cannot be read
+     */
+    public static BufferedImage read(File file) throws IOException {
+        ImageIOEvent event = new ImageIOEvent();
+        event.begin();
+        BufferedImage image = ImageIO.read(file);
+        if (event.shouldCommit()) {
+            event.path = file.getPath();
+            int dot = file.getName().lastIndexOf('.');
+            event.format = dot < 0 ? null : file.getName().substring(dot + 1);
+            if (image != null) {
+                event.width = image.getWidth();
+                event.height = image.getHeight();
+            }
+            event.commit();
+        }
+        return image;
+    }
+
+    /**
+     * <p>
+     * Write an image file with {@link ImageIO#write(RenderedImage, String, File)},
+     * recording an {@link ImageIOEvent}.
+     * </p>
+     *
+     * @param image  The image to write
+     * @param format The format to write in
+     * @param file   The file to write to
+     * @return False if there is no writer for the format
+     * @throws IOException If the file cannot be written
+     */
+    public static boolean write(RenderedImage image, String format, File file) throws IOException {
+        ImageIOEvent event = new ImageIOEvent();
+        event.begin();
+        boolean written = ImageIO.write(image, format, file);
+        if (event.shouldCommit()) {
+            event.write = true;
+            event.path = file.getPath();
+            event.format = format;
+            event.width = image.getWidth();
+            event.height = image.getHeight();
+            event.commit();
+        }
+        return written;
+    }
+
+    /**
+     * Fills in the operation, its parameters and the image size.
+     *
+     * @param event the event to fill in
+     * @param op    the operation
+     * @param input the image it was applied to
+     */
+    private static void describe(OperationEvent event, ImageOperation op, BufferedImage input) {
+        event.operation = op.getClass().getName();
+        event.parameters = parameters(op);
+        event.width = input.getWidth();
+        event.height = input.getHeight();
+    }
+
+    /**
+     * Lists the fields of an operation, like {@code radius=3}, for the event.
+     *
+     * @param op the operation
+     * @return the fields and their values
+     */
+    private static String parameters(ImageOperation op) {
+        List<String> parameters = new ArrayList<String>();
+        for (Class<?> type = op.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    parameters.add(field.getName() + "=" + format(field.get(op)));
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    parameters.add(field.getName() + "=?");
+                }
+            }
+        }
+        return String.join(", ", parameters);
+    }
+
+    /**
+     * Formats a field value briefly.
+     *
+     * @param value the value
+     * @return a short description of it
+     */
+    private static String format(Object value) {
+        String text;
+        if (value instanceof ImageOperation) {
+            text = value.getClass().getSimpleName();
+        } else if (value instanceof Collection) {
+            List<String> items = new ArrayList<String>();
+            for (Object item : (Collection<?>) value) {
+                items.add(format(item));
+            }
+            text = items.toString();
+        } else if (value instanceof float[]) {
+            text = Arrays.toString((float[]) value);
+        } else if (value instanceof int[]) {
+            text = "int[" + ((int[]) value).length + "]";
+        } else if (value instanceof Object[]) {
+            text = "[" + ((Object[]) value).length + " items]";
+        } else {
+            text = String.valueOf(value);
+        }
+        // some operations carry large values, keep the event small
+        return text.length() > 80 ? text.substring(0, 77) + "..." : text;
+    }
+}
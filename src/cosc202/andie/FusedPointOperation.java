@@ -0,0 +1,165 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A run of {@link PointOperation}s done in a single pass over the image.
+ * </p>
+ *
+ * <p>
+ * Each pixel is read once, passed through every operation in turn, and written once.
+ * Consecutive per-channel operations are composed into one 256 entry lookup table, so
+ * for example invert followed by brightness/contrast costs a single table lookup per channel.
+ * </p>
+ *
+ * <p>
+ * Fused operations are only used to replay the operation stack, they are never saved
+ * to an ops file.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see OperationPlanner
+ * @author agent
+ * @version 1.0
+ */
+public class FusedPointOperation implements ImageOperation {
+
+    /** The operations in this run, in the order they are applied. */
+    private List<PointOperation> ops;
+
+    /** The compiled stages: an int[] lookup table or a PointOperation to call per pixel. */
+    private Object[] stages;
+
+    /**
+     * <p>
+     * Create a fused operation from a run of point operations.
+     * </p>
+     *
+     * @param ops The operations to apply, in order
+     */
+    public FusedPointOperation(List<PointOperation> ops) {
+        this.ops = new ArrayList<PointOperation>(ops);
+        this.stages = compile(this.ops);
+    }
+
+    /**
+     * Get the operations that make up this run.
+     *
+     * @return The fused operations, in order
+     */
+    public List<PointOperation> getOperations() {
+        return ops;
+    }
+
+    /**
+     * Get the number of operations in this run.
+     *
+     * @return The number of fused operations
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * A run of point operations is still a point operation.
+     *
+     * @return 0
+     */
+    @Override
+    public int getHaloRadius() {
+        return 0;
+    }
+
+    /**
+     * <p>
+     * Apply every operation in the run to an image in one pass.
+     * </p>
+     *
+     * @param input The image to apply the operations to
+     * @return The resulting image
+     */
+    public BufferedImage apply(BufferedImage input) {
+        int width = input.getWidth();
+        int[] src = PixelArrays.read(input);
+        BufferedImage output = PixelArrays.blank(input);
+        int[] dst = PixelArrays.data(output);
+        boolean direct = dst != null;
+        if (!direct) {
+            dst = new int[src.length];
+        }
+
+        final int[] out = dst;
+        PixelArrays.forEachBand(input.getHeight(), (y0, y1) -> {
+            for (int i = y0 * width; i < y1 * width; i++) {
+                out[i] = applyPixel(src[i]);
+            }
+        });
+
+        if (!direct) {
+            PixelArrays.write(output, dst);
+        }
+        return output;
+    }
+
+    /**
+     * Apply every stage to a single pixel.
+     *
+     * @param argb the input ARGB value
+     * @return the output ARGB value
+     */
+    private int applyPixel(int argb) {
+        for (Object stage : stages) {
+            if (stage instanceof int[]) {
+                int[] table = (int[]) stage;
+                argb = (argb & 0xFF000000) | (table[(argb >> 16) & 0xFF] << 16)
+                        | (table[(argb >> 8) & 0xFF] << 8) | table[argb & 0xFF];
+            } else {
+                argb = ((PointOperation) stage).applyPixel(argb);
+            }
+        }
+        return argb;
+    }
+
+    /**
+     * Turns the operations into stages, composing runs of per-channel operations
+     * into a single lookup table.
+     *
+     * @param ops the operations to compile
+     * @return the stages to apply to each pixel
+     */
+    private static Object[] compile(List<PointOperation> ops) {
+        List<Object> stages = new ArrayList<Object>();
+        int[] table = null;
+        for (PointOperation op : ops) {
+            if (!op.isPerChannel()) {
+                if (table != null) {
+                    stages.add(table);
+                    table = null;
+                }
+                stages.add(op);
+                continue;
+            }
+            if (table == null) {
+                table = new int[256];
+                for (int v = 0; v < 256; v++) {
+                    table[v] = v;
+                }
+            }
+            // compose with the table so far, sampling the operation on a grey pixel
+            for (int v = 0; v < 256; v++) {
+                int value = table[v];
+                table[v] = op.applyPixel(0xFF000000 | (value << 16) | (value << 8) | value) & 0xFF;
+            }
+        }
+        if (table != null) {
+            stages.add(table);
+        }
+        return stages.toArray();
+    }
+}
@@ -1,5 +1,6 @@
 package cosc202.andie;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -28,6 +29,12 @@ import java.awt.image.BufferedImage;
  */
 public interface ImageOperation {
 
+    /**
+     * The halo radius of an operation where an output pixel can depend on any input pixel,
+     * or whose output is not the same size as its input.
+     */
+    public static final int NOT_LOCAL = -1;
+
     /**
      * Apply the operation to an image.
      * 
@@ -39,4 +46,72 @@ public interface ImageOperation {
      * @return The image resulting from the operation
      */
     public BufferedImage apply(BufferedImage input);    
+
+    /**
+     * <p>
+     * Get an operation that has the same visible effect on a resized copy of the image.
+     * </p>
+     * 
+     * <p>
+     * Previews are rendered on a smaller copy of the image when it is zoomed out.
+     * Operations whose effect is measured in pixels, like the radius of a blur, should
+     * return a copy with that measurement scaled so the preview looks the same.
+     * By default the operation is returned unchanged.
+     * </p>
+     * 
+     * @param factor The size of the copy relative to the image, less than 1 for a smaller copy
+     * @return An operation to apply to the resized copy
+     */
+    public default ImageOperation scaled(double factor) {
+        return this;
+    }
+
+    /**
+     * <p>
+     * Get how far the operation reaches around each pixel.
+     * </p>
+     * 
+     * <p>
+     * An operation with a halo radius of r computes each output pixel from input pixels
+     * no more than r pixels away from it, in each direction, and gives an output the same
+     * size as its input. A point operation has a halo radius of 0, a 3x3 convolution a
+     * halo radius of 1. Operations like this can be applied to part of an image with
+     * {@link #applyRegion}. By default an operation is {@link #NOT_LOCAL}.
+     * </p>
+     * 
+     * @return The halo radius in pixels, or {@link #NOT_LOCAL}
+     */
+    public default int getHaloRadius() {
+        return NOT_LOCAL;
+    }
+
+    /**
+     * <p>
+     * Apply the operation to a rectangle of an image only.
+     * </p>
+     * 
+     * <p>
+     * The rectangle is cut out of the input along with the operation's halo, so pixels
+     * near the edge of the rectangle see the same neighbours as they would in the whole
+     * image, and the halo is trimmed off the result. The result is the same as that
+     * rectangle of {@code apply(input)}, without the cost of computing the rest.
+     * </p>
+     * 
+     * @param input The image to apply the operation to
+     * @param region The rectangle of the image to compute, which must overlap the image
+     * @return The result for the rectangle, clipped to the image
+     * @throws UnsupportedOperationException If the operation is {@link #NOT_LOCAL}
+     */
+    public default BufferedImage applyRegion(BufferedImage input, Rectangle region) {
+        int halo = getHaloRadius();
+        if (halo < 0) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " can only be applied to a whole image");
+        }
+        Rectangle bounds = new Rectangle(input.getWidth(), input.getHeight());
+        Rectangle clipped = region.intersection(bounds);
+        Rectangle padded = new Rectangle(clipped.x - halo, clipped.y - halo,
+                clipped.width + 2 * halo, clipped.height + 2 * halo).intersection(bounds);
+        BufferedImage output = apply(input.getSubimage(padded.x, padded.y, padded.width, padded.height));
+        return output.getSubimage(clipped.x - padded.x, clipped.y - padded.y, clipped.width, clipped.height);
+    }
 }
@@ -1,7 +1,10 @@
 package cosc202.andie;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Map;
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 
 /**
  * <p>
@@ -39,6 +42,12 @@ public class ImagePanel extends JPanel {
      */
     private double scale;
 
+    /** Fills in a preview as the viewport scrolls, see {@link #addNotify}. */
+    private ChangeListener scrollListener = e -> image.extendPreview(getVisibleImageRect(), this::repaint);
+
+    /** The viewport {@link scrollListener} was added to, or null. */
+    private JViewport viewport;
+
     /**
      * <p>
      * Create a new ImagePanel.
@@ -53,6 +62,60 @@ public class ImagePanel extends JPanel {
         scale = 1.0;
     }
 
+    /**
+     * <p>
+     * Called when the panel is added to a container.
+     * </p>
+     * 
+     * <p>
+     * When the container is a scroll pane's viewport, the panel listens for scrolling so
+     * a preview rendered only where it was visible can be filled in as more comes into
+     * view (see {@link EditableImage#extendPreview}).
+     * </p>
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            viewport = (JViewport) getParent();
+            viewport.addChangeListener(scrollListener);
+        }
+    }
+
+    /**
+     * <p>
+     * Called when the panel is removed from its container.
+     * </p>
+     * 
+     * <p>
+     * Stops listening to the viewport, so adding the panel again does not listen twice.
+     * </p>
+     */
+    @Override
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(scrollListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * <p>
+     * Get the part of the image that is on screen.
+     * </p>
+     * 
+     * @return The visible rectangle in image pixels, rounded outwards.
+     */
+    public Rectangle getVisibleImageRect() {
+        Rectangle view = getVisibleRect();
+        int x = (int) Math.floor(view.x / scale);
+        int y = (int) Math.floor(view.y / scale);
+        int width = (int) Math.ceil((view.x + view.width) / scale) - x;
+        int height = (int) Math.ceil((view.y + view.height) / scale) - y;
+        return new Rectangle(x, y, width, height);
+    }
+
     /**
      * <p>
      * Get the currently displayed image
@@ -111,8 +174,8 @@ public class ImagePanel extends JPanel {
     @Override
     public Dimension getPreferredSize() {
         if (image.hasImage()) {
-            return new Dimension((int) Math.round(image.getCurrentImage().getWidth()*scale), 
-                                 (int) Math.round(image.getCurrentImage().getHeight()*scale));
+            return new Dimension((int) Math.round(image.getWidth()*scale), 
+                                 (int) Math.round(image.getHeight()*scale));
         } else {
             return new Dimension(450, 450);
         }
@@ -123,16 +186,56 @@ public class ImagePanel extends JPanel {
      * (Re)draw the component in the GUI.
      * </p>
      * 
+     * <p>
+     * While a large image is still being opened (see {@link EditableImage#openProgressive})
+     * the smaller copy read first is drawn at the size of the whole image, or a plain
+     * placeholder of that size until there is one.
+     * </p>
+     * 
      * @param g The Graphics component to draw the image on.
      */
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (image.hasImage()) {
+        if (image.isLoading()) {
+            // at most a smaller copy has been read so far, stretch it to the whole image
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.scale(scale, scale);
+            BufferedImage preview = image.getLoadingPreview();
+            if (preview == null) {
+                g2.setColor(getBackground().darker());
+                g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+            } else {
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2.drawImage(preview, 0, 0, image.getWidth(), image.getHeight(), null);
+            }
+            g2.dispose();
+        } else if (image.hasImage()) {
+            FlightEvents.PaintEvent event = new FlightEvents.PaintEvent();
+            event.begin();
             Graphics2D g2  = (Graphics2D) g.create();
             g2.scale(scale, scale);
-            g2.drawImage(image.getCurrentImage(), null, 0, 0);
+            BufferedImage display = image.getDisplayImage();
+            BufferedImage current = image.getCurrentImage();
+            if (display == current) {
+                g2.drawImage(current, null, 0, 0);
+            } else {
+                // a preview rendered smaller than the image, stretch it to fit
+                g2.drawImage(display, 0, 0, current.getWidth(), current.getHeight(), null);
+            }
+            // the parts of a preview rendered only where they were visible
+            for (Map.Entry<Rectangle, BufferedImage> tile : image.getPreviewTiles().entrySet()) {
+                g2.drawImage(tile.getValue(), null, tile.getKey().x, tile.getKey().y);
+            }
             g2.dispose();
+            if (event.shouldCommit()) {
+                event.width = current.getWidth();
+                event.height = current.getHeight();
+                event.zoom = scale;
+                event.proxy = display != current;
+                event.tiles = image.getPreviewTiles().size();
+                event.commit();
+            }
         }
     }
 }
@@ -0,0 +1,232 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Records how long the editor's actions take and how much they allocate, for each
+ * operation class.
+ * </p>
+ *
+ * <p>
+ * {@link EditableImage} times its apply, applyTemp, undo, redo, refresh, render, open and
+ * export with {@link #start()} and {@link Sample#stop}. With lazy operations, the work of
+ * applying is mostly counted under render. Each call is filed under the action
+ * and the class of the operation involved, such as {@code "undo:MedianFilter"}, with
+ * its wall time, the bytes allocated while it ran and the size of the image. Bytes are
+ * counted on every thread, as most operations do their work on the fork-join pool,
+ * so anything else running at the same time is counted too.
+ * </p>
+ *
+ * <p>
+ * The statistics are published as the MXBean {@value #NAME} on the platform MBean
+ * server, so they can be read with jconsole or any other JMX client attached to a
+ * running editor.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see OperationStats
+ * @author agent
+ * @version 1.0
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+
+    /** The name the metrics are registered under. */
+    public static final String NAME = "cosc202.andie:type=OperationMetrics";
+
+    /** The number of buckets in each histogram. */
+    private static final int BUCKETS = 48;
+
+    /** The shared instance, registered when first used. */
+    private static final OperationMetrics INSTANCE = new OperationMetrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName(NAME));
+        } catch (JMException | SecurityException e) {
+            // the metrics are still recorded, they just can't be seen over JMX
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    /** The accumulators for each action, by name. */
+    private final Map<String, Recorder> recorders = new TreeMap<String, Recorder>();
+
+    private OperationMetrics() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * Get the shared metrics.
+     *
+     * @return The metrics every image records to
+     */
+    public static OperationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * <p>
+     * Start timing an action.
+     * </p>
+     *
+     * @return The start of the sample, to {@link Sample#stop} when the action is done
+     */
+    public static Sample start() {
+        return INSTANCE.new Sample();
+    }
+
+    /**
+     * <p>
+     * A call being timed.
+     * </p>
+     */
+    public final class Sample {
+        private final long startNanos;
+        private final long startBytes;
+
+        private Sample() {
+            startBytes = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * <p>
+         * Finish timing the call and record it.
+         * </p>
+         *
+         * @param action The action, such as {@code "apply"}
+         * @param op     The operation involved, or null if there isn't just one
+         * @param image  The image worked on, or null if there isn't one
+         */
+        public void stop(String action, ImageOperation op, BufferedImage image) {
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = startBytes < 0 ? -1 : Math.max(0, allocatedBytes() - startBytes);
+            String name = op == null ? action : action + ":" + op.getClass().getSimpleName();
+            Recorder recorder;
+            synchronized (recorders) {
+                recorder = recorders.computeIfAbsent(name, n -> new Recorder());
+            }
+            recorder.record(nanos, bytes, image);
+        }
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        Map<String, OperationStats> stats = new TreeMap<String, OperationStats>();
+        synchronized (recorders) {
+            for (Map.Entry<String, Recorder> recorder : recorders.entrySet()) {
+                stats.put(recorder.getKey(), recorder.getValue().snapshot());
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (OperationStats stats : getOperations().values()) {
+            count += stats.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        synchronized (recorders) {
+            recorders.clear();
+        }
+    }
+
+    /**
+     * Adds up the bytes every live thread has allocated.
+     *
+     * @return the total, or -1 if the JVM cannot measure it
+     */
+    private long allocatedBytes() {
+        if (threads == null) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Finds the power of two bucket for a value.
+     *
+     * @param value the value
+     * @return the bucket, values below 2 go in bucket 0
+     */
+    private static int bucket(long value) {
+        if (value < 2) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(value));
+    }
+
+    /** The running totals for one action. */
+    private static final class Recorder {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private final long[] latency = new long[BUCKETS];
+        private long totalBytes;
+        private long maxBytes;
+        private final long[] allocation = new long[BUCKETS];
+        private long totalPixels;
+        private int lastWidth;
+        private int lastHeight;
+
+        synchronized void record(long nanos, long bytes, BufferedImage image) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            latency[bucket(nanos / 1000)]++;
+            if (bytes < 0 || totalBytes < 0) {
+                totalBytes = -1;
+                maxBytes = -1;
+            } else {
+                totalBytes += bytes;
+                maxBytes = Math.max(maxBytes, bytes);
+                allocation[bucket(bytes)]++;
+            }
+            if (image != null) {
+                lastWidth = image.getWidth();
+                lastHeight = image.getHeight();
+                totalPixels += (long) lastWidth * lastHeight;
+            } else {
+                lastWidth = 0;
+                lastHeight = 0;
+            }
+        }
+
+        synchronized OperationStats snapshot() {
+            return new OperationStats(count, totalNanos, maxNanos, latency.clone(), totalBytes, maxBytes,
+                    allocation.clone(), totalPixels, lastWidth, lastHeight);
+        }
+    }
+}
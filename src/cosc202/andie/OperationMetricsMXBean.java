@@ -0,0 +1,38 @@
+package cosc202.andie;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * The management interface of {@link OperationMetrics}, as shown in jconsole.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public interface OperationMetricsMXBean {
+
+    /**
+     * Get the statistics recorded so far.
+     *
+     * @return The statistics, by action and operation class, for example
+     *         {@code "apply:GaussianBlurFilter"} or {@code "open"}
+     */
+    public Map<String, OperationStats> getOperations();
+
+    /**
+     * Get the number of calls recorded so far, across every action.
+     *
+     * @return The number of calls
+     */
+    public long getCount();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset();
+}
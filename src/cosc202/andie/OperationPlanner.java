@@ -0,0 +1,86 @@
+package cosc202.andie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Plans how to replay a sequence of {@link ImageOperation}s.
+ * </p>
+ *
+ * <p>
+ * Applying operations one at a time reads and writes the whole image for each of them.
+ * The planner finds runs of consecutive {@link PointOperation}s and replaces each run with
+ * a single {@link FusedPointOperation}, so the run touches the image once. All other
+ * operations are left as they are.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class OperationPlanner {
+
+    private OperationPlanner() {
+    }
+
+    /**
+     * <p>
+     * Plan the steps needed to apply a sequence of operations.
+     * </p>
+     *
+     * <p>
+     * Applying the returned steps in order gives the same image as applying the
+     * operations in order. A step is either one of the original operations or a
+     * {@link FusedPointOperation} standing in for two or more of them.
+     * </p>
+     *
+     * @param ops The operations to apply, in order
+     * @return The steps to apply, in order
+     */
+    public static List<ImageOperation> plan(List<? extends ImageOperation> ops) {
+        List<ImageOperation> steps = new ArrayList<ImageOperation>();
+        List<PointOperation> run = new ArrayList<PointOperation>();
+        for (ImageOperation op : ops) {
+            if (op instanceof PointOperation) {
+                run.add((PointOperation) op);
+                continue;
+            }
+            endRun(run, steps);
+            steps.add(op);
+        }
+        endRun(run, steps);
+        return steps;
+    }
+
+    /**
+     * Get the number of operations a planned step stands in for.
+     *
+     * @param step A step returned by {@link plan}
+     * @return The number of original operations the step applies
+     */
+    public static int size(ImageOperation step) {
+        if (step instanceof FusedPointOperation) {
+            return ((FusedPointOperation) step).size();
+        }
+        return 1;
+    }
+
+    /**
+     * Adds a run of point operations to the steps, fused if there is more than one.
+     *
+     * @param run   the run of point operations, cleared afterwards
+     * @param steps the steps to add to
+     */
+    private static void endRun(List<PointOperation> run, List<ImageOperation> steps) {
+        if (run.size() == 1) {
+            steps.add(run.get(0));
+        } else if (run.size() > 1) {
+            steps.add(new FusedPointOperation(run));
+        }
+        run.clear();
+    }
+}
@@ -0,0 +1,212 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * A snapshot of the statistics {@link OperationMetrics} has recorded for one action.
+ * </p>
+ *
+ * <p>
+ * Times and allocations are kept in histograms with power of two buckets. Bucket
+ * {@code i} of the latency histogram counts calls that took at least 2<sup>i</sup>
+ * microseconds and less than 2<sup>i+1</sup> (bucket 0 also counts anything faster),
+ * bucket {@code i} of the allocation histogram the same in bytes. Percentiles are
+ * read off the histograms, so are accurate to within a factor of two, and given as
+ * the upper bound of their bucket.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class OperationStats {
+
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long[] latencyHistogram;
+    private final long totalAllocatedBytes;
+    private final long maxAllocatedBytes;
+    private final long[] allocationHistogram;
+    private final long totalPixels;
+    private final int lastWidth;
+    private final int lastHeight;
+
+    OperationStats(long count, long totalNanos, long maxNanos, long[] latencyHistogram,
+            long totalAllocatedBytes, long maxAllocatedBytes, long[] allocationHistogram,
+            long totalPixels, int lastWidth, int lastHeight) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.latencyHistogram = latencyHistogram;
+        this.totalAllocatedBytes = totalAllocatedBytes;
+        this.maxAllocatedBytes = maxAllocatedBytes;
+        this.allocationHistogram = allocationHistogram;
+        this.totalPixels = totalPixels;
+        this.lastWidth = lastWidth;
+        this.lastHeight = lastHeight;
+    }
+
+    /**
+     * Get the number of calls recorded.
+     *
+     * @return The number of calls
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the total wall time of every call.
+     *
+     * @return The total time in milliseconds
+     */
+    public double getTotalMillis() {
+        return totalNanos / 1e6;
+    }
+
+    /**
+     * Get the mean wall time of a call.
+     *
+     * @return The mean time in milliseconds
+     */
+    public double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    /**
+     * Get the longest wall time of a call.
+     *
+     * @return The longest time in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Get the median wall time of a call.
+     *
+     * @return The median time in milliseconds, to within a factor of two
+     */
+    public double getP50Millis() {
+        return percentile(latencyHistogram, 0.5) / 1e3;
+    }
+
+    /**
+     * Get the 90th percentile wall time of a call.
+     *
+     * @return The 90th percentile in milliseconds, to within a factor of two
+     */
+    public double getP90Millis() {
+        return percentile(latencyHistogram, 0.9) / 1e3;
+    }
+
+    /**
+     * Get the 99th percentile wall time of a call.
+     *
+     * @return The 99th percentile in milliseconds, to within a factor of two
+     */
+    public double getP99Millis() {
+        return percentile(latencyHistogram, 0.99) / 1e3;
+    }
+
+    /**
+     * Get the histogram of wall times.
+     *
+     * @return The number of calls in each power of two bucket of microseconds
+     */
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * Get the mean bytes allocated by a call, on every thread.
+     *
+     * @return The mean allocation in bytes, or -1 if the JVM cannot measure it
+     */
+    public long getMeanAllocatedBytes() {
+        if (totalAllocatedBytes < 0) {
+            return -1;
+        }
+        return count == 0 ? 0 : totalAllocatedBytes / count;
+    }
+
+    /**
+     * Get the most bytes allocated by a call, on every thread.
+     *
+     * @return The largest allocation in bytes, or -1 if the JVM cannot measure it
+     */
+    public long getMaxAllocatedBytes() {
+        return maxAllocatedBytes;
+    }
+
+    /**
+     * Get the 99th percentile of bytes allocated by a call.
+     *
+     * @return The 99th percentile in bytes, to within a factor of two
+     */
+    public long getP99AllocatedBytes() {
+        return percentile(allocationHistogram, 0.99);
+    }
+
+    /**
+     * Get the histogram of bytes allocated.
+     *
+     * @return The number of calls in each power of two bucket of bytes
+     */
+    public long[] getAllocationHistogram() {
+        return allocationHistogram.clone();
+    }
+
+    /**
+     * Get the mean size of the images worked on.
+     *
+     * @return The mean number of pixels, in millions
+     */
+    public double getMeanMegapixels() {
+        return count == 0 ? 0 : totalPixels / 1e6 / count;
+    }
+
+    /**
+     * Get the width of the image worked on by the latest call.
+     *
+     * @return The width in pixels, 0 if there was no image
+     */
+    public int getLastWidth() {
+        return lastWidth;
+    }
+
+    /**
+     * Get the height of the image worked on by the latest call.
+     *
+     * @return The height in pixels, 0 if there was no image
+     */
+    public int getLastHeight() {
+        return lastHeight;
+    }
+
+    /**
+     * Reads a percentile off a power of two histogram.
+     *
+     * @param histogram the histogram
+     * @param fraction  the percentile, between 0 and 1
+     * @return the upper bound of the bucket the percentile falls in, 0 if empty
+     */
+    private static long percentile(long[] histogram, double fraction) {
+        long total = 0;
+        for (long bucket : histogram) {
+            total += bucket;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << (i + 1);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,484 @@
+package cosc202.andie;
+
+import java.awt.Color;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import cosc202.andie.actions.colour.*;
+import cosc202.andie.actions.filter.*;
+import cosc202.andie.actions.tool.*;
+
+/**
+ * <p>
+ * Reads and writes <code>.ops</code> files.
+ * </p>
+ *
+ * <p>
+ * Operations are stored in a compact binary format rather than with Java serialisation,
+ * which is slow to read, bloated, and breaks whenever an operation class changes.
+ * A file is laid out as:
+ * </p>
+ *
+ * <pre>
+ * "ANDIEOPS"  magic
+ * int         format version
+ * int         number of operations
+ * then for each operation:
+ *     UTF     tag naming the type of operation
+ *     byte    flags, {@link #COMPRESSED} if the payload is deflated
+ *     int     payload length in bytes
+ *     byte[]  payload, the operation's parameters
+ * </pre>
+ *
+ * <p>
+ * Each type of operation has its own encoder and decoder for its parameters. Operations
+ * without one (for example ones added after this class) are stored as a Java serialised
+ * payload so they are never lost. Payloads bigger than {@link #COMPRESS_THRESHOLD} are
+ * compressed. The mask of an {@link AlphaMask} is kept compressed already (see
+ * {@link MaskData}), and is only stored the first time it is used in a file.
+ * </p>
+ *
+ * <p>
+ * Files that do not start with the magic are read as the older Java serialised
+ * {@link Stack}, so ops files saved by earlier versions of ANDIE still open.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class OpsFile {
+
+    /** The bytes every binary ops file starts with. */
+    private static final byte[] MAGIC = { 'A', 'N', 'D', 'I', 'E', 'O', 'P', 'S' };
+    /** The version of the format written by this class, 2 stores each alpha mask once. */
+    public static final int VERSION = 2;
+    /** Record flag: the payload is deflated. */
+    public static final int COMPRESSED = 1;
+    /** Payloads bigger than this many bytes are compressed. */
+    public static final int COMPRESS_THRESHOLD = 4096;
+    /** Tag for operations stored with Java serialisation. */
+    private static final String SERIALIZED = "java";
+    /** Size of the read buffer in front of the file channel. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** What is known about the file being read or written, shared by its records. */
+    private static class Session {
+        /** The version of the file's format. */
+        int version = VERSION;
+        /** The hashes of the alpha masks already in the file. */
+        Set<String> masks = new HashSet<String>();
+    }
+
+    /** Writes the parameters of one type of operation. */
+    private interface Encoder<T extends ImageOperation> {
+        void write(T op, DataOutputStream out, Session session) throws IOException;
+    }
+
+    /** Reads the parameters of one type of operation and creates it. */
+    private interface Decoder {
+        ImageOperation read(DataInputStream in, Session session) throws IOException;
+    }
+
+    private static final Map<Class<?>, String> TAGS = new HashMap<Class<?>, String>();
+    private static final Map<Class<?>, Encoder<?>> ENCODERS = new HashMap<Class<?>, Encoder<?>>();
+    private static final Map<String, Decoder> DECODERS = new HashMap<String, Decoder>();
+
+    static {
+        // tags are part of the file format, never change or reuse one
+        register("invert", InvertColour.class, (op, out, session) -> {}, (in, session) -> new InvertColour());
+        register("grey", ConvertToGrey.class, (op, out, session) -> {}, (in, session) -> new ConvertToGrey());
+        register("brightness_contrast", BrightnessAndContrast.class, (op, out, session) -> {
+            out.writeInt(op.getBrightness());
+            out.writeInt(op.getContrast());
+        }, (in, session) -> new BrightnessAndContrast(in.readInt(), in.readInt()));
+        register("alpha_mask", AlphaMask.class, (op, out, session) -> writeMask(op.getMaskData(), out, session),
+                (in, session) -> new AlphaMask(readMask(in, session)));
+
+        register("gaussian_blur", GaussianBlurFilter.class, (op, out, session) -> out.writeInt(op.getRadius()),
+                (in, session) -> new GaussianBlurFilter(in.readInt()));
+        register("mean", MeanFilter.class, (op, out, session) -> out.writeInt(op.getRadius()),
+                (in, session) -> new MeanFilter(in.readInt()));
+        register("median", MedianFilter.class, (op, out, session) -> out.writeInt(op.getRadius()),
+                (in, session) -> new MedianFilter(in.readInt()));
+        register("negative", NegativeFilter.class, (op, out, session) -> out.writeInt(op.getChoice()),
+                (in, session) -> new NegativeFilter(in.readInt()));
+        register("sharpen", SharpenFilter.class, (op, out, session) -> {}, (in, session) -> new SharpenFilter());
+        register("soft_blur", SoftBlurFilter.class, (op, out, session) -> {}, (in, session) -> new SoftBlurFilter());
+        register("revert", Revert.class, (op, out, session) -> {}, (in, session) -> new Revert());
+
+        register("flip", ImageFlip.class, (op, out, session) -> out.writeBoolean(op.isHorizontal()),
+                (in, session) -> new ImageFlip(in.readBoolean()));
+        register("resize", ResizeTool.class, (op, out, session) -> out.writeInt(op.getScale()),
+                (in, session) -> new ResizeTool(in.readInt()));
+        register("rotate", RotateTool.class, (op, out, session) -> out.writeInt(op.getDegrees()),
+                (in, session) -> new RotateTool(in.readInt()));
+        register("crop", Crop.class, (op, out, session) -> writePoints(op, out), (in, session) -> readPoints(new Crop(), in));
+        register("region", RegionSelector.class, (op, out, session) -> {
+            out.writeUTF(op.getShape());
+            out.writeInt(op.getColour().getRGB());
+            out.writeBoolean(op.isFill());
+            out.writeInt(op.getStrokeSize());
+            writePoints(op, out);
+        }, (in, session) -> {
+            String shape = in.readUTF();
+            Color colour = new Color(in.readInt(), true);
+            boolean fill = in.readBoolean();
+            int strokeSize = in.readInt();
+            return readPoints(new RegionSelector(shape, colour, fill, strokeSize), in);
+        });
+    }
+
+    private OpsFile() {
+    }
+
+    /**
+     * <p>
+     * Write a sequence of operations to a file.
+     * </p>
+     *
+     * @param filePath The file to write to
+     * @param ops      The operations, in the order they are applied
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(String filePath, List<? extends ImageOperation> ops) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ops.size());
+            Session session = new Session();
+            for (ImageOperation op : ops) {
+                writeRecord(op, out, session);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Read a sequence of operations from a file.
+     * </p>
+     *
+     * <p>
+     * Both the binary format and older Java serialised files can be read.
+     * </p>
+     *
+     * @param filePath The file to read
+     * @return The operations, in the order they are applied
+     * @throws IOException            If the file cannot be read or is not an ops file
+     * @throws ClassNotFoundException If a serialised operation's class no longer exists
+     */
+    public static Stack<ImageOperation> read(String filePath) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE))) {
+            in.mark(MAGIC.length);
+            byte[] magic = new byte[MAGIC.length];
+            int read = in.readNBytes(magic, 0, magic.length);
+            if (read != MAGIC.length || !Arrays.equals(magic, MAGIC)) {
+                in.reset();
+                return readSerialized(in);
+            }
+
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("Ops file version " + version + " is newer than this version of ANDIE");
+            }
+            int count = in.readInt();
+            Session session = new Session();
+            session.version = version;
+            Stack<ImageOperation> ops = new Stack<ImageOperation>();
+            for (int i = 0; i < count; i++) {
+                ops.add(readRecord(in, session));
+            }
+            return ops;
+        }
+    }
+
+    /**
+     * Adds the encoder and decoder for a type of operation.
+     *
+     * @param tag     the name stored in the file for this type
+     * @param type    the class of the operation
+     * @param encoder writes the operation's parameters
+     * @param decoder reads the parameters and creates the operation
+     */
+    private static <T extends ImageOperation> void register(String tag, Class<T> type, Encoder<T> encoder,
+            Decoder decoder) {
+        TAGS.put(type, tag);
+        ENCODERS.put(type, encoder);
+        DECODERS.put(tag, decoder);
+    }
+
+    /**
+     * Writes one operation as a record.
+     *
+     * @param op      the operation to write
+     * @param out     where to write it
+     * @param session the file being written
+     * @throws IOException if it cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeRecord(ImageOperation op, DataOutputStream out, Session session) throws IOException {
+        String tag = TAGS.get(op.getClass());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (tag != null) {
+            DataOutputStream payload = new DataOutputStream(bytes);
+            ((Encoder<ImageOperation>) ENCODERS.get(op.getClass())).write(op, payload, session);
+            payload.flush();
+        } else {
+            tag = SERIALIZED;
+            ObjectOutputStream payload = new ObjectOutputStream(bytes);
+            payload.writeObject(op);
+            payload.flush();
+        }
+
+        byte[] payload = bytes.toByteArray();
+        int flags = 0;
+        if (payload.length > COMPRESS_THRESHOLD) {
+            byte[] compressed = deflate(payload);
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                flags |= COMPRESSED;
+            }
+        }
+
+        out.writeUTF(tag);
+        out.writeByte(flags);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Reads one record and creates its operation.
+     *
+     * @param in      where to read from
+     * @param session the file being read
+     * @return the operation
+     * @throws IOException            if the record cannot be read or has an unknown tag
+     * @throws ClassNotFoundException if a serialised operation's class no longer exists
+     */
+    private static ImageOperation readRecord(DataInputStream in, Session session) throws IOException, ClassNotFoundException {
+        String tag = in.readUTF();
+        int flags = in.readUnsignedByte();
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt ops file record: " + tag);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        InputStream payload = new ByteArrayInputStream(bytes);
+        if ((flags & COMPRESSED) != 0) {
+            payload = new InflaterInputStream(payload);
+        }
+        if (tag.equals(SERIALIZED)) {
+            try (ObjectInputStream objIn = new ObjectInputStream(payload)) {
+                return (ImageOperation) objIn.readObject();
+            }
+        }
+        Decoder decoder = DECODERS.get(tag);
+        if (decoder == null) {
+            throw new IOException("Unknown operation in ops file: " + tag);
+        }
+        return decoder.read(new DataInputStream(payload), session);
+    }
+
+    /**
+     * Reads an ops file saved with Java serialisation.
+     *
+     * @param in the file, from the start
+     * @return the operations
+     * @throws IOException            if the file cannot be read
+     * @throws ClassNotFoundException if an operation's class no longer exists
+     */
+    private static Stack<ImageOperation> readSerialized(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream objIn = new ObjectInputStream(in);
+
+        // Silence the Java compiler warning about type casting, the elements
+        // of the Stack cannot be checked because of type erasure.
+        @SuppressWarnings("unchecked")
+        Stack<ImageOperation> ops = (Stack<ImageOperation>) objIn.readObject();
+        return ops;
+    }
+
+    /**
+     * <p>
+     * Get a stable identity for an operation and its parameters.
+     * </p>
+     *
+     * <p>
+     * Two operations have the same identity exactly when they are the same type with the
+     * same parameters, so they would be stored the same way in an ops file. The identity
+     * is built from the operation's encoder, so it is the same from one run of ANDIE to
+     * the next. A fused run of colour operations is identified by the operations in it.
+     * Used in the keys of a {@link ResultCache}.
+     * </p>
+     *
+     * @param op The operation to identify.
+     * @return The identity, or null if the operation has no encoder of its own.
+     */
+    @SuppressWarnings("unchecked")
+    public static String identify(ImageOperation op) {
+        if (op instanceof FusedPointOperation) {
+            StringJoiner parts = new StringJoiner(",", "fused[", "]");
+            for (PointOperation part : ((FusedPointOperation) op).getOperations()) {
+                String identity = identify(part);
+                if (identity == null) {
+                    return null;
+                }
+                parts.add(identity);
+            }
+            return parts.toString();
+        }
+        String tag = TAGS.get(op.getClass());
+        if (tag == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream payload = new DataOutputStream(bytes);
+            ((Encoder<ImageOperation>) ENCODERS.get(op.getClass())).write(op, payload, new Session());
+            payload.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        if (payload.length <= 32) {
+            return tag + ":" + HexFormat.of().formatHex(payload);
+        }
+        // masks and the like, keep the identity short
+        try {
+            return tag + "#" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(payload));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * Compresses a payload.
+     *
+     * @param payload the bytes to compress
+     * @return the deflated bytes
+     * @throws IOException never, the bytes are in memory
+     */
+    private static byte[] deflate(byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an alpha mask. Only the first use of a mask in a file stores its data,
+     * later uses refer back to it by hash. The data is already compressed.
+     *
+     * @param mask    the mask to write
+     * @param out     where to write it
+     * @param session the file being written
+     * @throws IOException if it cannot be written
+     */
+    private static void writeMask(MaskData mask, DataOutputStream out, Session session) throws IOException {
+        out.writeUTF(mask.getHash());
+        boolean first = session.masks.add(mask.getHash());
+        out.writeBoolean(first);
+        if (first) {
+            out.writeInt(mask.getWidth());
+            out.writeInt(mask.getHeight());
+            out.writeBoolean(mask.hasAlpha());
+            byte[] compressed = mask.getCompressed();
+            out.writeInt(compressed.length);
+            out.write(compressed);
+        }
+    }
+
+    /**
+     * Reads an alpha mask, sharing it with any identical mask already loaded.
+     *
+     * @param in      where to read from
+     * @param session the file being read
+     * @return the mask
+     * @throws IOException if it cannot be read, refers to a mask not in the file, or
+     *                     the mask does not match its hash
+     */
+    private static MaskData readMask(DataInputStream in, Session session) throws IOException {
+        if (session.version < 2) {
+            // version 1 stored the grey and alpha planes of every mask uncompressed
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] grey = new byte[width * height];
+            in.readFully(grey);
+            byte[] alpha = null;
+            if (in.readBoolean()) {
+                alpha = new byte[grey.length];
+                in.readFully(alpha);
+            }
+            int[] argb = new int[grey.length];
+            for (int i = 0; i < argb.length; i++) {
+                int a = alpha == null ? 0xFF : alpha[i] & 0xFF;
+                int g = grey[i] & 0xFF;
+                argb[i] = (a << 24) | (g << 16) | (g << 8) | g;
+            }
+            return MaskData.intern(width, height, argb);
+        }
+
+        String hash = in.readUTF();
+        if (!in.readBoolean()) {
+            // the mask is held by an operation read earlier in the file
+            MaskData mask = session.masks.contains(hash) ? MaskData.lookup(hash) : null;
+            if (mask == null) {
+                throw new IOException("Ops file refers to a missing alpha mask: " + hash);
+            }
+            return mask;
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        boolean hasAlpha = in.readBoolean();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        session.masks.add(hash);
+        return MaskData.intern(hash, width, height, hasAlpha, compressed);
+    }
+
+    /**
+     * Writes the two points of a selection.
+     *
+     * @param selection the selection
+     * @param out       where to write them
+     * @throws IOException if they cannot be written
+     */
+    private static void writePoints(Selection selection, DataOutputStream out) throws IOException {
+        out.writeInt(selection.getX1());
+        out.writeInt(selection.getY1());
+        out.writeInt(selection.getX2());
+        out.writeInt(selection.getY2());
+    }
+
+    /**
+     * Reads the two points of a selection.
+     *
+     * @param selection the selection to set the points of
+     * @param in        where to read them from
+     * @return the selection
+     * @throws IOException if they cannot be read
+     */
+    private static Selection readPoints(Selection selection, DataInputStream in) throws IOException {
+        selection.setX1(in.readInt());
+        selection.setY1(in.readInt());
+        selection.setX2(in.readInt());
+        selection.setY2(in.readInt());
+        return selection;
+    }
+}
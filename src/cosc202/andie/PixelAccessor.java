@@ -0,0 +1,527 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+
+/**
+ * <p>
+ * Reads and writes the pixels of a {@link BufferedImage} as packed, non-premultiplied
+ * ARGB values, straight from its {@link DataBuffer}.
+ * </p>
+ *
+ * <p>
+ * {@link BufferedImage#getRGB(int, int)} and {@link BufferedImage#setRGB(int, int, int)}
+ * ask the image's colour model to convert every pixel, which costs far more than the
+ * array access underneath. {@link #of(BufferedImage)} picks an accessor that knows the
+ * layout of the common image types and unpacks the samples itself:
+ * {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_INT_RGB},
+ * {@link BufferedImage#TYPE_3BYTE_BGR} (what ImageIO gives for most JPEGs),
+ * {@link BufferedImage#TYPE_4BYTE_ABGR} and {@link BufferedImage#TYPE_BYTE_GRAY}.
+ * Anything else falls back to <code>getRGB</code>/<code>setRGB</code>.
+ * Either way the values are exactly those <code>getRGB</code> would give, and writing
+ * them has exactly the effect of <code>setRGB</code>, so images without an alpha
+ * channel drop it.
+ * </p>
+ *
+ * <p>
+ * Sub-images (see {@link BufferedImage#getSubimage}) are supported, an accessor only
+ * sees the pixels of the image it was made for.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see PixelArrays
+ * @author agent
+ * @version 1.0
+ */
+public abstract class PixelAccessor {
+
+    /** The width of the image. */
+    protected final int width;
+
+    /** The height of the image. */
+    protected final int height;
+
+    /**
+     * Create an accessor for an image of the given size.
+     *
+     * @param width  The width of the image
+     * @param height The height of the image
+     */
+    protected PixelAccessor(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * <p>
+     * Get an accessor for the pixels of an image.
+     * </p>
+     *
+     * @param image The image to access
+     * @return The fastest accessor that supports the image's layout
+     */
+    public static PixelAccessor of(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        SampleModel model = raster.getSampleModel();
+        if (buffer.getNumBanks() == 1) {
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_ARGB:
+                case BufferedImage.TYPE_INT_RGB:
+                    if (buffer instanceof DataBufferInt && model instanceof SinglePixelPackedSampleModel) {
+                        return new IntAccessor(image, (DataBufferInt) buffer,
+                                (SinglePixelPackedSampleModel) model);
+                    }
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    if (interleaved(buffer, model, 3, 2, 1, 0)) {
+                        return new BgrAccessor(image, (DataBufferByte) buffer, (ComponentSampleModel) model);
+                    }
+                    break;
+                case BufferedImage.TYPE_4BYTE_ABGR:
+                    if (interleaved(buffer, model, 4, 3, 2, 1, 0)) {
+                        return new AbgrAccessor(image, (DataBufferByte) buffer, (ComponentSampleModel) model);
+                    }
+                    break;
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    if (interleaved(buffer, model, 1, 0)) {
+                        return new GreyAccessor(image, (DataBufferByte) buffer, (ComponentSampleModel) model);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new ColorModelAccessor(image);
+    }
+
+    /**
+     * Get the width of the image.
+     *
+     * @return The width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the image.
+     *
+     * @return The height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * <p>
+     * Read one pixel.
+     * </p>
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @return The pixel as a packed ARGB value
+     */
+    public abstract int get(int x, int y);
+
+    /**
+     * <p>
+     * Write one pixel.
+     * </p>
+     *
+     * @param x    The column of the pixel
+     * @param y    The row of the pixel
+     * @param argb The packed ARGB value to write
+     */
+    public abstract void set(int x, int y, int argb);
+
+    /**
+     * <p>
+     * Read a run of pixels from one row.
+     * </p>
+     *
+     * @param x      The column of the first pixel
+     * @param y      The row
+     * @param length The number of pixels to read
+     * @param argb   The array to read into
+     * @param offset The index in the array of the first pixel
+     */
+    public abstract void getRow(int x, int y, int length, int[] argb, int offset);
+
+    /**
+     * <p>
+     * Write a run of pixels into one row.
+     * </p>
+     *
+     * @param x      The column of the first pixel
+     * @param y      The row
+     * @param length The number of pixels to write
+     * @param argb   The values to write
+     * @param offset The index in the array of the first value
+     */
+    public abstract void setRow(int x, int y, int length, int[] argb, int offset);
+
+    /**
+     * <p>
+     * Read a rectangle of pixels, row by row, like
+     * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     * </p>
+     *
+     * @param x    The left of the rectangle
+     * @param y    The top of the rectangle
+     * @param w    The width of the rectangle
+     * @param h    The height of the rectangle
+     * @param argb The array to read into, or null to create one
+     * @return The pixels, pixel (i, j) of the rectangle at index <code>j * w + i</code>
+     */
+    public int[] getPixels(int x, int y, int w, int h, int[] argb) {
+        if (argb == null) {
+            argb = new int[w * h];
+        }
+        for (int row = 0; row < h; row++) {
+            getRow(x, y + row, w, argb, row * w);
+        }
+        return argb;
+    }
+
+    /**
+     * <p>
+     * Write a rectangle of pixels, row by row, like
+     * {@link BufferedImage#setRGB(int, int, int, int, int[], int, int)}.
+     * </p>
+     *
+     * @param x    The left of the rectangle
+     * @param y    The top of the rectangle
+     * @param w    The width of the rectangle
+     * @param h    The height of the rectangle
+     * @param argb The pixels, pixel (i, j) of the rectangle at index <code>j * w + i</code>
+     */
+    public void setPixels(int x, int y, int w, int h, int[] argb) {
+        for (int row = 0; row < h; row++) {
+            setRow(x, y + row, w, argb, row * w);
+        }
+    }
+
+    /**
+     * Checks a byte raster stores each pixel's samples next to each other in one array.
+     *
+     * @param buffer  the raster's data
+     * @param model   the raster's layout
+     * @param stride  the bytes per pixel expected
+     * @param offsets the offset of each band expected
+     * @return whether the raster has that layout
+     */
+    private static boolean interleaved(DataBuffer buffer, SampleModel model, int stride, int... offsets) {
+        if (!(buffer instanceof DataBufferByte) || !(model instanceof ComponentSampleModel)) {
+            return false;
+        }
+        ComponentSampleModel components = (ComponentSampleModel) model;
+        if (components.getPixelStride() != stride) {
+            return false;
+        }
+        int[] banks = components.getBankIndices();
+        int[] bandOffsets = components.getBandOffsets();
+        if (bandOffsets.length != offsets.length) {
+            return false;
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            if (bandOffsets[i] != offsets[i] || banks[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the array index of pixel (0, 0) of an image.
+     *
+     * @param image       the image, possibly a sub-image of a larger one
+     * @param buffer      its data
+     * @param scanline    the array elements per row
+     * @param pixelStride the array elements per pixel
+     * @return the index
+     */
+    private static int origin(BufferedImage image, DataBuffer buffer, int scanline, int pixelStride) {
+        Raster raster = image.getRaster();
+        return buffer.getOffset()
+                - raster.getSampleModelTranslateY() * scanline
+                - raster.getSampleModelTranslateX() * pixelStride;
+    }
+
+    /** Pixels packed one to an int, with or without alpha. */
+    private static final class IntAccessor extends PixelAccessor {
+        private final int[] data;
+        private final int origin;
+        private final int scanline;
+        private final boolean opaque;
+
+        IntAccessor(BufferedImage image, DataBufferInt buffer, SinglePixelPackedSampleModel model) {
+            super(image.getWidth(), image.getHeight());
+            data = buffer.getData();
+            scanline = model.getScanlineStride();
+            origin = origin(image, buffer, scanline, 1);
+            opaque = image.getType() == BufferedImage.TYPE_INT_RGB;
+        }
+
+        @Override
+        public int get(int x, int y) {
+            int value = data[origin + y * scanline + x];
+            return opaque ? value | 0xFF000000 : value;
+        }
+
+        @Override
+        public void set(int x, int y, int argb) {
+            data[origin + y * scanline + x] = opaque ? argb & 0x00FFFFFF : argb;
+        }
+
+        @Override
+        public void getRow(int x, int y, int length, int[] argb, int offset) {
+            int start = origin + y * scanline + x;
+            System.arraycopy(data, start, argb, offset, length);
+            if (opaque) {
+                for (int i = offset; i < offset + length; i++) {
+                    argb[i] |= 0xFF000000;
+                }
+            }
+        }
+
+        @Override
+        public void setRow(int x, int y, int length, int[] argb, int offset) {
+            int start = origin + y * scanline + x;
+            if (!opaque) {
+                System.arraycopy(argb, offset, data, start, length);
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                data[start + i] = argb[offset + i] & 0x00FFFFFF;
+            }
+        }
+    }
+
+    /** Opaque pixels stored as blue, green, red bytes. */
+    private static final class BgrAccessor extends PixelAccessor {
+        private final byte[] data;
+        private final int origin;
+        private final int scanline;
+
+        BgrAccessor(BufferedImage image, DataBufferByte buffer, ComponentSampleModel model) {
+            super(image.getWidth(), image.getHeight());
+            data = buffer.getData();
+            scanline = model.getScanlineStride();
+            origin = origin(image, buffer, scanline, 3);
+        }
+
+        @Override
+        public int get(int x, int y) {
+            int i = origin + y * scanline + x * 3;
+            return 0xFF000000 | (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF);
+        }
+
+        @Override
+        public void set(int x, int y, int argb) {
+            int i = origin + y * scanline + x * 3;
+            data[i] = (byte) argb;
+            data[i + 1] = (byte) (argb >> 8);
+            data[i + 2] = (byte) (argb >> 16);
+        }
+
+        @Override
+        public void getRow(int x, int y, int length, int[] argb, int offset) {
+            int i = origin + y * scanline + x * 3;
+            for (int p = offset; p < offset + length; p++, i += 3) {
+                argb[p] = 0xFF000000 | (data[i + 2] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i] & 0xFF);
+            }
+        }
+
+        @Override
+        public void setRow(int x, int y, int length, int[] argb, int offset) {
+            int i = origin + y * scanline + x * 3;
+            for (int p = offset; p < offset + length; p++, i += 3) {
+                int value = argb[p];
+                data[i] = (byte) value;
+                data[i + 1] = (byte) (value >> 8);
+                data[i + 2] = (byte) (value >> 16);
+            }
+        }
+    }
+
+    /** Pixels stored as alpha, blue, green, red bytes, not premultiplied. */
+    private static final class AbgrAccessor extends PixelAccessor {
+        private final byte[] data;
+        private final int origin;
+        private final int scanline;
+
+        AbgrAccessor(BufferedImage image, DataBufferByte buffer, ComponentSampleModel model) {
+            super(image.getWidth(), image.getHeight());
+            data = buffer.getData();
+            scanline = model.getScanlineStride();
+            origin = origin(image, buffer, scanline, 4);
+        }
+
+        @Override
+        public int get(int x, int y) {
+            int i = origin + y * scanline + x * 4;
+            return (data[i] & 0xFF) << 24 | (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8
+                    | (data[i + 1] & 0xFF);
+        }
+
+        @Override
+        public void set(int x, int y, int argb) {
+            int i = origin + y * scanline + x * 4;
+            data[i] = (byte) (argb >>> 24);
+            data[i + 1] = (byte) argb;
+            data[i + 2] = (byte) (argb >> 8);
+            data[i + 3] = (byte) (argb >> 16);
+        }
+
+        @Override
+        public void getRow(int x, int y, int length, int[] argb, int offset) {
+            int i = origin + y * scanline + x * 4;
+            for (int p = offset; p < offset + length; p++, i += 4) {
+                argb[p] = (data[i] & 0xFF) << 24 | (data[i + 3] & 0xFF) << 16 | (data[i + 2] & 0xFF) << 8
+                        | (data[i + 1] & 0xFF);
+            }
+        }
+
+        @Override
+        public void setRow(int x, int y, int length, int[] argb, int offset) {
+            int i = origin + y * scanline + x * 4;
+            for (int p = offset; p < offset + length; p++, i += 4) {
+                int value = argb[p];
+                data[i] = (byte) (value >>> 24);
+                data[i + 1] = (byte) value;
+                data[i + 2] = (byte) (value >> 8);
+                data[i + 3] = (byte) (value >> 16);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * One grey byte per pixel.
+     * </p>
+     *
+     * <p>
+     * The grey colour space is linear, so <code>getRGB</code> does not give
+     * <code>(g, g, g)</code>. The conversion to ARGB is looked up in a table built from
+     * the colour model, as is the way back for pixels that are already grey. Other
+     * colours still go through the colour model, just without the rest of
+     * <code>setRGB</code>.
+     * </p>
+     */
+    private static final class GreyAccessor extends PixelAccessor {
+        /** The ARGB value of each grey level, and the grey level of each ARGB grey. */
+        private static volatile int[] toArgb;
+        private static volatile byte[] fromGrey;
+
+        private final ColorModel colorModel;
+        private final byte[] data;
+        private final int origin;
+        private final int scanline;
+        private final byte[] element = new byte[1];
+
+        GreyAccessor(BufferedImage image, DataBufferByte buffer, ComponentSampleModel model) {
+            super(image.getWidth(), image.getHeight());
+            colorModel = image.getColorModel();
+            data = buffer.getData();
+            scanline = model.getScanlineStride();
+            origin = origin(image, buffer, scanline, 1);
+            if (toArgb == null) {
+                // every TYPE_BYTE_GRAY image shares the same colour model, so build once
+                int[] argb = new int[256];
+                byte[] grey = new byte[256];
+                byte[] pixel = new byte[1];
+                for (int g = 0; g < 256; g++) {
+                    pixel[0] = (byte) g;
+                    argb[g] = colorModel.getRGB(pixel);
+                    grey[g] = ((byte[]) colorModel.getDataElements(0xFF000000 | g * 0x010101, null))[0];
+                }
+                fromGrey = grey;
+                toArgb = argb;
+            }
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return toArgb[data[origin + y * scanline + x] & 0xFF];
+        }
+
+        @Override
+        public void set(int x, int y, int argb) {
+            data[origin + y * scanline + x] = grey(argb);
+        }
+
+        @Override
+        public void getRow(int x, int y, int length, int[] argb, int offset) {
+            int[] table = toArgb;
+            int i = origin + y * scanline + x;
+            for (int p = offset; p < offset + length; p++, i++) {
+                argb[p] = table[data[i] & 0xFF];
+            }
+        }
+
+        @Override
+        public void setRow(int x, int y, int length, int[] argb, int offset) {
+            int i = origin + y * scanline + x;
+            for (int p = offset; p < offset + length; p++, i++) {
+                data[i] = grey(argb[p]);
+            }
+        }
+
+        /**
+         * Converts an ARGB value to a grey level.
+         *
+         * @param argb the value
+         * @return the grey level, as the colour model would store it
+         */
+        private byte grey(int argb) {
+            int blue = argb & 0xFF;
+            if ((argb >> 16 & 0xFF) == blue && (argb >> 8 & 0xFF) == blue) {
+                return fromGrey[blue];
+            }
+            return ((byte[]) colorModel.getDataElements(argb, element))[0];
+        }
+    }
+
+    /** Any other layout, through the image's colour model. */
+    private static final class ColorModelAccessor extends PixelAccessor {
+        private final BufferedImage image;
+
+        ColorModelAccessor(BufferedImage image) {
+            super(image.getWidth(), image.getHeight());
+            this.image = image;
+        }
+
+        @Override
+        public int get(int x, int y) {
+            return image.getRGB(x, y);
+        }
+
+        @Override
+        public void set(int x, int y, int argb) {
+            image.setRGB(x, y, argb);
+        }
+
+        @Override
+        public void getRow(int x, int y, int length, int[] argb, int offset) {
+            image.getRGB(x, y, length, 1, argb, offset, length);
+        }
+
+        @Override
+        public void setRow(int x, int y, int length, int[] argb, int offset) {
+            image.setRGB(x, y, length, 1, argb, offset, length);
+        }
+
+        @Override
+        public int[] getPixels(int x, int y, int w, int h, int[] argb) {
+            return image.getRGB(x, y, w, h, argb, 0, w);
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, int[] argb) {
+            image.setRGB(x, y, w, h, argb, 0, w);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Helpers for working on the pixels of a {@link BufferedImage} as a flat
+ * <code>int[]</code> of packed ARGB values.
+ * </p>
+ *
+ * <p>
+ * {@link BufferedImage#getRGB(int, int)} and {@link BufferedImage#setRGB(int, int, int)}
+ * go through the image's colour model for every single pixel, which is very slow
+ * on large images. Images of type {@link BufferedImage#TYPE_INT_ARGB} and
+ * {@link BufferedImage#TYPE_INT_RGB} already store their pixels as packed ints,
+ * so for those the backing array is used directly. Other image types are unpacked
+ * by a {@link PixelAccessor}.
+ * </p>
+ *
+ * <p>
+ * Pixel arrays are row-major, so pixel (x, y) lives at index <code>y * width + x</code>.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class PixelArrays {
+
+    /** The smallest number of rows given to a single worker by {@link #forEachBand}. */
+    public static final int MIN_BAND_HEIGHT = 32;
+
+    /** Work done on a band of rows. */
+    @FunctionalInterface
+    public interface BandTask {
+        /**
+         * Work on rows <code>y0</code> (inclusive) to <code>y1</code> (exclusive).
+         *
+         * @param y0 The first row of the band
+         * @param y1 The row after the last row of the band
+         */
+        void run(int y0, int y1);
+    }
+
+    /** The thread that called {@link #forEachBand}, for the threads working on its bands. */
+    private static final ThreadLocal<Thread> CALLER = new ThreadLocal<Thread>();
+
+    private PixelArrays() {
+    }
+
+    /**
+     * <p>
+     * Split the rows of an image into bands and work on them in parallel.
+     * </p>
+     *
+     * <p>
+     * There are about two bands for each processor, so uneven bands even out, but none
+     * is shorter than {@link #MIN_BAND_HEIGHT} rows, as filters that keep running sums
+     * have to set them up again at the start of every band.
+     * </p>
+     *
+     * <p>
+     * The bands run on the fork-join pool, which is never interrupted itself. If the
+     * calling thread is interrupted, as a preview that has gone stale is by
+     * {@link PreviewExecutor}, bands not yet started are skipped and tasks that call
+     * {@link #checkInterrupted} stop at their next check.
+     * </p>
+     *
+     * @param height The number of rows
+     * @param task   The work to do on each band
+     * @throws CancellationException If the calling thread was interrupted
+     */
+    public static void forEachBand(int height, BandTask task) {
+        int workers = Runtime.getRuntime().availableProcessors() * 2;
+        int bandHeight = Math.max(MIN_BAND_HEIGHT, (height + workers - 1) / workers);
+        int bands = (height + bandHeight - 1) / bandHeight;
+        Thread caller = Thread.currentThread();
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            Thread previous = CALLER.get();
+            CALLER.set(caller);
+            try {
+                checkInterrupted();
+                int y0 = band * bandHeight;
+                task.run(y0, Math.min(height, y0 + bandHeight));
+            } finally {
+                CALLER.set(previous);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Stop if the thread the work is being done for has been interrupted.
+     * </p>
+     *
+     * <p>
+     * Called by long running {@link BandTask}s every row or so. Inside a band this checks
+     * the thread that called {@link #forEachBand}, otherwise the current thread. The
+     * interrupt is left set.
+     * </p>
+     *
+     * @throws CancellationException If the thread has been interrupted
+     */
+    public static void checkInterrupted() {
+        Thread caller = CALLER.get();
+        if ((caller != null ? caller : Thread.currentThread()).isInterrupted()) {
+            throw new CancellationException("Interrupted");
+        }
+    }
+
+    /**
+     * <p>
+     * Get the backing array of an image whose pixels are stored as packed ints.
+     * </p>
+     *
+     * <p>
+     * Only {@link BufferedImage#TYPE_INT_ARGB} and {@link BufferedImage#TYPE_INT_RGB}
+     * images with the standard raster layout (no offsets, no padding) are supported.
+     * For <code>TYPE_INT_RGB</code> the top byte of each value is meaningless.
+     * </p>
+     *
+     * @param image The image to get the backing array of.
+     * @return The backing array, or null if the image is not stored as packed ints.
+     */
+    public static int[] data(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return null;
+        }
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || model.getScanlineStride() != image.getWidth()) {
+            return null;
+        }
+        return buffer.getData();
+    }
+
+    /**
+     * <p>
+     * Read the pixels of an image as packed, non-premultiplied ARGB values.
+     * </p>
+     *
+     * <p>
+     * For {@link BufferedImage#TYPE_INT_ARGB} images this is the backing array
+     * itself, so the result must be treated as read-only.
+     * </p>
+     *
+     * @param image The image to read.
+     * @return The ARGB values of every pixel in the image.
+     */
+    public static int[] read(BufferedImage image) {
+        int[] data = data(image);
+        if (data != null && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return data;
+        }
+        return PixelAccessor.of(image).getPixels(0, 0, image.getWidth(), image.getHeight(), null);
+    }
+
+    /**
+     * <p>
+     * Write packed ARGB values into every pixel of an image.
+     * </p>
+     *
+     * @param image The image to write to, it must be the same size as the array.
+     * @param argb  The ARGB values to write.
+     */
+    public static void write(BufferedImage image, int[] argb) {
+        int[] data = data(image);
+        if (data == argb) {
+            return;
+        }
+        PixelAccessor.of(image).setPixels(0, 0, image.getWidth(), image.getHeight(), argb);
+    }
+
+    /**
+     * <p>
+     * Create an empty image with the same size and colour model as another.
+     * </p>
+     *
+     * @param like The image to copy the size and colour model of.
+     * @return A new blank image.
+     */
+    public static BufferedImage blank(BufferedImage like) {
+        return blank(like, like.getWidth(), like.getHeight());
+    }
+
+    /**
+     * <p>
+     * Create an empty image with the same colour model as another, but a different size.
+     * </p>
+     *
+     * <p>
+     * Unlike <code>new BufferedImage(width, height, like.getType())</code> this also
+     * works for {@link BufferedImage#TYPE_CUSTOM} images.
+     * </p>
+     *
+     * @param like   The image to copy the colour model of.
+     * @param width  The width of the new image.
+     * @param height The height of the new image.
+     * @return A new blank image.
+     */
+    public static BufferedImage blank(BufferedImage like, int width, int height) {
+        int type = like.getType();
+        if (type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_BINARY
+                && type != BufferedImage.TYPE_BYTE_INDEXED) {
+            return new BufferedImage(width, height, type);
+        }
+        // keep the palette of indexed images and the layout of custom ones
+        ColorModel cm = like.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * <p>
+     * Convert an image to the working format, {@link BufferedImage#TYPE_INT_ARGB}.
+     * </p>
+     *
+     * <p>
+     * ImageIO returns whatever layout suits the file, such as
+     * {@link BufferedImage#TYPE_3BYTE_BGR} for a JPEG or an indexed or custom image
+     * for some PNGs. Images are converted once when they are opened, so every
+     * operation gets packed ARGB it can work on directly with {@link #data}.
+     * </p>
+     *
+     * @param image The image to convert.
+     * @return The image itself if it is already in the working format, otherwise a copy that is.
+     */
+    public static BufferedImage toWorking(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && data(image) != null) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage working = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        PixelAccessor.of(image).getPixels(0, 0, width, height, data(working));
+        return working;
+    }
+
+    /**
+     * <p>
+     * Convert an image to another standard type, such as the one it was read as.
+     * </p>
+     *
+     * <p>
+     * The pixels are converted as by {@link BufferedImage#setRGB}, so types without
+     * alpha drop it rather than blending with a background.
+     * </p>
+     *
+     * @param image The image to convert.
+     * @param type  The type to convert to, not {@link BufferedImage#TYPE_CUSTOM}.
+     * @return The image itself if it is already that type, otherwise a converted copy.
+     */
+    public static BufferedImage convert(BufferedImage image, int type) {
+        if (image.getType() == type) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage output = new BufferedImage(width, height, type);
+        PixelAccessor.of(output).setPixels(0, 0, width, height, read(image));
+        return output;
+    }
+}
@@ -0,0 +1,71 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * <p>
+ * Interface for operations where each output pixel depends only on the same input pixel.
+ * </p>
+ *
+ * <p>
+ * Colour changes such as inverting, greyscale and brightness/contrast are point operations.
+ * Because they do not look at neighbouring pixels, a run of them can be done in a single
+ * pass over the image (see {@link OperationPlanner}) rather than one pass per operation.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see FusedPointOperation
+ * @author agent
+ * @version 1.0
+ */
+public interface PointOperation extends ImageOperation {
+
+    /**
+     * Apply the operation to a single pixel.
+     *
+     * @param argb The pixel as a packed, non-premultiplied ARGB value
+     * @return The resulting ARGB value
+     */
+    public int applyPixel(int argb);
+
+    /**
+     * <p>
+     * Whether the operation keeps alpha and changes each of red, green and blue
+     * independently, with the same function.
+     * </p>
+     *
+     * <p>
+     * Operations like this can be turned into a 256 entry lookup table, and a run of
+     * them composed into a single table.
+     * </p>
+     *
+     * @return True if the operation can be done with one lookup table for every colour channel
+     */
+    public default boolean isPerChannel() {
+        return false;
+    }
+
+    /**
+     * Point operations only look at the pixel they change.
+     *
+     * @return 0
+     */
+    @Override
+    public default int getHaloRadius() {
+        return 0;
+    }
+
+    /**
+     * Apply the operation to every pixel of an image.
+     *
+     * @param input The image to apply the operation to
+     * @return The resulting image
+     */
+    public default BufferedImage apply(BufferedImage input) {
+        return new FusedPointOperation(List.of(this)).apply(input);
+    }
+}
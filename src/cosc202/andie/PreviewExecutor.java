@@ -0,0 +1,185 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Renders previews of an {@link EditableImage} in the background.
+ * </p>
+ *
+ * <p>
+ * Filter dialogs show a preview every time a slider or spinner changes. Rendering these
+ * on the Swing event thread freezes the interface, and a burst of changes queues up a
+ * render for every one. Instead each preview is given a generation number and rendered
+ * on a single background thread. Submitting a new preview, or cancelling, makes every
+ * earlier generation stale: stale jobs still waiting are skipped without rendering, a
+ * stale job already rendering is interrupted and its result thrown away. So a burst of
+ * changes only renders the first and the newest. Operations only stop early if they
+ * check for the interrupt: those split into bands by {@link PixelArrays#forEachBand}
+ * skip the bands not started yet, and the mean, median and separable convolution
+ * filters also check every row. Anything else renders to the end before the newest
+ * preview can start.
+ * </p>
+ *
+ * <p>
+ * A finished preview is handed back to the event thread, and shown in one step by
+ * swapping the image's current image, so the panel never paints a half rendered image.
+ * </p>
+ *
+ * <p>
+ * Operations with a halo radius (see {@link ImageOperation#getHaloRadius}) can instead be
+ * previewed a rectangle at a time with {@link #submitRegion}, so only what is on screen
+ * is rendered.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public class PreviewExecutor {
+
+    /** The thread previews are rendered on, shared by every image. */
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "andie-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The image the previews are of. */
+    private EditableImage image;
+    /** The newest generation, any job with an older one is stale. */
+    private AtomicLong generation = new AtomicLong();
+    /** The newest job submitted. */
+    private Future<?> latest;
+
+    /**
+     * <p>
+     * Create a preview executor for an image.
+     * </p>
+     *
+     * @param image The image to show the previews on
+     */
+    public PreviewExecutor(EditableImage image) {
+        this.image = image;
+    }
+
+    /**
+     * <p>
+     * Render a preview in the background, replacing any preview not yet shown.
+     * </p>
+     *
+     * <p>
+     * Must be called on the event thread.
+     * </p>
+     *
+     * <p>
+     * With a scale below 1 the preview is rendered on a smaller copy of the source,
+     * from {@link EditableImage#getProxy}, which is made on the background thread too.
+     * </p>
+     *
+     * @param op        The operation to preview
+     * @param source    The image to apply the operation to
+     * @param scale     The size to render the preview at relative to the source
+     * @param onPublish Called on the event thread once the preview is showing, may be null
+     */
+    public void submit(ImageOperation op, BufferedImage source, double scale, Runnable onPublish) {
+        schedule(op, () -> {
+            if (scale < 1.0) {
+                return image.applyCached(op.scaled(scale), image.getProxy(source, scale));
+            }
+            return image.applyCached(op, source);
+        }, preview -> image.showTemp(preview, scale), onPublish);
+    }
+
+    /**
+     * <p>
+     * Render a preview of one rectangle of the image in the background, replacing any
+     * preview not yet shown.
+     * </p>
+     *
+     * <p>
+     * Must be called on the event thread. The rectangle is rendered with
+     * {@link ImageOperation#applyRegion}, so the operation must not be
+     * {@link ImageOperation#NOT_LOCAL}.
+     * </p>
+     *
+     * @param op        The operation to preview
+     * @param source    The image to apply the operation to
+     * @param region    The rectangle of the image to render
+     * @param onPublish Called on the event thread once the rectangle is showing, may be null
+     */
+    public void submitRegion(ImageOperation op, BufferedImage source, Rectangle region, Runnable onPublish) {
+        schedule(op, () -> FlightEvents.applyRegion(op, source, region), tile -> image.showTile(op, region, tile), onPublish);
+    }
+
+    /**
+     * Renders on the worker and shows the result on the event thread, unless a newer
+     * job or a cancel has made it stale by then. Each finished render is timed by
+     * {@link OperationMetrics} as <code>preview</code>, with the size it was rendered at.
+     *
+     * @param op        the operation being previewed
+     * @param render    makes the preview, on the worker
+     * @param show      shows the preview, on the event thread
+     * @param onPublish called after showing, may be null
+     */
+    private void schedule(ImageOperation op, Supplier<BufferedImage> render, Consumer<BufferedImage> show, Runnable onPublish) {
+        long gen = cancel();
+        latest = WORKER.submit(() -> {
+            if (gen != generation.get()) {
+                // a newer preview was submitted while this one was waiting
+                return;
+            }
+            BufferedImage preview;
+            try {
+                OperationMetrics.Sample sample = OperationMetrics.start();
+                preview = render.get();
+                sample.stop("preview", op, preview);
+            } catch (RuntimeException e) {
+                if (gen == generation.get()) {
+                    SwingUtilities.invokeLater(() -> ExceptionHandler.debugException(e));
+                }
+                return;
+            }
+            if (gen != generation.get()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                // checked again, a cancel may have happened while this was queued
+                if (gen == generation.get()) {
+                    show.accept(preview);
+                    if (onPublish != null) {
+                        onPublish.run();
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * <p>
+     * Make every preview submitted so far stale, so none of them will be shown.
+     * </p>
+     *
+     * @return The new generation
+     */
+    public long cancel() {
+        long gen = generation.incrementAndGet();
+        if (latest != null) {
+            // stops a render in progress only where it checks, see PixelArrays.checkInterrupted
+            latest.cancel(true);
+            latest = null;
+        }
+        return gen;
+    }
+}
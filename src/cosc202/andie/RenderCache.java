@@ -0,0 +1,296 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>
+ * Reads and writes the rendered images kept beside an ops file.
+ * </p>
+ *
+ * <p>
+ * Opening an image with an ops file means applying every operation in it to the
+ * original before anything can be shown, which for a long history takes a while. When
+ * a project is saved, the final image and a few checkpoints part way through the
+ * history are written to a file next to the ops file, with <code>.cache</code> added.
+ * Opening the project again puts them straight into the {@link SnapshotCache}, so the
+ * image appears without replaying anything and undo only replays from the nearest
+ * checkpoint.
+ * </p>
+ *
+ * <p>
+ * The file records a SHA-256 hash of the image file and of the ops file it was written
+ * with. If either has changed since, for example the image was edited in another
+ * program, the file is ignored. It also records {@link #RENDER_VERSION}, as the images
+ * are only right for the operations as they were when it was written. A file is laid
+ * out as:
+ * </p>
+ *
+ * <pre>
+ * "ANDIERND"  magic
+ * int         format version
+ * int         render version
+ * byte[32]    hash of the image file
+ * byte[32]    hash of the ops file
+ * then deflated:
+ *     int     number of images
+ *     for each image:
+ *         int     number of operations applied
+ *         long    time taken to render it from the image before, in nanoseconds
+ *         int     width
+ *         int     height
+ *         int[]   ARGB pixels, row by row
+ * </pre>
+ *
+ * <p>
+ * Nothing here is needed to open a project, so a missing, stale or damaged file just
+ * means the operations are replayed as before.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class RenderCache {
+
+    /** The bytes every render cache file starts with. */
+    private static final byte[] MAGIC = { 'A', 'N', 'D', 'I', 'E', 'R', 'N', 'D' };
+    /** The version of the format written by this class. */
+    public static final int VERSION = 1;
+    /**
+     * The version of what the operations produce. Must be increased whenever a change to
+     * an operation changes its output, so images rendered before are not used.
+     */
+    public static final int RENDER_VERSION = 1;
+    /** What is added to the name of the ops file. */
+    public static final String EXTENSION = ".cache";
+    /** The length of the hashes, in bytes. */
+    private static final int HASH_LENGTH = 32;
+    /** Size of the buffers in front of the files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** A rendered image and where it is in the history. */
+    public static final class Entry {
+        /** The number of operations applied to produce the image. */
+        public final int depth;
+        /** The time, in nanoseconds, it took to render from the image before. */
+        public final long cost;
+        /** The image. */
+        public final BufferedImage image;
+
+        /**
+         * Create an entry.
+         *
+         * @param depth The number of operations applied to produce the image
+         * @param cost  The time, in nanoseconds, it took to render
+         * @param image The image
+         */
+        public Entry(int depth, long cost, BufferedImage image) {
+            this.depth = depth;
+            this.cost = cost;
+            this.image = image;
+        }
+    }
+
+    private RenderCache() {
+    }
+
+    /**
+     * <p>
+     * Write rendered images for a project.
+     * </p>
+     *
+     * <p>
+     * The image and ops files must already be saved, as their hashes are taken now. The
+     * file is written under another name and moved into place, so it is never seen
+     * half written, and deleted if writing fails.
+     * </p>
+     *
+     * @param imageFilename The image file the operations are applied to
+     * @param opsFilename   The ops file the images were rendered from
+     * @param entries       The images, each with the number of operations applied
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(String imageFilename, String opsFilename, List<Entry> entries) throws IOException {
+        Path target = Paths.get(opsFilename + EXTENSION);
+        Path temp = Paths.get(opsFilename + EXTENSION + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(RENDER_VERSION);
+                out.write(hash(imageFilename));
+                out.write(hash(opsFilename));
+                // pixels compress well and quickly, the best compression is not worth the wait
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                    DataOutputStream body = new DataOutputStream(deflated);
+                    body.writeInt(entries.size());
+                    for (Entry entry : entries) {
+                        writeImage(entry, body);
+                    }
+                    body.flush();
+                    deflated.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            // only still there if something went wrong, a disk filled up by a half
+            // written image should not stay full
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * <p>
+     * Read the rendered images for a project, if they are still valid.
+     * </p>
+     *
+     * @param imageFilename The image file the operations are applied to
+     * @param opsFilename   The ops file the operations were read from
+     * @return The images, or an empty list if there is no file or it is out of date
+     * @throws IOException If the file cannot be read or is damaged
+     */
+    public static List<Entry> read(String imageFilename, String opsFilename) throws IOException {
+        Path source = Paths.get(opsFilename + EXTENSION);
+        if (!Files.isRegularFile(source)) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION || in.readInt() != RENDER_VERSION) {
+                return Collections.emptyList();
+            }
+            byte[] imageHash = new byte[HASH_LENGTH];
+            byte[] opsHash = new byte[HASH_LENGTH];
+            in.readFully(imageHash);
+            in.readFully(opsHash);
+            // the ops file is small, so check it before hashing the image
+            if (!Arrays.equals(opsHash, hash(opsFilename)) || !Arrays.equals(imageHash, hash(imageFilename))) {
+                return Collections.emptyList();
+            }
+            Inflater inflater = new Inflater();
+            try {
+                DataInputStream body = new DataInputStream(new InflaterInputStream(in, inflater, BUFFER_SIZE));
+                int count = body.readInt();
+                List<Entry> entries = new ArrayList<Entry>(Math.min(count, 16));
+                for (int i = 0; i < count; i++) {
+                    entries.add(readImage(body));
+                }
+                return entries;
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Delete the rendered images for a project, if there are any.
+     * </p>
+     *
+     * @param opsFilename The ops file the images belong to
+     * @throws IOException If the file exists but cannot be deleted
+     */
+    public static void delete(String opsFilename) throws IOException {
+        Files.deleteIfExists(Paths.get(opsFilename + EXTENSION));
+    }
+
+    /**
+     * Writes one image.
+     *
+     * @param entry the image and its place in the history
+     * @param out   the stream to write to
+     * @throws IOException if it cannot be written
+     */
+    private static void writeImage(Entry entry, DataOutputStream out) throws IOException {
+        int width = entry.image.getWidth();
+        int height = entry.image.getHeight();
+        out.writeInt(entry.depth);
+        out.writeLong(entry.cost);
+        out.writeInt(width);
+        out.writeInt(height);
+        int[] argb = PixelArrays.read(entry.image);
+        ByteBuffer row = ByteBuffer.allocate(width * 4);
+        IntBuffer ints = row.asIntBuffer();
+        for (int y = 0; y < height; y++) {
+            ints.clear();
+            ints.put(argb, y * width, width);
+            out.write(row.array());
+        }
+    }
+
+    /**
+     * Reads one image, as packed ARGB.
+     *
+     * @param in the stream to read from
+     * @return the image and its place in the history
+     * @throws IOException if it cannot be read
+     */
+    private static Entry readImage(DataInputStream in) throws IOException {
+        int depth = in.readInt();
+        long cost = in.readLong();
+        int width = in.readInt();
+        int height = in.readInt();
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE / 4) {
+            throw new IOException("Bad image size " + width + "x" + height);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] data = PixelArrays.data(image);
+        ByteBuffer row = ByteBuffer.allocate(width * 4);
+        IntBuffer ints = row.asIntBuffer();
+        for (int y = 0; y < height; y++) {
+            in.readFully(row.array());
+            ints.clear();
+            ints.get(data, y * width, width);
+        }
+        return new Entry(depth, cost, image);
+    }
+
+    /**
+     * Hashes the contents of a file.
+     *
+     * @param filename the file
+     * @return its SHA-256 hash
+     * @throws IOException if it cannot be read
+     */
+    private static byte[] hash(String filename) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(Paths.get(filename)), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) >= 0) {
+                // the digest sees everything read
+            }
+        }
+        return digest.digest();
+    }
+}
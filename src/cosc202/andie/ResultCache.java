@@ -0,0 +1,337 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+import cosc202.andie.actions.filter.Revert;
+
+/**
+ * <p>
+ * A cache of operation results, keyed by the content of the input image and the
+ * operation's parameters, limited by memory.
+ * </p>
+ *
+ * <p>
+ * Undoing a filter and applying it again with the same parameters, or going back and
+ * forth between two settings in a dialog, asks for the same result more than once.
+ * {@link #apply} looks the result up first and only runs the operation if it is not
+ * here.
+ * </p>
+ *
+ * <p>
+ * An operation is identified by {@link OpsFile#identify}, the type and parameters it
+ * would be stored with. Operations without one, and {@link Revert}, which looks at more
+ * than its input, are always run. An image is identified by a 128 bit key. A result
+ * computed here gets its key from the key of its input and the operation that made it,
+ * so it is never hashed. Any other image, like the original of an
+ * {@link EditableImage}, has its pixels hashed the first time it is used. The keys are
+ * held against each image weakly, so images that are no longer used are forgotten.
+ * </p>
+ *
+ * <p>
+ * When the results take up more than the budget, the least recently used are evicted.
+ * Results must never be changed, which is already the rule for the images
+ * {@link EditableImage} works with. The same image can also be held by a
+ * {@link SnapshotCache}, and is then counted by both.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public class ResultCache {
+
+    /** The content key of an image. */
+    private static final class ImageKey {
+        final long high;
+        final long low;
+
+        ImageKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ImageKey)) {
+                return false;
+            }
+            ImageKey key = (ImageKey) other;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+
+    /** An input and the operation applied to it. */
+    private static final class Key {
+        final ImageKey input;
+        final String operation;
+
+        Key(ImageKey input, String operation) {
+            this.input = input;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return input.equals(key.input) && operation.equals(key.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(input, operation);
+        }
+    }
+
+    /** The number of rows hashed together on one thread. */
+    private static final int BAND_HEIGHT = 64;
+
+    /** The results, least recently used first. */
+    private final LinkedHashMap<Key, BufferedImage> results = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+    /** The keys of images seen so far. */
+    private final Map<BufferedImage, ImageKey> keys = new WeakHashMap<BufferedImage, ImageKey>();
+    /** The most memory, in bytes, the results can use. */
+    private long budget;
+    /** The memory, in bytes, used by the results. */
+    private long used;
+    private long hits;
+    private long misses;
+
+    /**
+     * <p>
+     * Create an empty result cache.
+     * </p>
+     *
+     * @param budget The most memory, in bytes, the results can use
+     */
+    public ResultCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image, or look up the result if it has been computed before.
+     * </p>
+     *
+     * @param op    The operation to apply
+     * @param input The image to apply it to
+     * @return The result, which must not be changed
+     */
+    public BufferedImage apply(ImageOperation op, BufferedImage input) {
+        String identity = op instanceof Revert ? null : OpsFile.identify(op);
+        if (identity == null) {
+            return FlightEvents.apply(op, input);
+        }
+        Key key = new Key(keyOf(input), identity);
+        synchronized (this) {
+            BufferedImage result = results.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        BufferedImage output = FlightEvents.apply(op, input);
+        synchronized (this) {
+            if (output != input && !keys.containsKey(output)) {
+                keys.put(output, derive(key));
+            }
+            put(key, output);
+        }
+        return output;
+    }
+
+    /**
+     * <p>
+     * Forget every result.
+     * </p>
+     */
+    public synchronized void clear() {
+        results.clear();
+        used = 0;
+    }
+
+    /**
+     * Get the number of results in the cache.
+     *
+     * @return The number of results
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Get the memory used by the results.
+     *
+     * @return The memory used, in bytes
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Get the most memory the results can use.
+     *
+     * @return The budget, in bytes
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * <p>
+     * Change the most memory the results can use, evicting results if the cache is now
+     * over budget.
+     * </p>
+     *
+     * @param budget The budget, in bytes
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Get the number of times a result was found in the cache.
+     *
+     * @return The number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of times a result had to be computed.
+     *
+     * @return The number of misses, not counting operations that are never cached
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Stores a result and evicts until within budget.
+     *
+     * @param key    the input and operation
+     * @param output the result
+     */
+    private void put(Key key, BufferedImage output) {
+        long bytes = SnapshotCache.sizeOf(output);
+        if (bytes > budget) {
+            return;
+        }
+        BufferedImage old = results.put(key, output);
+        if (old != null) {
+            used -= SnapshotCache.sizeOf(old);
+        }
+        used += bytes;
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used results until the cache is within its budget.
+     */
+    private void evict() {
+        Iterator<BufferedImage> oldest = results.values().iterator();
+        while (used > budget && oldest.hasNext()) {
+            used -= SnapshotCache.sizeOf(oldest.next());
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Gets the key of an image, hashing it if it has not been seen before.
+     *
+     * @param image the image
+     * @return its key
+     */
+    private ImageKey keyOf(BufferedImage image) {
+        synchronized (this) {
+            ImageKey key = keys.get(image);
+            if (key != null) {
+                return key;
+            }
+        }
+        ImageKey key = hash(image);
+        synchronized (this) {
+            keys.put(image, key);
+        }
+        return key;
+    }
+
+    /**
+     * Works out the key of a result from how it was made.
+     *
+     * @param key the input and operation
+     * @return the key of the result
+     */
+    private static ImageKey derive(Key key) {
+        long high = key.input.high;
+        long low = key.input.low;
+        for (int i = 0; i < key.operation.length(); i++) {
+            high = (high ^ key.operation.charAt(i)) * 0x100000001B3L;
+            low = Long.rotateLeft(low + key.operation.charAt(i) * 0x9E3779B97F4A7C15L, 31) * 0xC2B2AE3D27D4EB4FL;
+        }
+        return new ImageKey(mix(high), mix(low ^ key.operation.length()));
+    }
+
+    /**
+     * Hashes the size and pixels of an image, in parallel bands of rows.
+     *
+     * @param image the image
+     * @return its key
+     */
+    private static ImageKey hash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = PixelArrays.read(image);
+        int bands = Math.max(1, (height + BAND_HEIGHT - 1) / BAND_HEIGHT);
+        long[][] lanes = new long[bands][2];
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            long a = 0x243F6A8885A308D3L + band;
+            long b = 0x13198A2E03707344L - band;
+            int end = Math.min(height, (band + 1) * BAND_HEIGHT) * width;
+            for (int i = band * BAND_HEIGHT * width; i < end; i++) {
+                a = (a ^ pixels[i]) * 0x100000001B3L;
+                b = Long.rotateLeft(b + pixels[i] * 0x9E3779B97F4A7C15L, 31) * 0xC2B2AE3D27D4EB4FL;
+            }
+            lanes[band][0] = a;
+            lanes[band][1] = b;
+        });
+        long high = mix(width) ^ height;
+        long low = mix(height) ^ width;
+        for (long[] lane : lanes) {
+            high = mix(high ^ lane[0]);
+            low = mix(low + lane[1]);
+        }
+        return new ImageKey(high, low);
+    }
+
+    /**
+     * Scrambles the bits of a value (the finaliser of SplitMix64).
+     *
+     * @param z the value
+     * @return the scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
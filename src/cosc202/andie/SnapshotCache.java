@@ -0,0 +1,302 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * A cache of intermediate images in an {@link EditableImage}'s history, limited by
+ * memory rather than by count.
+ * </p>
+ *
+ * <p>
+ * Each snapshot is stored against its depth: the number of operations that had been
+ * applied to the original image to produce it. Any image in the history can then be
+ * rebuilt by starting from the deepest snapshot at or before it and replaying only
+ * the operations after that.
+ * </p>
+ *
+ * <p>
+ * Every {@link #getCheckpointInterval()}th depth is a checkpoint. When the cache goes
+ * over its budget, snapshots that are not checkpoints are evicted first, least
+ * recently used first. If that is not enough, checkpoints are evicted, starting with
+ * the one that was cheapest to compute for the memory it takes up. This way long
+ * histories keep evenly spaced checkpoints, and undo never has to replay more than
+ * a few operations.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public class SnapshotCache {
+
+    /** A cached image and what is needed to decide when to evict it. */
+    private static class Snapshot {
+        BufferedImage image;
+        long bytes;
+        long cost;
+        long lastUsed;
+
+        Snapshot(BufferedImage image, long cost) {
+            this.image = image;
+            this.bytes = sizeOf(image);
+            this.cost = cost;
+        }
+    }
+
+    /** The snapshots in the cache, by depth. */
+    private TreeMap<Integer, Snapshot> snapshots = new TreeMap<Integer, Snapshot>();
+    /** The most memory, in bytes, the snapshots can use. */
+    private long budget;
+    /** The number of operations between checkpoints. */
+    private int checkpointInterval;
+    /** The memory, in bytes, used by the snapshots. */
+    private long used;
+    /** Counts uses, giving each snapshot the time it was last used. */
+    private long clock;
+
+    /**
+     * <p>
+     * Create an empty snapshot cache.
+     * </p>
+     *
+     * @param budget             The most memory, in bytes, the snapshots can use
+     * @param checkpointInterval The number of operations between checkpoints
+     */
+    public SnapshotCache(long budget, int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        }
+        this.budget = budget;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * <p>
+     * Store the image produced by applying the first <code>depth</code> operations.
+     * </p>
+     *
+     * <p>
+     * The image must not be changed afterwards. An image bigger than the whole budget
+     * is not stored.
+     * </p>
+     *
+     * @param depth The number of operations applied to produce the image
+     * @param image The image to store
+     * @param cost  The time, in nanoseconds, it took to produce the image from the
+     *              snapshot before it, used to decide which checkpoints to keep
+     */
+    public void put(int depth, BufferedImage image, long cost) {
+        remove(depth);
+        Snapshot snapshot = new Snapshot(image, cost);
+        if (snapshot.bytes > budget) {
+            return;
+        }
+        snapshot.lastUsed = ++clock;
+        snapshots.put(depth, snapshot);
+        used += snapshot.bytes;
+        evict(depth);
+    }
+
+    /**
+     * <p>
+     * Get the snapshot at exactly the given depth.
+     * </p>
+     *
+     * @param depth The number of operations applied
+     * @return The snapshot, or null if it is not in the cache
+     */
+    public BufferedImage get(int depth) {
+        Snapshot snapshot = snapshots.get(depth);
+        if (snapshot == null) {
+            return null;
+        }
+        snapshot.lastUsed = ++clock;
+        return snapshot.image;
+    }
+
+    /**
+     * <p>
+     * Get how long the snapshot at a depth took to produce.
+     * </p>
+     *
+     * @param depth The number of operations applied
+     * @return The time, in nanoseconds, given when it was stored, or -1 if it is not in
+     *         the cache
+     */
+    public long getCost(int depth) {
+        Snapshot snapshot = snapshots.get(depth);
+        return snapshot == null ? -1 : snapshot.cost;
+    }
+
+    /**
+     * <p>
+     * Find the deepest snapshot at or before the given depth.
+     * </p>
+     *
+     * @param depth The number of operations applied
+     * @return The depth of the snapshot, or -1 if there is none
+     */
+    public int floor(int depth) {
+        Integer key = snapshots.floorKey(depth);
+        return key == null ? -1 : key;
+    }
+
+    /**
+     * <p>
+     * Remove every snapshot deeper than the given depth.
+     * </p>
+     *
+     * <p>
+     * Used when the history branches, for example when a new operation is applied
+     * after an undo, so the snapshots after it no longer belong to the history.
+     * </p>
+     *
+     * @param depth The deepest snapshot to keep
+     */
+    public void truncate(int depth) {
+        Iterator<Snapshot> deeper = snapshots.tailMap(depth, false).values().iterator();
+        while (deeper.hasNext()) {
+            used -= deeper.next().bytes;
+            deeper.remove();
+        }
+    }
+
+    /**
+     * <p>
+     * Remove every snapshot.
+     * </p>
+     */
+    public void clear() {
+        snapshots.clear();
+        used = 0;
+    }
+
+    /**
+     * Get the memory used by the snapshots.
+     *
+     * @return The memory used, in bytes
+     */
+    public long getUsed() {
+        return used;
+    }
+
+    /**
+     * Get the most memory the snapshots can use.
+     *
+     * @return The budget, in bytes
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * <p>
+     * Change the most memory the snapshots can use, evicting snapshots if the cache
+     * is now over budget.
+     * </p>
+     *
+     * @param budget The budget, in bytes
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict(-1);
+    }
+
+    /**
+     * Get the number of operations between checkpoints.
+     *
+     * @return The checkpoint interval
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Get the number of snapshots in the cache.
+     *
+     * @return The number of snapshots
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * <p>
+     * Estimate the memory used by an image's pixels.
+     * </p>
+     *
+     * @param image The image to measure
+     * @return The size of the image's pixel data, in bytes
+     */
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Removes the snapshot at a depth, if there is one.
+     *
+     * @param depth the depth of the snapshot to remove
+     */
+    private void remove(int depth) {
+        Snapshot old = snapshots.remove(depth);
+        if (old != null) {
+            used -= old.bytes;
+        }
+    }
+
+    /**
+     * Evicts snapshots until the cache is within its budget.
+     *
+     * @param keep the depth of a snapshot never to evict, or -1
+     */
+    private void evict(int keep) {
+        while (used > budget) {
+            Map.Entry<Integer, Snapshot> victim = null;
+            for (Map.Entry<Integer, Snapshot> entry : snapshots.entrySet()) {
+                if (entry.getKey() != keep && (victim == null || before(entry, victim))) {
+                    victim = entry;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            remove(victim.getKey());
+        }
+    }
+
+    /**
+     * Decides if one snapshot should be evicted before another.
+     *
+     * @param a the first snapshot
+     * @param b the second snapshot
+     * @return true if a should be evicted first
+     */
+    private boolean before(Map.Entry<Integer, Snapshot> a, Map.Entry<Integer, Snapshot> b) {
+        boolean aCheckpoint = a.getKey() % checkpointInterval == 0;
+        boolean bCheckpoint = b.getKey() % checkpointInterval == 0;
+        if (aCheckpoint != bCheckpoint) {
+            return !aCheckpoint;
+        }
+        Snapshot x = a.getValue();
+        Snapshot y = b.getValue();
+        if (aCheckpoint) {
+            // cheapest to recompute per byte freed goes first
+            double xValue = (double) x.cost / Math.max(1, x.bytes);
+            double yValue = (double) y.cost / Math.max(1, y.bytes);
+            if (xValue != yValue) {
+                return xValue < yValue;
+            }
+        }
+        return x.lastUsed < y.lastUsed;
+    }
+}
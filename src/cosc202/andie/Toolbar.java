@@ -139,6 +139,9 @@ public class Toolbar extends JToolBar {
                 buttonCount++; 
             }
         }
+
+        // Opening another file is always enabled, as in the constructor
+        this.getComponent(0).setEnabled(true);
     }
 
 
@@ -69,7 +69,7 @@ public class ColourActions implements ActionCollection {
             fileMenu.add(new JMenuItem(action));
         }
 
-        if (ImageAction.getTarget().getImage().getCurrentImage() == null) {
+        if (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading()) {
             fileMenu.setEnabled(false);
         }
         return fileMenu;
@@ -237,15 +237,12 @@ public class ColourActions implements ActionCollection {
                 // is called when state changes, and updates image shown behind the
                 // SpinnerNumberModel
                 public void stateChanged(ChangeEvent e) {
-                    if (brightnessSlider.getValueIsAdjusting())
-                        return;
+                    // previews render in the background and only the newest is shown,
+                    // so the image can follow the slider while it is dragged
                     // if this is the first time number is altered, change to show it has been
                     // altered and then apply filter
 
-                    target.getImage()
-                            .applyTemp(new BrightnessAndContrast(brightnessSlider.getValue(), contrastSlider.getValue()));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new BrightnessAndContrast(brightnessSlider.getValue(), contrastSlider.getValue()));
                 }
             });
 
@@ -256,16 +253,13 @@ public class ColourActions implements ActionCollection {
                 // is called when state changes, and updates image shown behind the
                 // SpinnerNumberModel
                 public void stateChanged(ChangeEvent e) {
-                    if (contrastSlider.getValueIsAdjusting())
-                        return;
+                    // previews render in the background and only the newest is shown,
+                    // so the image can follow the slider while it is dragged
                     // if this is the first time number is altered, change to show it has been
                     // altered and then apply filter
                     // if number has already changed, undo last operation and then apply filter
 
-                    target.getImage()
-                            .applyTemp(new BrightnessAndContrast(brightnessSlider.getValue(), contrastSlider.getValue()));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new BrightnessAndContrast(brightnessSlider.getValue(), contrastSlider.getValue()));
                 }
 
             });
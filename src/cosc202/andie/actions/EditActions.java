@@ -62,7 +62,7 @@ public class EditActions implements ActionCollection {
             editMenu.add(new JMenuItem(action));
             
         }
-        if (ImageAction.getTarget().getImage().getCurrentImage() == null){
+        if (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading()) {
             editMenu.setEnabled(false);
         }
         
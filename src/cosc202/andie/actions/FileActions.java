@@ -79,7 +79,7 @@ public class FileActions implements ActionCollection {
         int count = 0;
         for (Action action : actions) {
             JMenuItem item = new JMenuItem(action);
-            if (count != 0 && count != 5 && ImageAction.getTarget().getImage().getCurrentImage() == null) {
+            if (count != 0 && count != 5 && (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading())) {
                 item.setEnabled(false);
             }
             count++;
@@ -121,7 +121,7 @@ public class FileActions implements ActionCollection {
      * Action to open an image from file.
      * </p>
      * 
-     * @see EditableImage#open(String)
+     * @see EditableImage#openProgressive(String, Runnable, Runnable)
      */
     public class FileOpenAction extends ImageAction {
 
@@ -161,8 +161,12 @@ public class FileActions implements ActionCollection {
             if (result == JFileChooser.APPROVE_OPTION) {
                 try {
                     String imageFilepath = fileChooser.getSelectedFile().getCanonicalPath();
-                     target.getImage().open(imageFilepath);
-                     scale = 1;
+                     // large images are read in the background, editing is turned back on once they are
+                     target.getImage().openProgressive(imageFilepath, target::repaint, () -> showImage(true));
+                     if (target.getImage().isLoading()) {
+                         // show the placeholder at the size of the whole image meanwhile
+                         showImage(true);
+                     }
                 }
                 // Catching Input/Output exceptions associated with opening a file
                 catch (IOException ioException) {
@@ -177,26 +181,43 @@ public class FileActions implements ActionCollection {
                 catch (Exception ex) {
                     ExceptionHandler.displayError(SetLanguage.getInstance().getTranslated("open_file_io_exception"));
                 }
+            } else {
+                showImage(false);
+            }
+        }
 
+        /**
+         * <p>
+         * Zoom and resize the window to fit the image, and turn editing on if it can be edited.
+         * </p>
+         * 
+         * <p>
+         * Called once the image is open, which may be after {@link actionPerformed} returns
+         * for a large image read in the background. Until then only opening another file
+         * and exiting are enabled.
+         * </p>
+         * 
+         * @param fit Whether to work out the zoom again for a newly opened image.
+         */
+        private void showImage(boolean fit) {
+            if (fit) {
+                scale = 1;
                 // gets dimensions of opened image
                 double width = target.getImage().getWidth();
                 double height = target.getImage().getHeight();
                 
-           // while the width and height are both below the minimum, scale the size of the image up 
-            while(width < minWidth && height < minHeight){
-                width = width*1.5;
-                height = height*1.5;
-                scale*=1.5;
-            }
-            // while either the width or height is greater than maximum, scale size down
+                // while the width and height are both below the minimum, scale the size of the image up 
+                while(width < minWidth && height < minHeight){
+                    width = width*1.5;
+                    height = height*1.5;
+                    scale*=1.5;
+                }
+                // while either the width or height is greater than maximum, scale size down
                 while(width > maxWidth || height > maxHeight){
                     width = width/1.5;
                     height = height/1.5;
                     scale/=1.5;
                 }
-
-
-
             }
             double zoomScale = scale*100; 
             ResetZoomAction.setResetZoom(zoomScale); 
@@ -210,23 +231,38 @@ public class FileActions implements ActionCollection {
             Andie.getJFrame().setLocationRelativeTo(null);      // Centering the ANDIE window on screen
 
             //check if current image exists
+            if (target.getImage().hasImage()){
+                setEditingEnabled(!target.getImage().isLoading());
+            }
+        }
 
-            // Enabling the Menu Items if there is an image
-            if (ImageAction.getTarget().getImage().getCurrentImage() != null){
-                // go through each menu
-                JMenuBar menuBar = Andie.getMenuBar();
-                for (int i = 0; i < menuBar.getMenuCount(); i++){
-                    JMenu menu = menuBar.getMenu(i);
-                    menu.setEnabled(true);
-                    // go through each item
-                    for (int j = 0; j < menu.getItemCount(); j++){
-                        menu.getItem(j).setEnabled(true);
-                    }
+        /**
+         * <p>
+         * Enable or disable the menu items and toolbar buttons that need an image.
+         * </p>
+         * 
+         * <p>
+         * Open and Exit in the File menu and the language menu are always enabled, as
+         * when the menus are made by <code>createMenu</code>.
+         * </p>
+         * 
+         * @param enabled Whether the image can be edited.
+         */
+        private void setEditingEnabled(boolean enabled) {
+            // go through each menu
+            JMenuBar menuBar = Andie.getMenuBar();
+            for (int i = 0; i < menuBar.getMenuCount(); i++){
+                JMenu menu = menuBar.getMenu(i);
+                boolean always = i == 0 || i == menuBar.getMenuCount() - 1;
+                menu.setEnabled(enabled || always);
+                // go through each item
+                for (int j = 0; j < menu.getItemCount(); j++){
+                    menu.getItem(j).setEnabled(enabled || i != 0 || j == 0 || j == 5);
                 }
-
-                // Enabling the Toolbar Items if there is an image
-                Andie.getToolbar().updateToolbar(true);
             }
+
+            // the open button stays enabled either way
+            Andie.getToolbar().updateToolbar(enabled);
         }
 
     }
@@ -70,7 +70,7 @@ public class FilterActions implements ActionCollection {
             fileMenu.add(new JMenuItem(action));
 
         }
-        if (ImageAction.getTarget().getImage().getCurrentImage() == null) {
+        if (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading()) {
             fileMenu.setEnabled(false);
         }
 
@@ -131,7 +131,7 @@ public class FilterActions implements ActionCollection {
 
             // Pop-up dialog box to ask for the radius value.
 
-            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 10, 1);
+            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 100, 1);
 
             JSpinner radiusSpinner = new JSpinner(radiusModel);
 
@@ -148,9 +148,7 @@ public class FilterActions implements ActionCollection {
 
                     SpinnerNumberModel spinner = (SpinnerNumberModel) e.getSource();
                     int radius = spinner.getNumber().intValue();
-                    target.getImage().applyTemp(new MeanFilter(radius));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new MeanFilter(radius));
                 }
             });
 
@@ -253,7 +251,7 @@ public class FilterActions implements ActionCollection {
             String[] options = { language.getTranslated("ok"), language.getTranslated("cancel") };
 
             // Pop-up dialog box to ask for the radius value.
-            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 10, 1);
+            SpinnerNumberModel radiusModel = new SpinnerNumberModel(1, 1, 50, 1);
             JSpinner radiusSpinner = new JSpinner(radiusModel);
 
             // ChangeListener that is notified every time the value in the radiusspinner is
@@ -269,9 +267,7 @@ public class FilterActions implements ActionCollection {
 
                     SpinnerNumberModel spinner = (SpinnerNumberModel) e.getSource();
                     int radius = spinner.getNumber().intValue();
-                    target.getImage().applyTemp(new GaussianBlurFilter(radius));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new GaussianBlurFilter(radius));
                 }
             });
 
@@ -346,9 +342,7 @@ public class FilterActions implements ActionCollection {
 
                     SpinnerNumberModel spinner = (SpinnerNumberModel) e.getSource();
                     int radius = spinner.getNumber().intValue();
-                    target.getImage().applyTemp(new MedianFilter(radius));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new MedianFilter(radius));
                 }
             });
 
@@ -458,16 +452,12 @@ public class FilterActions implements ActionCollection {
                     // altered and then apply filter
                     // if number has already changed, undo last operation and then apply filter
                     int choice = jbox.getSelectedIndex();
-                    target.getImage().applyTemp(new NegativeFilter(choice));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new NegativeFilter(choice));
                 }
             });
 
             // apply first selected option of emboss
-            target.getImage().applyTemp(new NegativeFilter(0));
-            target.repaint();
-            target.getParent().revalidate();
+            preview(new NegativeFilter(0));
             
             int option = JOptionPane.showOptionDialog(
                 Andie.getJFrame(), 
@@ -534,16 +524,12 @@ public class FilterActions implements ActionCollection {
                     // if number has already changed, undo last operation and then apply filter
 
                     int choice = jbox.getSelectedIndex() + 8;
-                    target.getImage().applyTemp(new NegativeFilter(choice));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview(new NegativeFilter(choice));
                 }
             });
 
             // apply the first selected option of edge detection
-            target.getImage().applyTemp(new NegativeFilter(8));
-            target.repaint();
-            target.getParent().revalidate();
+            preview(new NegativeFilter(8));
 
             int option = JOptionPane.showOptionDialog(
                 Andie.getJFrame(), 
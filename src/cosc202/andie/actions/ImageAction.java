@@ -2,7 +2,9 @@ package cosc202.andie.actions;
 
 import javax.swing.*;
 
+import cosc202.andie.EditableImage;
 import cosc202.andie.Icons;
+import cosc202.andie.ImageOperation;
 import cosc202.andie.ImagePanel;
 import cosc202.andie.KeyboardShortcut;
 import cosc202.andie.SetLanguage;
@@ -128,6 +130,28 @@ public abstract class ImageAction extends AbstractAction {
         target = newTarget;
     } 
 
+    /**
+     * <p>
+     * Show a preview of an operation on the target, without applying it.
+     * </p>
+     * 
+     * <p>
+     * The preview is rendered in the background (see {@link EditableImage#applyTempAsync}),
+     * at the target's zoom and only as far as the target shows, and the target is
+     * repainted once it is ready. Used by dialogs
+     * that update the image as their values change.
+     * </p>
+     * 
+     * @param op The operation to preview.
+     */
+    protected static void preview(ImageOperation op) {
+        ImagePanel panel = target;
+        panel.getImage().applyTempAsync(op, panel.getZoom() / 100, panel.getVisibleImageRect(), () -> {
+            panel.repaint();
+            panel.getParent().revalidate();
+        });
+    }
+
     /**
      * <p>
      * Get the target for ImageActions.
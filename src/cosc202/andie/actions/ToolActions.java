@@ -54,7 +54,7 @@ public class ToolActions implements ActionCollection {
             toolMenu.add(new JMenuItem(action));
 
         }
-        if (ImageAction.getTarget().getImage().getCurrentImage() == null) {
+        if (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading()) {
             toolMenu.setEnabled(false);
         }
         return toolMenu;
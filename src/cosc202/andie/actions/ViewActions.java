@@ -57,7 +57,7 @@ public class ViewActions implements ActionCollection {
         for (Action action: actions) {
             viewMenu.add(new JMenuItem(action));
         }
-        if (ImageAction.getTarget().getImage().getCurrentImage() == null){
+        if (!ImageAction.getTarget().getImage().hasImage() || ImageAction.getTarget().getImage().isLoading()) {
             viewMenu.setEnabled(false);
         }
         return viewMenu;
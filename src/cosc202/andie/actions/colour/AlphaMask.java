@@ -3,8 +3,14 @@ package cosc202.andie.actions.colour;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 
 
 /**
@@ -27,9 +33,21 @@ import cosc202.andie.ImageOperation;
  * @version 1.2
  */
 public class AlphaMask implements ImageOperation, java.io.Serializable {
-    private int[] maskStore; // Array to store the serialized mask image
-    private int width; // Width of the mask image
-    private int height; // Height of the mask image
+    // Same as the computed value before the mask accessors were added, so old ops files load
+    private static final long serialVersionUID = 6547943131266008897L;
+
+    /**
+     * The fields written by Java serialisation, kept the same as when the mask was
+     * stored as a plain int[] so older ops files can be read and written.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("maskStore", int[].class),
+        new ObjectStreamField("width", int.class),
+        new ObjectStreamField("height", int.class)
+    };
+
+    /** The mask image, compressed and shared with any identical mask. */
+    private transient MaskData mask;
 
 
     /**
@@ -44,11 +62,45 @@ public class AlphaMask implements ImageOperation, java.io.Serializable {
         // Convert the mask image to grayscale
         ConvertToGrey grey = new ConvertToGrey();
 
-        // Convert the image to a serializable int array (ops files are now massive)
-        maskStore = grey.apply(colourMask).getRGB(0, 0, colourMask.getWidth(), colourMask.getHeight(), null, 0, colourMask.getWidth());
-        
-        width = colourMask.getWidth();
-        height = colourMask.getHeight();
+        // Keep the grey values compressed, identical masks share the same data
+        int[] greyMask = PixelArrays.read(grey.apply(colourMask));
+        this.mask = MaskData.intern(colourMask.getWidth(), colourMask.getHeight(), greyMask);
+    }
+
+    /**
+     * Constructs an AlphaMask object from stored mask data.
+     *
+     * @param mask The mask data, as returned by {@link #getMaskData()}.
+     */
+    public AlphaMask(MaskData mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Gets the mask data, compressed and shared with any identical mask.
+     *
+     * @return The mask data.
+     */
+    public MaskData getMaskData() {
+        return mask;
+    }
+
+    /**
+     * Gets the width of the mask image.
+     *
+     * @return The width of the mask.
+     */
+    public int getWidth() {
+        return mask.getWidth();
+    }
+
+    /**
+     * Gets the height of the mask image.
+     *
+     * @return The height of the mask.
+     */
+    public int getHeight() {
+        return mask.getHeight();
     }
 
     /**
@@ -68,11 +120,11 @@ public class AlphaMask implements ImageOperation, java.io.Serializable {
         gfx.drawImage(input, 0, 0, null);
         gfx.dispose();
 
-        // Apply the mask pixel by pixel
-        for (int x = 0; x < output.getWidth(); x++) {
-            for (int y = 0; y < output.getHeight(); y++) {
-                output.setRGB(x, y, maskPixel(scaledMask, output, x, y)); // Apply the mask to the pixel
-            }
+        // Apply the mask pixel by pixel, straight on the output's pixel array
+        int[] pixels = PixelArrays.data(output);
+        int[] maskPixels = PixelArrays.read(scaledMask);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = maskPixel(maskPixels[i], pixels[i]); // Apply the mask to the pixel
         }
         return output;
     }
@@ -84,10 +136,12 @@ public class AlphaMask implements ImageOperation, java.io.Serializable {
      * @return The scaled mask image.
      */
     private BufferedImage scaledMask(BufferedImage input) {
+        int width = this.mask.getWidth();
+        int height = this.mask.getHeight();
         BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         
-        // Create the mask from the serialized int array
-        mask.setRGB(0, 0, width, height, maskStore, 0, width);
+        // Create the mask from the stored grey values, only decoded now it is needed
+        PixelArrays.write(mask, this.mask.getPixels());
 
         // Scale the mask to match the size of the input image
         Image scaled = mask.getScaledInstance(input.getWidth(), input.getHeight(), Image.SCALE_SMOOTH);
@@ -106,16 +160,11 @@ public class AlphaMask implements ImageOperation, java.io.Serializable {
     /**
      * Applies the alpha mask to a pixel in the output image.
      *
-     * @param mask   The scaled mask image.
-     * @param output The output image.
-     * @param x      The x-coordinate of the pixel.
-     * @param y      The y-coordinate of the pixel.
+     * @param alpha The pixel value of the scaled mask.
+     * @param rgb   The pixel value of the output image.
      * @return The pixel value with the alpha mask applied.
      */
-    private int maskPixel(BufferedImage mask, BufferedImage output, int x, int y) {
-        // Get the pixel values of both the mask and the output image
-        int rgb = output.getRGB(x, y);
-        int alpha = mask.getRGB(x, y);
+    private int maskPixel(int alpha, int rgb) {
 
         // Extract the alpha channel value from the output image
         int imageAlpha = (rgb & 0xFF000000) >>> 24;
@@ -127,4 +176,34 @@ public class AlphaMask implements ImageOperation, java.io.Serializable {
         // Combine the alpha value with the RGB values of the pixel
         return alphaOut << 24 | rgb & 0x00FFFFFF;
     }
+
+    /**
+     * Writes the mask in the same form as before it was compressed.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the mask cannot be written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("maskStore", mask.getPixels());
+        fields.put("width", mask.getWidth());
+        fields.put("height", mask.getHeight());
+        out.writeFields();
+    }
+
+    /**
+     * Reads a mask stored as a plain int[], compressing and sharing it.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If the mask cannot be read.
+     * @throws ClassNotFoundException Never, the fields are all primitives or arrays of them.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        int[] maskStore = (int[]) fields.get("maskStore", null);
+        if (maskStore == null) {
+            throw new InvalidObjectException("Alpha mask has no mask");
+        }
+        mask = MaskData.intern(fields.get("width", 0), fields.get("height", 0), maskStore);
+    }
 }
@@ -1,8 +1,6 @@
 package cosc202.andie.actions.colour;
 
-import java.awt.image.*;
-
-import cosc202.andie.ImageOperation;
+import cosc202.andie.PointOperation;
 
 /**
  * <p>
@@ -16,6 +14,14 @@ import cosc202.andie.ImageOperation;
  * </p>
  * 
  * <p>
+ * The new value of a channel only depends on its old 8-bit value, so the formula is 
+ * worked out once for each of the 256 possible values and stored in a lookup table.
+ * Being a per-channel {@link PointOperation}, it is applied by
+ * {@link cosc202.andie.FusedPointOperation} as a single table lookup per channel, on
+ * its own or composed with the colour operations around it.
+ * </p>
+ * 
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA
  * 4.0</a>
  * </p>
@@ -24,12 +30,18 @@ import cosc202.andie.ImageOperation;
  * @version 1.0
  */
 
-public class BrightnessAndContrast implements ImageOperation, java.io.Serializable {
+public class BrightnessAndContrast implements PointOperation, java.io.Serializable {
+
+    /** Same serial version as before this implemented PointOperation, for old ops files. */
+    private static final long serialVersionUID = -7946868747867387995L;
 
     private double brightness;
 
     private double contrast;
 
+    /** New value for each old channel value, built when first needed. */
+    private transient int[] table;
+
     /**
      * <p>
      * Create a new BrightnessAndContrast operation.
@@ -44,9 +56,27 @@ public class BrightnessAndContrast implements ImageOperation, java.io.Serializab
 
     }
 
+    /**
+     * Get the brightness change.
+     * 
+     * @return The brightness change as a percentage
+     */
+    public int getBrightness() {
+        return (int) brightness;
+    }
+
+    /**
+     * Get the contrast change.
+     * 
+     * @return The contrast change as a percentage
+     */
+    public int getContrast() {
+        return (int) contrast;
+    }
+
     /**
      * <p>
-     * Apply a Brightness and Contrast conversion to an image with the given
+     * Apply a Brightness and Contrast conversion to a pixel with the given
      * formula.
      * </p>
      * 
@@ -55,47 +85,52 @@ public class BrightnessAndContrast implements ImageOperation, java.io.Serializab
      * lab book.
      * </p>
      * 
-     * @param input The image to be altered
-     * @return The resulting altered image.
+     * @param argb The pixel to be altered
+     * @return The resulting altered pixel.
      */
+    public int applyPixel(int argb) {
+        return lookup(getTable(), argb);
+    }
 
-    public BufferedImage apply(BufferedImage input) {
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        // loop over each pixels
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                // set rgb at x, y
-                output.setRGB(x, y, getARGB(x, y, input));
+    /**
+     * Looks up the new red, green and blue values of a pixel, keeping its alpha.
+     * 
+     * @param lookup the lookup table
+     * @param argb   the pixel to be altered
+     * @return the altered pixel
+     */
+    private static int lookup(int[] lookup, int argb) {
+        return (argb & 0xFF000000) | (lookup[(argb >> 16) & 0xFF] << 16)
+                | (lookup[(argb >> 8) & 0xFF] << 8) | lookup[argb & 0xFF];
+    }
+
+    /**
+     * Gets the lookup table, working it out the first time it is needed.
+     * 
+     * @return the new value for each old channel value
+     */
+    private int[] getTable() {
+        if (table == null) {
+            int[] lookup = new int[256];
+            for (int x = 0; x < 256; x++) {
+                // If the pixels new value is out of range, put it at the extreme it went over.
+                lookup[x] = cast(calculateColour(x));
             }
+            table = lookup;
         }
-        return output;
+        return table;
     }
 
-    private int getARGB(int x, int y, BufferedImage input) {
-        int argb = input.getRGB(x, y);
-
-        int a = (argb & 0xFF000000) >> 24;
-
-        int r = (argb & 0x00FF0000) >> 16;
-
-        int g = (argb & 0x0000FF00) >> 8;
-
-        int b = (argb & 0x000000FF);
-
-        int red = calculateColour(r);
-
-        int green = calculateColour(g);
-
-        int blue = calculateColour(b);
-
-        // If the pixels new value is out of range, put it at the extreme it went over.
-        red = cast(red);
-        blue = cast(blue);
-        green = cast(green);
-
-        // Assign the new values onto the pixel
-        argb = (a << 24) | (red << 16) | (green << 8) | blue;
-        return argb;
+    /**
+     * <p>
+     * The same formula is used for red, green and blue, and alpha is kept.
+     * </p>
+     * 
+     * @return true
+     */
+    @Override
+    public boolean isPerChannel() {
+        return true;
     }
 
     // calculates colour based on previous colour value and new contrast and brightness
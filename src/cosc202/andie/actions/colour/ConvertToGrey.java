@@ -1,8 +1,6 @@
 package cosc202.andie.actions.colour; 
 
-import java.awt.image.*;
-
-import cosc202.andie.ImageOperation;
+import cosc202.andie.PointOperation;
 
 /**
  * <p>
@@ -22,7 +20,10 @@ import cosc202.andie.ImageOperation;
  * @author Steven Mills
  * @version 1.0
  */
-public class ConvertToGrey implements ImageOperation, java.io.Serializable {
+public class ConvertToGrey implements PointOperation, java.io.Serializable {
+
+    /** Fixed at its old value so ops files saved before the PointOperation change load. */
+    private static final long serialVersionUID = 8247750885081023656L;
 
     /**
      * <p>
@@ -35,7 +36,7 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
 
     /**
      * <p>
-     * Apply greyscale conversion to an image.
+     * Apply greyscale conversion to a pixel.
      * </p>
      * 
      * <p>
@@ -45,27 +46,18 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
      * least to blue.
      * </p>
      * 
-     * @param input The image to be converted to greyscale
-     * @return The resulting greyscale image.
+     * @param argb The pixel to be converted to greyscale
+     * @return The resulting grey pixel.
      */
-    public BufferedImage apply(BufferedImage input) {
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                int a = (argb & 0xFF000000) >> 24;
-                int r = (argb & 0x00FF0000) >> 16;
-                int g = (argb & 0x0000FF00) >> 8;
-                int b = (argb & 0x000000FF);
+    public int applyPixel(int argb) {
+        int a = (argb & 0xFF000000) >> 24;
+        int r = (argb & 0x00FF0000) >> 16;
+        int g = (argb & 0x0000FF00) >> 8;
+        int b = (argb & 0x000000FF);
 
-                int grey = (int) Math.round(0.3*r + 0.6*g + 0.1*b);
+        int grey = (int) Math.round(0.3*r + 0.6*g + 0.1*b);
 
-                argb = (a << 24) | (grey << 16) | (grey << 8) | grey;
-                output.setRGB(x, y, argb);
-            }
-        }
-        
-        return output;
+        return (a << 24) | (grey << 16) | (grey << 8) | grey;
     }
     
 }
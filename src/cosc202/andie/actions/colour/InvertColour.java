@@ -1,8 +1,6 @@
 package cosc202.andie.actions.colour; 
 
-import java.awt.image.*;
-
-import cosc202.andie.ImageOperation;
+import cosc202.andie.PointOperation;
 
 /**
  * <p>
@@ -10,13 +8,21 @@ import cosc202.andie.ImageOperation;
  * </p>
  * 
  * <p>
+ * Each colour channel is inverted on its own, so this is a per-channel 
+ * {@link PointOperation} and can be fused with neighbouring colour operations.
+ * </p>
+ * 
+ * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  * 
  * @author Xavier Nuttall
  * @version 1.0
  */
-public class InvertColour implements ImageOperation, java.io.Serializable {
+public class InvertColour implements PointOperation, java.io.Serializable {
+
+    /** Kept from before InvertColour was a PointOperation so old ops files still load. */
+    private static final long serialVersionUID = 3264126306041392478L;
 
     /**
      * <p>
@@ -29,28 +35,31 @@ public class InvertColour implements ImageOperation, java.io.Serializable {
 
     /**
      * <p>
-     * Apply colour invertion opperation to the image.
+     * Apply colour invertion opperation to a pixel.
+     * </p>
+     * 
+     * @param argb The pixel to invert
+     * @return The inverted pixel.
+     */
+    public int applyPixel(int argb) {
+        int a = (argb & 0xFF000000) >> 24;
+        int r = 255 - ((argb & 0x00FF0000) >> 16);
+        int g = 255 - ((argb & 0x0000FF00) >> 8);
+        int b = 255 - (argb & 0x000000FF);
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * <p>
+     * Each channel is inverted the same way, and alpha is kept.
      * </p>
      * 
-     * @param input The image to be converted to greyscale
-     * @return The resulting greyscale image.
+     * @return true
      */
-    public BufferedImage apply(BufferedImage input) {
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                int a = (argb & 0xFF000000) >> 24;
-                int r = 255 - ((argb & 0x00FF0000) >> 16);
-                int g = 255 - ((argb & 0x0000FF00) >> 8);
-                int b = 255 - (argb & 0x000000FF);
-
-                argb = (a << 24) | (r << 16) | (g << 8) | b;
-                output.setRGB(x, y, argb);
-            }
-        }
-        
-        return output;
+    @Override
+    public boolean isPerChannel() {
+        return true;
     }
     
 }
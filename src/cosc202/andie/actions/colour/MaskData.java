@@ -0,0 +1,305 @@
+package cosc202.andie.actions.colour;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * The pixels of an {@link AlphaMask}, stored compressed and shared between masks with
+ * the same content.
+ * </p>
+ *
+ * <p>
+ * A mask is kept as a plane of grey bytes, plus a plane of alpha bytes only if the
+ * mask image had any transparency, deflated together. Masks are identified by a
+ * SHA-256 hash of their content, and {@link #intern} returns the existing copy
+ * when the same mask is loaded again, whether from another operation or another ops
+ * file. The packed pixels {@link AlphaMask} works with are only decoded when the mask
+ * is applied, and are then kept until memory runs low.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see AlphaMask
+ * @author agent
+ * @version 1.0
+ */
+public final class MaskData {
+
+    /** Every mask still in use, by hash. */
+    private static final Map<String, WeakReference<MaskData>> STORE = new HashMap<String, WeakReference<MaskData>>();
+
+    private final String hash;
+    private final int width;
+    private final int height;
+    private final boolean hasAlpha;
+    /** The grey plane followed by the alpha plane if there is one, deflated. */
+    private final byte[] compressed;
+    /** The packed ARGB pixels, once decoded. */
+    private SoftReference<int[]> decoded = new SoftReference<int[]>(null);
+
+    private MaskData(String hash, int width, int height, boolean hasAlpha, byte[] compressed) {
+        this.hash = hash;
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+        this.compressed = compressed;
+    }
+
+    /**
+     * <p>
+     * Get the shared mask with the given pixels.
+     * </p>
+     *
+     * @param width  The width of the mask
+     * @param height The height of the mask
+     * @param argb   The packed ARGB pixels of the greyscale mask, row by row
+     * @return The mask, shared with any other mask with the same pixels
+     */
+    public static MaskData intern(int width, int height, int[] argb) {
+        if (argb.length != width * height) {
+            throw new IllegalArgumentException("Mask is not " + width + "x" + height);
+        }
+        boolean hasAlpha = false;
+        for (int pixel : argb) {
+            if ((pixel >>> 24) != 0xFF) {
+                hasAlpha = true;
+                break;
+            }
+        }
+        byte[] planes = new byte[argb.length * (hasAlpha ? 2 : 1)];
+        for (int i = 0; i < argb.length; i++) {
+            planes[i] = (byte) argb[i];
+            if (hasAlpha) {
+                planes[argb.length + i] = (byte) (argb[i] >>> 24);
+            }
+        }
+        String hash = hash(width, height, hasAlpha, planes);
+
+        synchronized (STORE) {
+            MaskData existing = lookup(hash);
+            if (existing != null) {
+                return existing;
+            }
+            MaskData mask = new MaskData(hash, width, height, hasAlpha, deflate(planes));
+            STORE.put(hash, new WeakReference<MaskData>(mask));
+            return mask;
+        }
+    }
+
+    /**
+     * <p>
+     * Get the shared mask with the given compressed content, as returned by
+     * {@link #getCompressed()}.
+     * </p>
+     *
+     * @param hash       The hash of the mask
+     * @param width      The width of the mask
+     * @param height     The height of the mask
+     * @param hasAlpha   Whether the mask has an alpha plane
+     * @param compressed The compressed planes
+     * @return The mask, shared with any other mask with the same hash
+     * @throws IOException If the planes cannot be decompressed, or do not match the hash
+     */
+    public static MaskData intern(String hash, int width, int height, boolean hasAlpha, byte[] compressed)
+            throws IOException {
+        long size = (long) width * height * (hasAlpha ? 2 : 1);
+        if (width <= 0 || height <= 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Mask " + hash + " has a bad size " + width + "x" + height);
+        }
+        MaskData mask = new MaskData(hash, width, height, hasAlpha, compressed.clone());
+        // the hash came from a file, so it is checked before anything is shared under it
+        byte[] planes;
+        try {
+            planes = mask.inflate((int) size);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!hash(width, height, hasAlpha, planes).equals(hash)) {
+            throw new IOException("Mask " + hash + " does not match its content");
+        }
+        synchronized (STORE) {
+            MaskData existing = lookup(hash);
+            if (existing != null) {
+                return existing;
+            }
+            STORE.put(hash, new WeakReference<MaskData>(mask));
+            return mask;
+        }
+    }
+
+    /**
+     * <p>
+     * Find a mask that is still in use by its hash.
+     * </p>
+     *
+     * @param hash The hash of the mask
+     * @return The mask, or null if no mask with that hash is in use
+     */
+    public static MaskData lookup(String hash) {
+        synchronized (STORE) {
+            WeakReference<MaskData> ref = STORE.get(hash);
+            MaskData mask = ref == null ? null : ref.get();
+            if (ref != null && mask == null) {
+                STORE.remove(hash);
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * <p>
+     * Get the packed ARGB pixels of the mask, decoding them if needed.
+     * </p>
+     *
+     * <p>
+     * The array is shared, so it must not be changed.
+     * </p>
+     *
+     * @return The pixels of the mask, row by row
+     */
+    public synchronized int[] getPixels() {
+        int[] argb = decoded.get();
+        if (argb == null) {
+            byte[] planes = inflate(width * height * (hasAlpha ? 2 : 1));
+            int size = width * height;
+            argb = new int[size];
+            for (int i = 0; i < size; i++) {
+                int grey = planes[i] & 0xFF;
+                int alpha = hasAlpha ? planes[size + i] & 0xFF : 0xFF;
+                argb[i] = (alpha << 24) | (grey << 16) | (grey << 8) | grey;
+            }
+            decoded = new SoftReference<int[]>(argb);
+        }
+        return argb;
+    }
+
+    /**
+     * Get the hash identifying the mask's content.
+     *
+     * @return The SHA-256 hash, in hexadecimal
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the width of the mask.
+     *
+     * @return The width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the mask.
+     *
+     * @return The height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Whether the mask has an alpha plane.
+     *
+     * @return True if the mask image had any transparency
+     */
+    public boolean hasAlpha() {
+        return hasAlpha;
+    }
+
+    /**
+     * Get the compressed planes of the mask.
+     *
+     * @return The deflated grey plane followed by the alpha plane if there is one
+     */
+    public byte[] getCompressed() {
+        return compressed.clone();
+    }
+
+    /**
+     * Hashes the content of a mask.
+     *
+     * @param width    the width of the mask
+     * @param height   the height of the mask
+     * @param hasAlpha whether there is an alpha plane
+     * @param planes   the uncompressed planes
+     * @return the hash in hexadecimal
+     */
+    private static String hash(int width, int height, boolean hasAlpha, byte[] planes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(9).putInt(width).putInt(height).put((byte) (hasAlpha ? 1 : 0)).array());
+            digest.update(planes);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compresses the planes of a mask.
+     *
+     * @param planes the bytes to compress
+     * @return the deflated bytes
+     */
+    private static byte[] deflate(byte[] planes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(planes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses the planes of the mask.
+     *
+     * @param size the number of bytes expected
+     * @return the planes
+     */
+    private byte[] inflate(int size) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] planes = new byte[size];
+        try {
+            int read = 0;
+            while (read < size && !inflater.finished()) {
+                int n = inflater.inflate(planes, read, size - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != size) {
+                throw new UncheckedIOException(new IOException("Mask " + hash + " is truncated"));
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Mask " + hash + " is corrupt", e));
+        } finally {
+            inflater.end();
+        }
+        return planes;
+    }
+}
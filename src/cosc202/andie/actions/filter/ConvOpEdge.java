@@ -1,14 +1,24 @@
 package cosc202.andie.actions.filter;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
-import java.util.ArrayDeque;
+import java.util.stream.IntStream;
+
+import cosc202.andie.PixelArrays;
 
 /**
  * This class implements a kernel for a convolution, changing images in a given
  * way. For edges of the image it will ignore any values
  * which exist outside the images border and re-normalise the remaining kernel.
+ *
+ * <p>
+ * The convolution works straight on the image's packed ARGB pixel array. The range
+ * of the kernel that lies inside the image is looked up from tables built once per
+ * image, so the border pixels are done in the same pass as the rest of the image.
+ * Pixels whose whole kernel lies inside the image use the kernel as is (like
+ * {@link java.awt.image.ConvolveOp}), border pixels divide by the sum of the part of
+ * the kernel inside the image.
+ * </p>
  */
 public class ConvOpEdge{
 
@@ -17,7 +27,7 @@ public class ConvOpEdge{
     float[] flatKer;
     /**
      * Constructs a {@code ConvOpEdge}  with given kernel
-     * @param ker Kernel for convolution this should NEVER sum any non zero elements 
+     * @param ker Kernel for convolution this should NEVER sum any non zero elements
      * to zero at any point when masked by the image edges.
      */
     public ConvOpEdge(Kernel ker) {
@@ -25,27 +35,34 @@ public class ConvOpEdge{
         int kerWidth = ker.getWidth();
         this.radius = kerWidth / 2;
         flatKer = ker.getKernelData(null);
+
+        // ConvolveOp flips the kernel (a true convolution), do the same so the
+        // result matches it and the border pixels agree with the rest of the image
+        for (int i = 0, j = flatKer.length - 1; i < j; i++, j--) {
+            float temp = flatKer[i];
+            flatKer[i] = flatKer[j];
+            flatKer[j] = temp;
+        }
     }
 
     /**
      * Non-destructively applies convolution to an input image.
-     * 
+     *
      * @param input BufferedImage to apply convolution to (unchanged).
      * @return convolved image
      */
     public BufferedImage filter(BufferedImage input) {
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null),
-                input.isAlphaPremultiplied(), null);
+        BufferedImage output = PixelArrays.blank(input);
         filter(input, output);
         return output;
     }
 
     /**
      * Applies kernel convolution to the input image and saves it as an output.
-     * 
+     *
      * @param input  BufferedImage to apply convolution from (unchanged).
      * @param output BufferedImage to apply convolution to (changed).
-     * @return 1 on success, -1 on failure input and output were different sizes
+     * @return the output, or null on failure if input and output were different sizes
      */
     public BufferedImage filter(BufferedImage input, BufferedImage output) {
         if (output == null) {
@@ -57,110 +74,101 @@ public class ConvOpEdge{
         if (width != output.getWidth() || height != output.getHeight()) {
             return null;
         }
-        // fast convolution centre of image
-        ConvolveOp conv = new ConvolveOp(ker, ConvolveOp.EDGE_ZERO_FILL, null);
-        conv.filter(input, output);
-
-        // Top and bottom of image
-        {
-            // Horizontal Operations (whole width)
-            ArrayDeque<Integer> horizontalOps = new ArrayDeque<Integer>(width);
-            for (int i = 0; i < width; horizontalOps.add(i++));
-
-            // Vertical Operations
-            ArrayDeque<Integer> verticalOps = new ArrayDeque<Integer>(radius * 2);
-
-            // Image top for kernel height
-            for (int i = 0; i < radius && i < height; verticalOps.add(i++));
-
-            // Image bottom for kernel height
-            for (int i = height - 1; i > height - radius - 1 && i > 0; verticalOps.add(i--));
-            horizontalOps.parallelStream().forEach(xNum -> {
-                verticalOps.parallelStream().forEach(yNum -> {
-                    output.setRGB(xNum, yNum, kernelIter(xNum, yNum, input));
-                });
-            });
-        }
-        // Sides of image
-        {
-            // Vertical Operations (all height - top and bot already done)
-            ArrayDeque<Integer> verticalOps = new ArrayDeque<Integer>(height);
-            for (int i = radius; i < height - radius; verticalOps.add(i++));
-
-            // Horizontal Operations
-            ArrayDeque<Integer> horizontalOps = new ArrayDeque<Integer>(radius * 2);
-
-            // Image left for kernel width
-            for (int i = 0; i < radius && i < width; horizontalOps.add(i++));
 
+        int[] src = PixelArrays.read(input);
+        int[] dst = PixelArrays.data(output);
+        boolean direct = dst != null && dst != src;
+        if (!direct) {
+            dst = new int[width * height];
+        }
 
-            // Image right for kernel width
-
-            for (int i = width - 1; i > (width - radius-1) && i > 0; horizontalOps.add(i--));
-
-            verticalOps.parallelStream().forEach(yNum -> {
-                horizontalOps.parallelStream().forEach(xNum -> {
-                    output.setRGB(xNum, yNum, kernelIter(xNum, yNum, input));
+        // Clamp tables: the first and last kernel column/row inside the image
+        int[] xStart = new int[width];
+        int[] xEnd = new int[width];
+        clampTable(width, xStart, xEnd);
+        int[] yStart = new int[height];
+        int[] yEnd = new int[height];
+        clampTable(height, yStart, yEnd);
+
+        final int[] out = dst;
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                out[y * width + x] = kernelIter(x, y, src, width, xStart[x], xEnd[x], yStart[y], yEnd[y]);
+            }
+        });
 
-                });
-            });
+        if (!direct) {
+            PixelArrays.write(output, dst);
         }
-         
         return output;
     }
 
+    /**
+     * Works out which part of the kernel lies inside the image at each position
+     * along an axis.
+     *
+     * @param length the number of pixels along the axis
+     * @param start  where to store the first kernel index inside the image
+     * @param end    where to store the last kernel index inside the image
+     */
+    private void clampTable(int length, int[] start, int[] end) {
+        for (int i = 0; i < length; i++) {
+            start[i] = Math.max(0, radius - i);
+            end[i] = Math.min(2 * radius, length - 1 - i + radius);
+        }
+    }
+
     /**
      * Applies kernel to the specified pixel
      * this works even if the kernel steps out of the image, it will renormalise the
      * kernel image intersection
-     * 
-     * @param x     the x pixel
-     * @param y     the y pixel
-     * @param input image to get the pixel from
+     *
+     * @param x      the x pixel
+     * @param y      the y pixel
+     * @param src    ARGB pixels of the image
+     * @param width  width of the image
+     * @param kxS    first kernel column inside the image
+     * @param kxE    last kernel column inside the image
+     * @param kyS    first kernel row inside the image
+     * @param kyE    last kernel row inside the image
      * @return the pixel rgb after convolution
      */
-    private int kernelIter(int x, int y, BufferedImage input) {
-        int counter = 0;
-        
+    private int kernelIter(int x, int y, int[] src, int width, int kxS, int kxE, int kyS, int kyE) {
+        int diameter = 2 * radius + 1;
+
         // r,g,b values of pixels
         float r, g, b, totalA;
         totalA = r = g = b = 0;
-        int argb;
+        float norm = 0;
 
         // step over each relevant pixel and apply kernel to it
-        float norm = 0;
-        for (int i = y - radius; i < y + radius + 1; i++) {
-            if (i >= 0 && i < input.getHeight()) {
-                for (int j = x - radius; j < x + radius + 1; j++) {
-                    if (j >= 0 && j < input.getWidth()) {
-                        // get colour of image
-                        argb = input.getRGB(j, i);
-
-                        
-                        // assign to store total
-                        totalA += ((argb & 0xFF000000) >>> 24) * flatKer[counter];
-                        r += ((argb & 0x00FF0000) >> 16) * flatKer[counter];
-                        g += ((argb & 0x0000FF00) >> 8) * flatKer[counter];
-                        b += (argb & 0x000000FF) * flatKer[counter];
-                        norm += flatKer[counter];
-                    }
-                    counter++;
+        for (int ky = kyS; ky <= kyE; ky++) {
+            int row = (y + ky - radius) * width + x - radius;
+            int counter = ky * diameter;
+            for (int kx = kxS; kx <= kxE; kx++) {
+                float weight = flatKer[counter + kx];
+                if (weight == 0) {
+                    continue;
                 }
-            }else{
-                counter+=radius*2+1;
+                int argb = src[row + kx];
+
+                // assign to store total
+                totalA += (argb >>> 24) * weight;
+                r += ((argb >> 16) & 0xFF) * weight;
+                g += ((argb >> 8) & 0xFF) * weight;
+                b += (argb & 0xFF) * weight;
+                norm += weight;
             }
-            
         }
 
-        // sets alpha not 100% sure this is the correct value for us
-
-        // applies normalisation
-
-        // if norm is 0 then r,g,b will also necessarily be 0 so this gives 0.0f/0.0f which will give NaN
-        totalA /= norm;
-        r /= norm;
-        g /= norm;
-        b /= norm;
+        // applies normalisation to the pixels whose kernel was cut off by the edge
+        if (kxS != 0 || kyS != 0 || kxE != diameter - 1 || kyE != diameter - 1) {
+            // if norm is 0 then r,g,b will also necessarily be 0 so this gives 0.0f/0.0f which will give NaN
+            totalA /= norm;
+            r /= norm;
+            g /= norm;
+            b /= norm;
+        }
 
         // casting NaN to int will give 0 should this be 0?
         int out = (cast(totalA) << 24) | (cast(r) << 16) | (cast(g) << 8) | cast(b) << 0;
@@ -176,4 +184,4 @@ public class ConvOpEdge{
         if (x > 255) return 255;
         return (int)x;
     }
-}
\ No newline at end of file
+}
@@ -15,11 +15,14 @@ import java.awt.image.*;
  * pixels in a surrounding neighbourhood, and is implemented by a convoloution.
  * </p>
  * 
- * @see cosc202.andie.actions.filter.ConvOpEdge
+ * @see cosc202.andie.actions.filter.SeparableConvOpEdge
  * @author James Robiony-Rogers
  * @version 1.0
  */
 public class GaussianBlurFilter implements ImageOperation, java.io.Serializable {
+
+    /** Kept at the value it had before getRadius() was added, so old ops files still load. */
+    private static final long serialVersionUID = -2313694540490880087L;
     
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2 a
@@ -55,6 +58,45 @@ public class GaussianBlurFilter implements ImageOperation, java.io.Serializable
         this(1);
     }
 
+    /**
+     * Get the size of the filter.
+     * 
+     * @return The radius of the filter
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Get a GaussianBlurFilter with the radius scaled to match a resized image.
+     * </p>
+     * 
+     * @param factor The size of the resized image relative to this one
+     * @return A filter with the same visible effect on the resized image
+     */
+    @Override
+    public ImageOperation scaled(double factor) {
+        return new GaussianBlurFilter(Math.max(1, (int) Math.round(radius * factor)));
+    }
+
+    /**
+     * <p>
+     * Get how far the filter reaches around each pixel, which is its radius.
+     * </p>
+     * 
+     * <p>
+     * The two passes of the blur each reach {@link radius} pixels, one across and one down,
+     * so the corners of the kernel are covered too.
+     * </p>
+     * 
+     * @return The radius of the filter
+     */
+    @Override
+    public int getHaloRadius() {
+        return radius;
+    }
+
     /**
      * <p>
      * Apply a Gaussian Blur filter to an image.
@@ -66,13 +108,19 @@ public class GaussianBlurFilter implements ImageOperation, java.io.Serializable
      * Larger radii lead to stronger blurring.
      * </p>
      * 
+     * <p>
+     * The Gaussian is separable, so rather than building the full (2r+1)x(2r+1) kernel
+     * a 1D kernel is applied across the rows and then down the columns by a
+     * {@link SeparableConvOpEdge}. This gives the same result as the 2D convolution
+     * (including the re-normalised edges) at a cost that grows linearly with the radius.
+     * </p>
+     * 
      * @param input The image to apply the Gaussian filter to.
      * @return The resulting blurred image.
      */
     public BufferedImage apply(BufferedImage input) {
-        // Calculating the size of the convolution kernel and creating an empty gaussianKernalArray 
-        int size = (2*this.radius+1) * (2*this.radius+1);
-        float [] gaussianKernalArray = new float[size];
+        // Creating an empty 1D gaussianKernalArray, one row of the full kernel
+        float [] gaussianKernalArray = new float[2 * this.radius + 1];
 
         // Filling the gaussianKernalArray with values based on the Gaussian equation 
         populateKernalArray(gaussianKernalArray); 
@@ -80,26 +128,23 @@ public class GaussianBlurFilter implements ImageOperation, java.io.Serializable
         // Normalise the gaussianKernalArray 
         normaliseGaussianArray(gaussianKernalArray);
 
-        // Creating a Kernel from the gaussianKernalArray
-        Kernel kernel = new Kernel((2 * this.radius + 1), (2 * this.radius + 1), gaussianKernalArray);
+        // Creating a SeparableConvOpEdge from the 1D kernel
+        SeparableConvOpEdge convOp = new SeparableConvOpEdge(gaussianKernalArray);
 
-        // Creating a ConvOpEdge from the Kernel
-        ConvOpEdge convOp = new ConvOpEdge(kernel);
-
-        // Creating a copy of the input image to store the result of the filter
-        // BufferedImage output = new BufferedImage(input.getColorModel(),
-            // input.copyData(null), input.isAlphaPremultiplied(), null);
-        
         // Applying the filter to the image and storing it in the result
-        
-        BufferedImage output = convOp.filter(input, null);
+        BufferedImage output = convOp.filter(input);
         return output;
     }
 
     /**
      * <p>
-     * Populates the <code>gaussianKernalArray</code> with values calculated from the
-     * Gaussian equation.
+     * Populates the 1D <code>gaussianKernalArray</code> with values calculated from the
+     * Gaussian equation along the x axis.
+     * </p>
+     * 
+     * <p>
+     * The 2D Gaussian is the product of this array with itself, as
+     * e^(-(x^2 + y^2)) = e^(-x^2) * e^(-y^2).
      * </p>
      * 
      * @param gaussianKernalArray The array to populate with values
@@ -108,16 +153,10 @@ public class GaussianBlurFilter implements ImageOperation, java.io.Serializable
     private void populateKernalArray(float[] gaussianKernalArray) {
         int diameter = (2 * this.radius) + 1; 
         
-        // Iterating over the kernal as a 2d array for ease of calulating the gaussian equation
-        for (int row = 0; row < diameter; row++) {
-            for (int col = 0; col < diameter; col++) {
-                // Calculeting the index of the current element in the kernal array
-                int index = (row * diameter) + col;
-
-                // Pluggin the (x, y) values into the gassuian equation.
-                // Middle of the array is 0. Left/below middle are negitive, right/above middle are positive
-                gaussianKernalArray[index] = gaussianEquation((col - this.radius), (row - this.radius));
-            }
+        for (int col = 0; col < diameter; col++) {
+            // Pluggin the (x, 0) values into the gassuian equation.
+            // Middle of the array is 0. Left of middle is negitive, right of middle is positive
+            gaussianKernalArray[col] = gaussianEquation((col - this.radius), 0);
         }
     }
         
@@ -1,8 +1,8 @@
 package cosc202.andie.actions.filter;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 import java.awt.image.*;
-import java.util.*;
 
 /**
  * <p>
@@ -14,6 +14,12 @@ import java.util.*;
  * pixels in a surrounding neighbourhood, and can be implemented by a convoloution.
  * </p>
  * 
+ * <p>
+ * Rather than a convolution this implementation keeps running sums of the pixels
+ * inside the window as it slides across the image, so the cost per pixel does not
+ * depend on the radius.
+ * </p>
+ * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
@@ -23,6 +29,9 @@ import java.util.*;
  * @version 1.0
  */
 public class MeanFilter implements ImageOperation, java.io.Serializable {
+
+    /** Pinned so ops files saved before the radius getter was added can still be read. */
+    private static final long serialVersionUID = -4122374651264437354L;
     
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2 a 5x5 filter, and so forth.
@@ -61,32 +70,185 @@ public class MeanFilter implements ImageOperation, java.io.Serializable {
         this(1);
     }
 
+    /**
+     * Get the size of the filter.
+     * 
+     * @return The radius of the filter
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Get a MeanFilter with the radius scaled to match a resized image.
+     * </p>
+     * 
+     * @param factor The size of the resized image relative to this one
+     * @return A filter with the same visible effect on the resized image
+     */
+    @Override
+    public ImageOperation scaled(double factor) {
+        return new MeanFilter(Math.max(1, (int) Math.round(radius * factor)));
+    }
+
+    /**
+     * <p>
+     * Get how far the filter reaches around each pixel, which is its radius.
+     * </p>
+     * 
+     * @return The radius of the filter
+     */
+    @Override
+    public int getHaloRadius() {
+        return radius;
+    }
+
     /**
      * <p>
      * Apply a Mean filter to an image.
      * </p>
      * 
      * <p>
-     * As with many filters, the Mean filter is implemented via convolution.
-     * The size of the convolution kernel is specified by the {@link radius}.  
+     * The result is the same as a convolution with a uniform kernel whose size is 
+     * specified by the {@link radius}, with pixels outside the image ignored and the
+     * remaining kernel re-normalised (as {@link ConvOpEdge} does). 
      * Larger radii lead to stronger blurring.
      * </p>
      * 
+     * <p>
+     * A box filter is separable, so a running sum is kept along each row and then
+     * a running sum of those down each column. Moving the window one pixel adds the
+     * pixel entering it and subtracts the one leaving it, which is constant time no 
+     * matter how large the radius is. The sums are integers, so the mean is exact.
+     * </p>
+     * 
      * @param input The image to apply the Mean filter to.
      * @return The resulting (blurred)) image.
      */
     public BufferedImage apply(BufferedImage input) {
-        int size = (2*radius+1) * (2*radius+1);
-        float [] array = new float[size];
-        Arrays.fill(array, 1.0f/size);
+        int width = input.getWidth();
+        int height = input.getHeight();
+
+        int[] src = PixelArrays.read(input);
+        BufferedImage output = PixelArrays.blank(input);
+        int[] dst = PixelArrays.data(output);
+        boolean direct = dst != null;
+        if (!direct) {
+            dst = new int[width * height];
+        }
 
-        Kernel kernel = new Kernel(2*radius+1, 2*radius+1, array);
-        ConvOpEdge convOp = new ConvOpEdge(kernel);
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        convOp.filter(input, output);
+        // Bands of rows are filtered in parallel, each keeping its own column sums
+        final int[] out = dst;
+        PixelArrays.forEachBand(height, (y0, y1) -> filterBand(src, out, width, height, y0, y1));
 
+        if (!direct) {
+            PixelArrays.write(output, dst);
+        }
         return output;
     }
 
+    /**
+     * Filters rows <code>y0</code> (inclusive) to <code>y1</code> (exclusive).
+     * 
+     * @param src    ARGB pixels of the input image
+     * @param dst    ARGB pixels of the output image
+     * @param width  image width
+     * @param height image height
+     * @param y0     first row of the band
+     * @param y1     row after the last row of the band
+     */
+    private void filterBand(int[] src, int[] dst, int width, int height, int y0, int y1) {
+        // Running (a, r, g, b) sums of each column over the rows in the window
+        int[] columnSums = new int[width * 4];
+        int[] rowSums = new int[width * 4];
+
+        // Start with the window for the row above y0, the first step then slides it onto y0
+        for (int y = Math.max(0, y0 - radius - 1); y < Math.min(height, y0 + radius); y++) {
+            rowSums(src, width, y, rowSums);
+            add(columnSums, rowSums, 1);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            PixelArrays.checkInterrupted();
+            // Slide the window down, adding the row entering and removing the one leaving
+            int entering = y + radius;
+            int leaving = y - radius - 1;
+            if (entering < height) {
+                rowSums(src, width, entering, rowSums);
+                add(columnSums, rowSums, 1);
+            }
+            if (leaving >= 0) {
+                rowSums(src, width, leaving, rowSums);
+                add(columnSums, rowSums, -1);
+            }
+
+            int rows = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+            int offset = y * width;
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                // Only the pixels inside the image are counted, which re-normalises the edges
+                int count = rows * (Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1);
+                dst[offset + x] = (columnSums[i] / count << 24) | (columnSums[i + 1] / count << 16)
+                        | (columnSums[i + 2] / count << 8) | columnSums[i + 3] / count;
+            }
+        }
+    }
+
+    /**
+     * Calculates the sum of each channel over the window centred on every pixel of a row.
+     * 
+     * @param src   ARGB pixels of the input image
+     * @param width image width
+     * @param y     the row to sum
+     * @param sums  where to store the (a, r, g, b) sums for the row
+     */
+    private void rowSums(int[] src, int width, int y, int[] sums) {
+        int offset = y * width;
+        int a, r, g, b;
+        a = r = g = b = 0;
+        // Start with the pixels left of and including x = 0 that are in the window
+        for (int x = 0; x < Math.min(width, radius); x++) {
+            int argb = src[offset + x];
+            a += argb >>> 24;
+            r += (argb >> 16) & 0xFF;
+            g += (argb >> 8) & 0xFF;
+            b += argb & 0xFF;
+        }
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            int entering = x + radius;
+            int leaving = x - radius - 1;
+            if (entering < width) {
+                int argb = src[offset + entering];
+                a += argb >>> 24;
+                r += (argb >> 16) & 0xFF;
+                g += (argb >> 8) & 0xFF;
+                b += argb & 0xFF;
+            }
+            if (leaving >= 0) {
+                int argb = src[offset + leaving];
+                a -= argb >>> 24;
+                r -= (argb >> 16) & 0xFF;
+                g -= (argb >> 8) & 0xFF;
+                b -= argb & 0xFF;
+            }
+            sums[i] = a;
+            sums[i + 1] = r;
+            sums[i + 2] = g;
+            sums[i + 3] = b;
+        }
+    }
+
+    /**
+     * Adds (or subtracts) one array of sums to another.
+     * 
+     * @param total the sums to update
+     * @param sums  the sums to add
+     * @param sign  1 to add, -1 to subtract
+     */
+    private void add(int[] total, int[] sums, int sign) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += sign * sums[i];
+        }
+    }
 
 }
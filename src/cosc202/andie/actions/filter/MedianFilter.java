@@ -1,8 +1,8 @@
 package cosc202.andie.actions.filter;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
@@ -14,6 +14,15 @@ import java.util.Arrays;
  * The median filter takes all of the pixel values in a local neighbourhood and sorts them
  * </p>
  * 
+ * <p>
+ * Rather than sorting every neighbourhood, histograms of the values are kept and 
+ * updated as the neighbourhood slides across the image (Perreault and Hebert, 
+ * "Median Filtering in Constant Time"). Each column keeps a histogram of the rows 
+ * in the window, and the window histogram is the sum of the column histograms it
+ * covers. Histograms are split into 16 coarse buckets of 16 fine bins so that finding
+ * the median only needs to look at a few of the fine bins.
+ * </p>
+ * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
@@ -24,6 +33,9 @@ import java.util.Arrays;
  */
 
 public class MedianFilter implements ImageOperation, java.io.Serializable {
+    /** The serial version from before the radius getter, for older ops files. */
+    private static final long serialVersionUID = -8094506221130465768L;
+
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, radius of 2 is 5x5, etc
      */
@@ -53,101 +65,256 @@ public class MedianFilter implements ImageOperation, java.io.Serializable {
         this(1);
     }
 
+    /**
+     * Get the size of the filter
+     * 
+     * @return The radius of the filter
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Get a MedianFilter with the radius scaled to match a resized image.
+     * </p>
+     * 
+     * @param factor The size of the resized image relative to this one
+     * @return A filter with the same visible effect on the resized image
+     */
+    @Override
+    public ImageOperation scaled(double factor) {
+        return new MedianFilter(Math.max(1, (int) Math.round(radius * factor)));
+    }
+
+    /**
+     * <p>
+     * Get how far the filter reaches around each pixel, which is its radius.
+     * </p>
+     * 
+     * @return The radius of the filter
+     */
+    @Override
+    public int getHaloRadius() {
+        return radius;
+    }
+
     /**
      * Apply a Median filter to an image
      * 
-     * The filter is implemented via a convolution
-     * The size of kernel is specified by the {@link radius}
+     * The size of the neighbourhood is specified by the {@link radius}.
+     * Pixels outside the image are ignored, and when the neighbourhood has an even
+     * number of pixels the two middle values are averaged.
+     * 
+     * Bands of rows are filtered in parallel, one channel at a time.
      * 
      * @param input The image to apply the median filter to
      * @return The resulting image
      */
     public BufferedImage apply (BufferedImage input){
+        int width = input.getWidth();
+        int height = input.getHeight();
 
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-
-        // create pools
-        ArrayDeque<Integer> horizontalOps = new ArrayDeque<Integer>(input.getWidth());
-        for (int i = 0; i < input.getWidth(); horizontalOps.add(i++));
-
-        ArrayDeque<Integer> verticalOps = new ArrayDeque<Integer>(input.getHeight());
-        for (int i = 0; i < input.getHeight(); verticalOps.add(i++));
+        int[] src = PixelArrays.read(input);
+        BufferedImage output = PixelArrays.blank(input);
+        int[] dst = PixelArrays.data(output);
+        boolean direct = dst != null;
+        if (!direct) {
+            dst = new int[width * height];
+        }
 
-        // start work
-        horizontalOps.parallelStream().forEach(x -> {
-            verticalOps.parallelStream().forEach(y -> {
-                // do a thing
-                output.setRGB(x, y, setARGB(x, y, input));
-            });
+        final int[] out = dst;
+        PixelArrays.forEachBand(height, (y0, y1) -> {
+            // one channel at a time keeps the column histograms small, and they are
+            // reused for each channel of the band
+            int[] columnFine = new int[width * 256];
+            int[] columnCoarse = new int[width * 16];
+            for (int shift = 0; shift < 32; shift += 8) {
+                filterBand(src, out, width, height, y0, y1, shift, columnFine, columnCoarse);
+            }
         });
+
+        if (!direct) {
+            PixelArrays.write(output, dst);
+        }
         return output;
     }
-    
-    //This method sets the ARGB for each pixel, and allows less clutter in prev method
-    private int setARGB(int x, int y, BufferedImage input){
-
-        //set areaSize 
-        int areaSize = 0;
-        short height = 0;
-        short width = 0;
-        for(int i=x-radius; i<x+radius+1; i++){
-            if(i>=0 && i<input.getWidth()){
-                width++;
-            }
+
+    /**
+     * Median filters one channel of rows <code>y0</code> (inclusive) to <code>y1</code> (exclusive).
+     * 
+     * @param src    ARGB pixels of the input image
+     * @param dst    ARGB pixels of the output image, the channel is OR'd in
+     * @param width  image width
+     * @param height image height
+     * @param y0     first row of the band
+     * @param y1     row after the last row of the band
+     * @param shift  bit position of the channel (0 blue, 8 green, 16 red, 24 alpha)
+     * @param columnFine   space for the fine histogram (256 bins) of each column, cleared here
+     * @param columnCoarse space for the coarse histogram (16 buckets) of each column, cleared here
+     */
+    private void filterBand(int[] src, int[] dst, int width, int height, int y0, int y1, int shift,
+            int[] columnFine, int[] columnCoarse) {
+        // Histogram of each column over the rows in the window, left over from the last channel
+        Arrays.fill(columnFine, 0);
+        Arrays.fill(columnCoarse, 0);
+
+        // Histogram of the whole window, and which x each fine bucket is currently correct for
+        int[] windowFine = new int[256];
+        int[] windowCoarse = new int[16];
+        int[] updatedAt = new int[16];
+
+        // Start with the window for the row above y0, the first step then slides it onto y0
+        for (int y = Math.max(0, y0 - radius - 1); y < Math.min(height, y0 + radius); y++) {
+            updateColumns(src, width, y, shift, columnFine, columnCoarse, 1);
         }
-        for(int i=y-radius; i<y+radius+1; i++){
-            if(i>=0 && i<input.getHeight()){
-                height++;
+
+        for (int y = y0; y < y1; y++) {
+            PixelArrays.checkInterrupted();
+            // Slide the column histograms down a row
+            int entering = y + radius;
+            int leaving = y - radius - 1;
+            if (entering < height) {
+                updateColumns(src, width, entering, shift, columnFine, columnCoarse, 1);
             }
+            if (leaving >= 0) {
+                updateColumns(src, width, leaving, shift, columnFine, columnCoarse, -1);
+            }
+            int rows = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+
+            // New row, the fine histograms have to be rebuilt when they are needed
+            Arrays.fill(windowCoarse, 0);
+            Arrays.fill(updatedAt, Integer.MIN_VALUE);
+            for (int x = 0; x < Math.min(width, radius); x++) {
+                addColumn(windowCoarse, 0, columnCoarse, x * 16, 16, 1);
+            }
+
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                // Slide the coarse window histogram along a column
+                if (x + radius < width) {
+                    addColumn(windowCoarse, 0, columnCoarse, (x + radius) * 16, 16, 1);
+                }
+                if (x - radius - 1 >= 0) {
+                    addColumn(windowCoarse, 0, columnCoarse, (x - radius - 1) * 16, 16, -1);
+                }
+
+                int areaSize = rows * (Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1);
+                int middle = areaSize / 2;
+                int value;
+                if (areaSize % 2 == 0) {
+                    int low = select(middle - 1, x, width, windowCoarse, windowFine, updatedAt, columnFine);
+                    int high = select(middle, x, width, windowCoarse, windowFine, updatedAt, columnFine);
+                    // Matches averaging the values shifted to the signed byte range
+                    value = ((low - 128) + (high - 128)) / 2 + 128;
+                } else {
+                    value = select(middle, x, width, windowCoarse, windowFine, updatedAt, columnFine);
+                }
+                dst[offset + x] |= value << shift;
+            }
+        }
+    }
+
+    /**
+     * Finds the value with the given rank in the window centred on column x.
+     * 
+     * @param rank         how many values in the window are smaller (0 is the minimum)
+     * @param x            the column the window is centred on
+     * @param width        image width
+     * @param windowCoarse coarse histogram of the window
+     * @param windowFine   fine histogram of the window, brought up to date as needed
+     * @param updatedAt    the column each coarse bucket of the fine histogram is correct for
+     * @param columnFine   fine histograms of each column
+     * @return the channel value with the given rank
+     */
+    private int select(int rank, int x, int width, int[] windowCoarse, int[] windowFine, int[] updatedAt,
+            int[] columnFine) {
+        int count = 0;
+        int bucket = 0;
+        while (count + windowCoarse[bucket] <= rank) {
+            count += windowCoarse[bucket++];
         }
-        areaSize = height*width;
-
-        int middle = areaSize/2;
-
-        // bytes for fast sorting
-        byte[] aArr = new byte[areaSize];
-        byte[] rArr = new byte[areaSize];
-        byte[] gArr = new byte[areaSize];
-        byte[] bArr = new byte[areaSize];
-        short counter = 0;
-        
-        // loop over radius area
-        for(int i=x-radius; i<x+radius+1; i++){
-            // check index 'i' within image bounds 
-            if(i>=0 && i<input.getWidth()){
-                for(int j=y-radius; j<y+radius+1; j++){
-                    // check index 'j' within image bounds 
-                    if(j>=0 && j<input.getHeight()){
-                        int argb = input.getRGB(i, j);
-                        // Unsign
-                        aArr[counter] = (byte)(((argb & 0xFF000000) >>> 24)-128);
-                        rArr[counter] = (byte)(((argb & 0x00FF0000) >> 16)-128);
-                        gArr[counter] = (byte)(((argb & 0x0000FF00) >> 8)-128);
-                        bArr[counter++] = (byte)((argb & 0x000000FF)-128);
-                        
-                    }
+
+        updateBucket(bucket, x, width, windowFine, updatedAt, columnFine);
+
+        int bin = bucket * 16;
+        while (count + windowFine[bin] <= rank) {
+            count += windowFine[bin++];
+        }
+        return bin;
+    }
+
+    /**
+     * Brings one coarse bucket of the fine window histogram up to date for the window
+     * centred on column x.
+     * 
+     * @param bucket     the coarse bucket to update
+     * @param x          the column the window is centred on
+     * @param width      image width
+     * @param windowFine fine histogram of the window
+     * @param updatedAt  the column each coarse bucket of the fine histogram is correct for
+     * @param columnFine fine histograms of each column
+     */
+    private void updateBucket(int bucket, int x, int width, int[] windowFine, int[] updatedAt, int[] columnFine) {
+        int start = bucket * 16;
+        int last = updatedAt[bucket];
+        if (last == x) {
+            return;
+        }
+        if ((long) x - last > 2 * radius + 1) {
+            // The old window doesn't overlap the new one, so start again
+            Arrays.fill(windowFine, start, start + 16, 0);
+            for (int p = Math.max(0, x - radius); p <= Math.min(width - 1, x + radius); p++) {
+                addColumn(windowFine, start, columnFine, p * 256 + start, 16, 1);
+            }
+        } else {
+            for (int p = last + 1; p <= x; p++) {
+                if (p + radius < width) {
+                    addColumn(windowFine, start, columnFine, (p + radius) * 256 + start, 16, 1);
+                }
+                if (p - radius - 1 >= 0) {
+                    addColumn(windowFine, start, columnFine, (p - radius - 1) * 256 + start, 16, -1);
                 }
             }
         }
+        updatedAt[bucket] = x;
+    }
 
-        Arrays.sort(aArr);
-        Arrays.sort(rArr);
-        Arrays.sort(gArr);
-        Arrays.sort(bArr);
-        int a, r, g, b;
-        if(areaSize%2==0){
-            a = (aArr[middle -1] + aArr[middle])/2+128;
-            r = (rArr[middle -1] + rArr[middle])/2+128;
-            g = (gArr[middle -1] + gArr[middle])/2+128;
-            b = (bArr[middle -1] + bArr[middle])/2+128;
-
-        }else{
-            a = aArr[middle]+128;
-            r = rArr[middle]+128;
-            g = gArr[middle]+128;
-            b = bArr[middle]+128;
+    /**
+     * Adds (or removes) one row of the image to the column histograms.
+     * 
+     * @param src          ARGB pixels of the input image
+     * @param width        image width
+     * @param y            the row to add
+     * @param shift        bit position of the channel
+     * @param columnFine   fine histograms of each column
+     * @param columnCoarse coarse histograms of each column
+     * @param sign         1 to add, -1 to remove
+     */
+    private void updateColumns(int[] src, int width, int y, int shift, int[] columnFine, int[] columnCoarse,
+            int sign) {
+        int offset = y * width;
+        for (int x = 0; x < width; x++) {
+            int value = (src[offset + x] >>> shift) & 0xFF;
+            columnFine[x * 256 + value] += sign;
+            columnCoarse[x * 16 + (value >> 4)] += sign;
+        }
+    }
+
+    /**
+     * Adds (or subtracts) part of a column histogram to a window histogram.
+     * 
+     * @param window       the histogram to update
+     * @param windowStart  first bin of the window histogram to update
+     * @param column       the column histograms
+     * @param columnStart  index of the first bin to add
+     * @param length       how many bins to add
+     * @param sign         1 to add, -1 to subtract
+     */
+    private void addColumn(int[] window, int windowStart, int[] column, int columnStart, int length, int sign) {
+        for (int i = 0; i < length; i++) {
+            window[windowStart + i] += sign * column[columnStart + i];
         }
-        return (a<<24) | (r<<16) | (g<<8) | b;
-    } 
+    }
 
 }
@@ -1,10 +1,12 @@
 package cosc202.andie.actions.filter;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
-import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * <p>
@@ -36,6 +38,9 @@ public class NegativeFilter implements ImageOperation, java.io.Serializable {
     public static final int EDGE_HORIZONTAL = 8;
     public static final int EDGE_VERTICAL = 9;
 
+    /** Unchanged from before getChoice() was added, so old ops files still open. */
+    private static final long serialVersionUID = -1119829301414978995L;
+
     private float[] option;
     /**
      * Construct a negative filter
@@ -47,11 +52,46 @@ public class NegativeFilter implements ImageOperation, java.io.Serializable {
      * @param radius The radius of the newly constructed MedianFilter
      */
     public NegativeFilter(int choice){
-        // all filters are 3x3
-        
+        option = kernel(choice);
+    }
 
-                
-        option = switch(choice) {
+    public NegativeFilter(){
+        this(0);
+    }
+
+    /**
+     * Gets which of the filters this is
+     * 
+     * @return the choice of filter, for example {@link #EMBOSS_LEFT}
+     */
+    public int getChoice(){
+        for (int choice = EMBOSS_LEFT; choice <= EDGE_VERTICAL; choice++) {
+            if (Arrays.equals(option, kernel(choice))) {
+                return choice;
+            }
+        }
+        throw new IllegalStateException("Unknown filter type");
+    }
+
+    /**
+     * Gets how far the filter reaches around each pixel
+     * 
+     * @return 1, as every kernel is 3x3
+     */
+    @Override
+    public int getHaloRadius(){
+        return 1;
+    }
+
+    /**
+     * Gets the kernel for a choice of filter
+     * 
+     * @param choice the choice of filter
+     * @return the 3x3 kernel
+     */
+    private static float[] kernel(int choice){
+        // all filters are 3x3
+        return switch(choice) {
             case EMBOSS_LEFT -> new float[] {0,0,0,1,0,-1,0,0,0};
             case EMBOSS_TOP_LEFT -> new float[] {1,0,0,0,0,0,0,0,-1};
             case EMBOSS_TOP -> new float[] {0,1,0,0,0,0,0,-1,0};
@@ -64,12 +104,6 @@ public class NegativeFilter implements ImageOperation, java.io.Serializable {
             case EDGE_VERTICAL -> new float[] {-0.5f,-1,-0.5f,0,0,0,0.5f,1,0.5f};
             default -> throw new IllegalArgumentException("Unknown filter type");
         };
-
-
-    }
-
-    public NegativeFilter(){
-        this(0);
     }
 
     /**
@@ -98,75 +132,38 @@ public class NegativeFilter implements ImageOperation, java.io.Serializable {
         Kernel positiveKernel = new Kernel(3,3, positiveArray);
         Kernel negativeKernel = new Kernel(3,3, negativeArray);
 
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null),
-                input.isAlphaPremultiplied(), null);
-
         ConvOpEdge negative = new ConvOpEdge(negativeKernel);
         ConvOpEdge positive = new ConvOpEdge(positiveKernel);
 
-        BufferedImage positiveBuffer = positive.filter(input);
-        BufferedImage negativeBuffer = negative.filter(input);
-
-        // create pools
-        ArrayDeque<Integer> horizontalOps = new ArrayDeque<Integer>(input.getWidth());
-        for (int i = 0; i < input.getWidth(); horizontalOps.add(i++));
+        int[] inputPixels = PixelArrays.read(input);
+        int[] positivePixels = PixelArrays.read(positive.filter(input));
+        int[] negativePixels = PixelArrays.read(negative.filter(input));
 
-        ArrayDeque<Integer> verticalOps = new ArrayDeque<Integer>(input.getHeight());
-        for (int i = 0; i < input.getHeight(); verticalOps.add(i++));
-
-        // start work
-        horizontalOps.parallelStream().forEach(x -> {
-            verticalOps.parallelStream().forEach(y -> {
-                // do a thing
-                
-
-                output.setRGB(x, y, (input.getRGB(x, y) & 0xFF000000) | setARGB(x, y, positiveBuffer, negativeBuffer));
-            });
+        // keep the input alpha and subtract the two convolutions
+        int[] outputPixels = new int[inputPixels.length];
+        IntStream.range(0, outputPixels.length).parallel().forEach(i -> {
+            outputPixels[i] = (inputPixels[i] & 0xFF000000) | calculate(positivePixels[i], negativePixels[i]);
         });
+
+        BufferedImage output = PixelArrays.blank(input);
+        PixelArrays.write(output, outputPixels);
         return output;
     }
     
-    
-    /** Returns the RGB value post filtering 
-     * @param x horizontal position of pixel
-     * @param y vertical position of pixel
-     * @param positiveBuffer the RGB which will be subtracted from
-     * @param negativeBuffer the RGB which will be subtracting
-     * @return the value post filter
-     */
-    private int setARGB(int x, int y, BufferedImage positiveBuffer, BufferedImage negativeBuffer){
-        int positive = positiveBuffer.getRGB(x,y);
-        int negative = negativeBuffer.getRGB(x,y);
-        return calculate(positive, negative);
-    }
-
     /** performs positive - negative and returns the RGB int
      * @param positive RGBA int
      * @param negative RGBA int 
      * @return
      */
     private int calculate(int positive, int negative){
-        int[] rgbP = decompose(positive);
-        int[] rgbN = decompose(negative);
-        int r = shiftCentre(rgbP[0] - rgbN[0]);
-        int g = shiftCentre(rgbP[1] - rgbN[1]);
-        int b = shiftCentre(rgbP[2] - rgbN[2]);
+        int r = shiftCentre(((positive & 0x00FF0000) >> 16) - ((negative & 0x00FF0000) >> 16));
+        int g = shiftCentre(((positive & 0x0000FF00) >> 8) - ((negative & 0x0000FF00) >> 8));
+        int b = shiftCentre((positive & 0x000000FF) - (negative & 0x000000FF));
         
         return recompose(r,g,b);
     }
 
 
-    /** takes and ARGB int and turns it into an int array of colour values
-     * @param rgba the value to decompose
-     * @return an int array with the correct values
-     */
-    private int[] decompose(int rgba){
-        int r = (rgba & 0x00FF0000) >> 16;
-        int g = (rgba & 0x0000FF00) >> 8;
-        int b = (rgba & 0x000000FF);
-        return new int[] {r,g,b};
-    }
-
     /** turns seperate argb values and makes it a single argb value
      * @param r red value
      * @param g green value
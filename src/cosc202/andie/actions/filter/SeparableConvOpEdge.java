@@ -0,0 +1,199 @@
+package cosc202.andie.actions.filter;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import cosc202.andie.PixelArrays;
+
+/**
+ * <p>
+ * A convolution with a separable kernel, done as a horizontal pass followed by a
+ * vertical pass.
+ * </p>
+ *
+ * <p>
+ * A separable kernel is one where the 2D kernel is the outer product of a 1D kernel
+ * with itself, such as a Gaussian. Convolving with the 1D kernel across the rows and
+ * then down the columns gives the same result as the full 2D convolution, but costs
+ * <code>2(2r+1)</code> multiply-adds per channel rather than <code>(2r+1)^2</code>.
+ * </p>
+ *
+ * <p>
+ * Edges are handled the same way as {@link ConvOpEdge}: values outside the image are
+ * ignored and the remaining kernel is re-normalised. Because the kernel is separable
+ * the 2D normalisation factor is just the product of the horizontal and vertical ones,
+ * so each pass re-normalises on its own.
+ * </p>
+ *
+ * <p>
+ * The image is processed in horizontal bands in parallel. Each band keeps a ring of
+ * the last <code>2r+1</code> horizontally filtered rows, so memory use does not depend
+ * on the image height.
+ * </p>
+ *
+ * @see ConvOpEdge
+ * @author agent
+ * @version 1.0
+ */
+public class SeparableConvOpEdge {
+
+    float[] ker;
+    int radius;
+
+    /**
+     * Constructs a {@code SeparableConvOpEdge} with the given 1D kernel.
+     *
+     * @param ker The 1D kernel, of odd length <code>2r+1</code>. This should never sum
+     *            any non zero elements to zero when masked by the image edges.
+     */
+    public SeparableConvOpEdge(float[] ker) {
+        this.ker = ker;
+        this.radius = ker.length / 2;
+    }
+
+    /**
+     * Non-destructively applies the convolution to an input image.
+     *
+     * @param input BufferedImage to apply convolution to (unchanged).
+     * @return convolved image
+     */
+    public BufferedImage filter(BufferedImage input) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+
+        int[] src = PixelArrays.read(input);
+        BufferedImage output = PixelArrays.blank(input);
+        int[] dst = PixelArrays.data(output);
+        boolean direct = dst != null;
+        if (!direct) {
+            dst = new int[width * height];
+        }
+
+        // Sum of the kernel that lies inside the image at each column and row
+        float[] normX = norms(width);
+        float[] normY = norms(height);
+
+        final int[] out = dst;
+        PixelArrays.forEachBand(height, (y0, y1) -> filterBand(src, out, width, height, y0, y1, normX, normY));
+
+        if (!direct) {
+            PixelArrays.write(output, dst);
+        }
+        return output;
+    }
+
+    /**
+     * Convolves rows <code>y0</code> (inclusive) to <code>y1</code> (exclusive).
+     *
+     * @param src    ARGB pixels of the input image
+     * @param dst    ARGB pixels of the output image
+     * @param width  image width
+     * @param height image height
+     * @param y0     first row of the band
+     * @param y1     row after the last row of the band
+     * @param normX  kernel sum inside the image for each column
+     * @param normY  kernel sum inside the image for each row
+     */
+    private void filterBand(int[] src, int[] dst, int width, int height, int y0, int y1,
+            float[] normX, float[] normY) {
+        int diameter = 2 * radius + 1;
+        // ring of horizontally filtered rows, 4 floats (a, r, g, b) per pixel
+        float[][] ring = new float[diameter][width * 4];
+        float[] acc = new float[width * 4];
+
+        // fill the ring with the rows above the band (and the first rows of it)
+        int next = Math.max(0, y0 - radius);
+        for (; next < Math.min(height, y0 + radius); next++) {
+            horizontal(src, width, next, normX, ring[next % diameter]);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            PixelArrays.checkInterrupted();
+            // bring in the bottom row of this kernel position
+            if (next < height && next <= y + radius) {
+                horizontal(src, width, next, normX, ring[next % diameter]);
+                next++;
+            }
+
+            Arrays.fill(acc, 0);
+            int kStart = Math.max(0, radius - y);
+            int kEnd = Math.min(diameter - 1, height - 1 - y + radius);
+            for (int k = kStart; k <= kEnd; k++) {
+                float weight = ker[k];
+                float[] row = ring[(y + k - radius) % diameter];
+                for (int i = 0; i < acc.length; i++) {
+                    acc[i] += row[i] * weight;
+                }
+            }
+
+            float norm = normY[y];
+            int offset = y * width;
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                dst[offset + x] = (cast(acc[i] / norm) << 24) | (cast(acc[i + 1] / norm) << 16)
+                        | (cast(acc[i + 2] / norm) << 8) | cast(acc[i + 3] / norm);
+            }
+        }
+    }
+
+    /**
+     * Applies the kernel along a single row, re-normalising at the edges.
+     *
+     * @param src   ARGB pixels of the input image
+     * @param width image width
+     * @param y     the row to filter
+     * @param normX kernel sum inside the image for each column
+     * @param out   where to store the (a, r, g, b) results for the row
+     */
+    private void horizontal(int[] src, int width, int y, float[] normX, float[] out) {
+        int offset = y * width - radius;
+        int diameter = 2 * radius + 1;
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            float a, r, g, b;
+            a = r = g = b = 0;
+            int kStart = Math.max(0, radius - x);
+            int kEnd = Math.min(diameter - 1, width - 1 - x + radius);
+            for (int k = kStart; k <= kEnd; k++) {
+                int argb = src[offset + x + k];
+                float weight = ker[k];
+                a += (argb >>> 24) * weight;
+                r += ((argb >> 16) & 0xFF) * weight;
+                g += ((argb >> 8) & 0xFF) * weight;
+                b += (argb & 0xFF) * weight;
+            }
+            float norm = normX[x];
+            out[i] = a / norm;
+            out[i + 1] = r / norm;
+            out[i + 2] = g / norm;
+            out[i + 3] = b / norm;
+        }
+    }
+
+    /**
+     * Calculates the sum of the kernel elements which lie inside the image for each
+     * position along an axis.
+     *
+     * @param length the number of pixels along the axis
+     * @return kernel sum for each position
+     */
+    private float[] norms(int length) {
+        float[] norms = new float[length];
+        for (int i = 0; i < length; i++) {
+            float sum = 0;
+            for (int k = Math.max(0, radius - i); k < ker.length && i + k - radius < length; k++) {
+                sum += ker[k];
+            }
+            norms[i] = sum;
+        }
+        return norms;
+    }
+
+    /** Cast value to RGB range
+     * @param x the value to cast
+     * @return colour value in correct RGB range
+     */
+    private int cast(float x) {
+        if (x < 0) return 0;
+        if (x > 255) return 255;
+        return (int) x;
+    }
+}
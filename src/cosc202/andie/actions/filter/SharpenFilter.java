@@ -17,6 +17,9 @@ import java.awt.image.*;
  */
 
 public class SharpenFilter implements ImageOperation, java.io.Serializable{
+
+    /** Kept at the value from before getHaloRadius() was added, so old ops files open. */
+    private static final long serialVersionUID = -3288966303384984297L;
     
     /**
      * <p>
@@ -25,6 +28,19 @@ public class SharpenFilter implements ImageOperation, java.io.Serializable{
      */
     public SharpenFilter() {
     }
+
+    /**
+     * <p>
+     * Get how far the filter reaches around each pixel.
+     * </p>
+     * 
+     * @return 1, the radius of the 3x3 kernel
+     */
+    @Override
+    public int getHaloRadius() {
+        return 1;
+    }
+
       /**
      * <p>
      * Apply a sharpen filter to an image.
@@ -45,8 +61,7 @@ public class SharpenFilter implements ImageOperation, java.io.Serializable{
 
         Kernel kernel = new Kernel(3, 3, array);
         ConvOpEdge convOp = new ConvOpEdge(kernel);
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        convOp.filter(input, output);
+        BufferedImage output = convOp.filter(input);
         return output;
     }
 
@@ -5,10 +5,22 @@ import java.awt.image.*;
 
 public class SoftBlurFilter implements ImageOperation, java.io.Serializable {
 
+    // the serial version before getHaloRadius was added
+    private static final long serialVersionUID = -4524356289548452467L;
+
     public SoftBlurFilter() {
         // Construction code goes here 
     }
 
+    /**
+     * The soft blur kernel is 3x3, so it reaches one pixel around each pixel
+     * @return the halo radius of the filter
+     */
+    @Override
+    public int getHaloRadius() {
+        return 1;
+    }
+
     /**
      * This method will apply the filter to a given image 
      * @param inputImg the image to apply the filter to 
@@ -27,12 +39,8 @@ public class SoftBlurFilter implements ImageOperation, java.io.Serializable {
         // Making the ConvOpEdge from the Kernal  
         ConvOpEdge convOp = new ConvOpEdge(kernal); 
 
-        // Creating a copy of the input image to store the result of the filter 
-        BufferedImage outputImg = new BufferedImage(inputImg.getColorModel(), 
-            inputImg.copyData(null), inputImg.isAlphaPremultiplied(), null); 
-        
         // Applying the filter to the image and storing it in the result 
-        convOp.filter(inputImg, outputImg);
+        BufferedImage outputImg = convOp.filter(inputImg);
 
         return outputImg;
     }
@@ -2,6 +2,9 @@ package cosc202.andie.actions.tool;
 
 import java.awt.image.BufferedImage;
 
+import cosc202.andie.PixelAccessor;
+import cosc202.andie.PixelArrays;
+
 /**
  * Crop Tool
  * 
@@ -16,9 +19,9 @@ public class Crop extends Selection {
 
     public BufferedImage apply(BufferedImage input){
         if((getWidth()>0)||(getHeight()>0)){
-            BufferedImage output = new BufferedImage(getWidth(), getHeight(), input.getType());
-        int[] rgbaArray = input.getRGB(getX(), getY(), getWidth(), getHeight(), null, 0, getWidth());
-        output.setRGB(0, 0, getWidth(), getHeight(), rgbaArray, 0, getWidth());
+            BufferedImage output = PixelArrays.blank(input, getWidth(), getHeight());
+        int[] rgbaArray = PixelAccessor.of(input).getPixels(getX(), getY(), getWidth(), getHeight(), null);
+        PixelAccessor.of(output).setPixels(0, 0, getWidth(), getHeight(), rgbaArray);
         return output;
         }
         return input;
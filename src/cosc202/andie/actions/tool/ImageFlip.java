@@ -1,6 +1,7 @@
 package cosc202.andie.actions.tool;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 import java.awt.image.*;
 
 
@@ -26,6 +27,9 @@ import java.awt.image.*;
 
 public class ImageFlip implements ImageOperation, java.io.Serializable {
 
+    /** Fixed at its original value so existing ops files keep loading. */
+    private static final long serialVersionUID = -3651723980477444036L;
+
     /**
      * Determines if horizontal or vertical flip
      * Horizontal is true, Vertical is false
@@ -49,6 +53,14 @@ public class ImageFlip implements ImageOperation, java.io.Serializable {
         this(true);
     }
 
+    /**
+     * Gets the direction of the flip
+     * @return true for a horizontal flip, false for a vertical one
+     */
+    public boolean isHorizontal() {
+        return horizontal;
+    }
+
 
     /**
      * Code which, if horizontal is true, replaces the pixels so the image is
@@ -65,18 +77,23 @@ public class ImageFlip implements ImageOperation, java.io.Serializable {
             translate = new Translation(1, 0, 0, -1, 0, input.getHeight()-1, input.getWidth(), input.getHeight());
         }
 
-        BufferedImage output = new BufferedImage(translate.getWidth(), translate.getHeight(), input.getType());
+        BufferedImage output = PixelArrays.blank(input, translate.getWidth(), translate.getHeight());
+
+        int[] src = PixelArrays.read(input);
+        int[] dst = new int[translate.getWidth() * translate.getHeight()];
+        int width = input.getWidth();
 
-        // loop over every x
-        for (int x = 0; x < input.getWidth(); x++) {
+        // loop over every y
+        for (int y = 0; y < input.getHeight(); y++) {
 
-            // loop over every y
-            for (int y = 0; y < input.getHeight(); y++) {
+            // loop over every x
+            for (int x = 0; x < width; x++) {
 
                 // write old pxl to new location
-                output.setRGB(translate.getX(x, y), translate.getY(x, y), input.getRGB(x, y));
+                dst[translate.getY(x, y) * translate.getWidth() + translate.getX(x, y)] = src[y * width + x];
             }
         }
+        PixelArrays.write(output, dst);
 
         return output;
     }
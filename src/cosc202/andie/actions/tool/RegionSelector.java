@@ -23,6 +23,9 @@ import cosc202.andie.ClickListener;
  * @version 1.0
  */
 public class RegionSelector extends Selection{
+
+    /**Kept at the old computed value so ops files from before the getters still open */
+    private static final long serialVersionUID = -7480707927124816250L;
     
     /**Stores the shape to be drawn */
     private String shape;
@@ -58,6 +61,26 @@ public class RegionSelector extends Selection{
             fill = fillIn;
             strokeSize = strokeSizeIn;
         }
+
+    /**@return The shape to be drawn */
+    public String getShape(){
+        return shape;
+    }
+
+    /**@return The colour of the shape */
+    public Color getColour(){
+        return colour;
+    }
+
+    /**@return Whether the shape is filled */
+    public boolean isFill(){
+        return fill;
+    }
+
+    /**@return The stroke size multiplier */
+    public int getStrokeSize(){
+        return strokeSize;
+    }
     
     /**Apply method
      * <p>
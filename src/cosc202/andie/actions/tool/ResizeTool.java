@@ -1,6 +1,7 @@
 package cosc202.andie.actions.tool;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 import java.awt.Image;
 import java.awt.image.*;
 import java.awt.Graphics2D;
@@ -15,6 +16,9 @@ import java.awt.Graphics2D;
  */
 public class ResizeTool implements ImageOperation, java.io.Serializable {
 
+    /** Same as the computed value before getScale() existed, so old ops files load. */
+    private static final long serialVersionUID = 6150828360690110209L;
+
     /**
      * How much to scale the image by. 150% = 1.5x
      */
@@ -44,6 +48,15 @@ public class ResizeTool implements ImageOperation, java.io.Serializable {
         this.scale = scale;
     }
 
+    /**
+     * Get how much the image is scaled by
+     * 
+     * @return The scale as a percentage
+     */
+    public int getScale() {
+        return scale;
+    }
+
     /**
      * Resize the image
      * 
@@ -65,7 +78,7 @@ public class ResizeTool implements ImageOperation, java.io.Serializable {
         Image scaled = input.getScaledInstance(width, height, 0);
 
         // create output slate
-        BufferedImage output = new BufferedImage(width, height, input.getType());
+        BufferedImage output = PixelArrays.blank(input, width, height);
         Graphics2D g2d = output.createGraphics();
 
         // draw onto slate
@@ -1,6 +1,7 @@
 package cosc202.andie.actions.tool;
 
 import cosc202.andie.ImageOperation;
+import cosc202.andie.PixelArrays;
 
 import java.awt.image.*;
 
@@ -22,6 +23,9 @@ import java.awt.image.*;
 */
 public class RotateTool implements ImageOperation, java.io.Serializable {
 
+    /** Left as it was before getDegrees() so saved ops files still deserialise. */
+    private static final long serialVersionUID = 2261815117612020638L;
+
     /*
      * Degrees of rotation
      */
@@ -53,6 +57,13 @@ public class RotateTool implements ImageOperation, java.io.Serializable {
         this.deg = (deg % 360) / 90;
     }
 
+    /** Gets the rotation
+     * @return the clockwise rotation in degrees, one of 0, 90, 180 or 270
+     */
+    public int getDegrees() {
+        return deg * 90;
+    }
+
     /**
      * <p>
      * Apply a Rotation tool to an image.
@@ -104,18 +115,22 @@ public class RotateTool implements ImageOperation, java.io.Serializable {
 
         }
 
-        BufferedImage output = new BufferedImage(translate.getWidth(), translate.getHeight(), input.getType());
+        BufferedImage output = PixelArrays.blank(input, translate.getWidth(), translate.getHeight());
+
+        int[] src = PixelArrays.read(input);
+        int[] dst = new int[translate.getWidth() * translate.getHeight()];
 
-        // loop over every x
-        for (int x = 0; x < input.getWidth(); x++) {
+        // loop over every y
+        for (int y = 0; y < height; y++) {
 
-            // loop over every y
-            for (int y = 0; y < input.getHeight(); y++) {
+            // loop over every x
+            for (int x = 0; x < width; x++) {
 
                 // write old pxl to new location
-                output.setRGB(translate.getX(x, y), translate.getY(x, y), input.getRGB(x, y));
+                dst[translate.getY(x, y) * translate.getWidth() + translate.getX(x, y)] = src[y * width + x];
             }
         }
+        PixelArrays.write(output, dst);
 
         return output;
     }
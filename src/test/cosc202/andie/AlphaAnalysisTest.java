@@ -0,0 +1,46 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+
+import cosc202.andie.AlphaAnalysis;
+
+public class AlphaAnalysisTest {
+
+    @Test
+    public void testFindsTransparentPixels() {
+        int[] types = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB_PRE
+        };
+        for (int type : types) {
+            // big enough to be scanned in parallel
+            BufferedImage opaque = new BufferedImage(400, 300, type);
+            BufferedImage transparent = new BufferedImage(400, 300, type);
+            for (int y = 0; y < 300; y++) {
+                for (int x = 0; x < 400; x++) {
+                    opaque.setRGB(x, y, 0xFF102030);
+                    transparent.setRGB(x, y, 0xFF102030);
+                }
+            }
+            transparent.setRGB(399, 299, 0xFE102030);
+            assertFalse("type " + type, AlphaAnalysis.hasAlpha(opaque));
+            assertTrue("type " + type, AlphaAnalysis.hasAlpha(transparent));
+        }
+        assertFalse(AlphaAnalysis.hasAlpha(new BufferedImage(10, 10, BufferedImage.TYPE_3BYTE_BGR)));
+    }
+
+    @Test
+    public void testCachesUntilForgotten() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        image.getRaster().getDataBuffer().setElem(0, 0xFF000000);
+        assertTrue(AlphaAnalysis.hasAlpha(image));
+        for (int i = 0; i < 100; i++) {
+            image.getRaster().getDataBuffer().setElem(i, 0xFF000000);
+        }
+        // unchanged images are not scanned again
+        assertTrue(AlphaAnalysis.hasAlpha(image));
+        AlphaAnalysis.forget(image);
+        assertFalse(AlphaAnalysis.hasAlpha(image));
+    }
+}
@@ -0,0 +1,159 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.Batch;
+import cosc202.andie.BatchPipeline;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.actions.colour.*;
+import cosc202.andie.actions.filter.*;
+
+public class BatchTest {
+
+    /** The directories each test reads images from and writes them to. */
+    private File input, output;
+
+    @Before
+    public void setUp() throws IOException {
+        input = Files.createTempDirectory("batch-in").toFile();
+        output = Files.createTempDirectory("batch-out").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAll(input);
+        deleteAll(output);
+    }
+
+    /** Deletes a temporary directory and everything written in it. */
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static BufferedImage testImage(int seed) {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt() | 0xFF000000);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void testAppliesMacroToEveryImage() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            ImageIO.write(testImage(i), "png", new File(input, "image" + i + ".png"));
+        }
+        // Has an image extension but is not an image, so should fail on its own
+        Files.writeString(new File(input, "broken.png").toPath(), "not an image");
+        Files.writeString(new File(input, "notes.txt").toPath(), "skipped");
+
+        List<ImageOperation> macro = List.of(new InvertColour(), new MeanFilter(1));
+        List<Batch.Result> results = Batch.run(macro, input, output, null, 2, null);
+
+        assertEquals(6, results.size());
+        assertEquals("broken.png", results.get(0).input.getName());
+        assertFalse(results.get(0).succeeded());
+        for (int i = 0; i < 5; i++) {
+            Batch.Result result = results.get(i + 1);
+            assertTrue(result.succeeded());
+            BufferedImage expected = new MeanFilter(1).apply(new InvertColour().apply(testImage(i)));
+            BufferedImage actual = ImageIO.read(result.output);
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineReportsFailuresInOrder() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 12; i++) {
+            File file = new File(input, "image" + i + ".png");
+            ImageIO.write(testImage(i), "png", file);
+            files.add(file);
+        }
+
+        // Fails on every third image, with the smallest queues so stages keep blocking
+        ImageOperation failing = image -> {
+            if (image.getRGB(0, 0) == testImage(3).getRGB(0, 0) || image.getRGB(0, 0) == testImage(6).getRGB(0, 0)) {
+                throw new IllegalArgumentException("unlucky");
+            }
+            return image;
+        };
+        List<Batch.Result> results = new BatchPipeline(List.of(failing), output, "jpg", 2, 3, 2, 1, null).run(files);
+
+        assertEquals(files.size(), results.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i), results.get(i).input);
+            assertEquals(i != 3 && i != 6, results.get(i).succeeded());
+        }
+        assertTrue(new File(output, "image0.jpg").exists());
+        assertFalse(new File(output, "image3.jpg").exists());
+    }
+
+    @Test
+    public void testRejectsClashingOutputs() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (String name : new String[] { "a.png", "a.jpg", "b.png", "noextension" }) {
+            File file = new File(input, name);
+            BufferedImage image = testImage(name.length());
+            if (name.endsWith(".jpg")) {
+                // the jpeg writer does not take alpha
+                BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                rgb.getGraphics().drawImage(image, 0, 0, null);
+                image = rgb;
+            }
+            ImageIO.write(image, name.endsWith(".jpg") ? "jpg" : "png", file);
+            files.add(file);
+        }
+
+        List<Batch.Result> results = new BatchPipeline(List.of(new InvertColour()), output, "png", 1, 1, 1, 1, null).run(files);
+        assertTrue(results.get(0).succeeded());
+        // a.jpg would be written over a.png
+        assertFalse(results.get(1).succeeded());
+        assertTrue(results.get(2).succeeded());
+        assertTrue(results.get(3).succeeded());
+
+        // without a format the extension picks it, and there is none
+        results = new BatchPipeline(List.of(new InvertColour()), output, null, 1, 1, 1, 1, null).run(files);
+        assertTrue(results.get(0).succeeded());
+        assertTrue(results.get(1).succeeded());
+        assertFalse(results.get(3).succeeded());
+        // a, b and noextension as png from the first run, and a as jpg from the second
+        assertEquals(4, output.list().length);
+    }
+
+    @Test
+    public void testRevertStartsAgainFromTheImageRead() throws Exception {
+        File file = new File(input, "a.png");
+        ImageIO.write(testImage(8), "png", file);
+
+        List<ImageOperation> macro = List.of(new InvertColour(), new Revert(), new MeanFilter(1));
+        List<Batch.Result> results = new BatchPipeline(macro, output, null, 1, 1, 1, 1, null).run(List.of(file));
+        assertTrue(results.get(0).succeeded());
+        BufferedImage expected = new MeanFilter(1).apply(testImage(8));
+        BufferedImage actual = ImageIO.read(results.get(0).output);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.util.Random;
+
+import cosc202.andie.actions.filter.ConvOpEdge;
+
+public class ConvOpEdgeTest {
+
+    @Test
+    public void testMatchesConvolveOpInsideAndRenormalisesAtBorder() {
+        Random random = new Random(4);
+        float[][] kernels = {
+            // lopsided, so a kernel used the wrong way round gives a different result
+            { 1, 2, 0, 0, 3, 0, 0, 0, 6 },
+            // emboss and edge detection, whose weights cancel out
+            { 1, 0, 0, 0, 0, 0, 0, 0, -1 },
+            { -0.5f, 0, 0.5f, -1, 0, 1, -0.5f, 0, 0.5f },
+            // 5x5
+            { 1, 0, 0, 0, 2, 0, 3, 0, 0, 0, 0, 0, 4, 0, 0, 0, 0, 0, 5, 0, 6, 0, 0, 0, 7 },
+        };
+        BufferedImage image = new BufferedImage(29, 17, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        for (float[] data : kernels) {
+            int size = (int) Math.sqrt(data.length);
+            int radius = size / 2;
+            Kernel kernel = new Kernel(size, size, data);
+            BufferedImage result = new ConvOpEdge(kernel).filter(image);
+            BufferedImage expected = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null).filter(image, null);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    boolean inside = x >= radius && y >= radius
+                            && x < image.getWidth() - radius && y < image.getHeight() - radius;
+                    assertEquals(size + "x" + size + " at " + x + "," + y,
+                            inside ? expected.getRGB(x, y) : renormalised(image, data, size, x, y),
+                            result.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * The kernel flipped, as ConvolveOp uses it, over the pixels inside the image, divided
+     * by the sum of the weights used.
+     */
+    private static int renormalised(BufferedImage image, float[] kernel, int size, int x, int y) {
+        int radius = size / 2;
+        float[] sums = new float[4];
+        float norm = 0;
+        for (int ky = 0; ky < size; ky++) {
+            for (int kx = 0; kx < size; kx++) {
+                int i = x + kx - radius;
+                int j = y + ky - radius;
+                float weight = kernel[kernel.length - 1 - (ky * size + kx)];
+                if (i < 0 || j < 0 || i >= image.getWidth() || j >= image.getHeight() || weight == 0) {
+                    continue;
+                }
+                int argb = image.getRGB(i, j);
+                for (int c = 0; c < 4; c++) {
+                    sums[c] += ((argb >>> (24 - 8 * c)) & 0xFF) * weight;
+                }
+                norm += weight;
+            }
+        }
+        int argb = 0;
+        for (int c = 0; c < 4; c++) {
+            float value = sums[c] / norm;
+            // out of range and 0/0 clamp the same way as the filter
+            int channel = value < 0 ? 0 : value > 255 ? 255 : (int) value;
+            argb |= channel << (24 - 8 * c);
+        }
+        return argb;
+    }
+}
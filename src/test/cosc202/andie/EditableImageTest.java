@@ -0,0 +1,360 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+import cosc202.andie.EditableImage;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.actions.colour.*;
+
+public class EditableImageTest {
+
+    /** Where each test writes its images, and the ops files saved beside them. */
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("andie-image").toFile();
+        GatedReader.gate = new CountDownLatch(1);
+        IIORegistry.getDefaultInstance().registerServiceProvider(GatedReader.SPI);
+    }
+
+    @After
+    public void tearDown() {
+        // let the shared loader thread go even if a test failed part way
+        GatedReader.gate.countDown();
+        IIORegistry.getDefaultInstance().deregisterServiceProvider(GatedReader.SPI);
+        deleteAll(dir);
+    }
+
+    /** Deletes a temporary directory and everything written in it. */
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testOpenConvertsAndExportRestoresType() throws Exception {
+        Random random = new Random(20);
+        int[] types = { BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_INDEXED };
+        for (int type : types) {
+            BufferedImage image = new BufferedImage(24, 16, type);
+            for (int y = 0; y < 16; y++) {
+                for (int x = 0; x < 24; x++) {
+                    image.setRGB(x, y, random.nextInt() | 0xFF000000);
+                }
+            }
+            File file = new File(dir, "in" + type + ".png");
+            ImageIO.write(image, "png", file);
+            BufferedImage read = ImageIO.read(file);
+
+            EditableImage editable = new EditableImage();
+            editable.open(file.getPath());
+            BufferedImage current = editable.getCurrentImage();
+            assertEquals(BufferedImage.TYPE_INT_ARGB, current.getType());
+            assertArrayEquals(read.getRGB(0, 0, 24, 16, null, 0, 24), current.getRGB(0, 0, 24, 16, null, 0, 24));
+
+            editable.export(new File(dir, "out" + type).getPath(), "png");
+            BufferedImage written = ImageIO.read(new File(dir, "out" + type + ".png"));
+            assertArrayEquals(read.getRGB(0, 0, 24, 16, null, 0, 24), written.getRGB(0, 0, 24, 16, null, 0, 24));
+            if (type != BufferedImage.TYPE_BYTE_INDEXED) {
+                // opaque images go back to the layout they were read as
+                assertEquals(read.getType(), written.getType());
+            }
+        }
+    }
+
+    @Test
+    public void testLazyApplyRendersOnDemand() throws Exception {
+        File file = new File(dir, "lazy.png");
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        ImageIO.write(image, "png", file);
+        int[] calls = new int[1];
+        ImageOperation counted = new ImageOperation() {
+            public BufferedImage apply(BufferedImage input) {
+                calls[0]++;
+                return new InvertColour().apply(input);
+            }
+        };
+
+        EditableImage lazy = new EditableImage();
+        lazy.open(file.getPath());
+        lazy.setLazy(true);
+        lazy.apply(counted);
+        lazy.apply(new BrightnessAndContrast(10, 20));
+        lazy.apply(counted);
+        lazy.undo();
+        assertEquals(0, calls[0]);
+
+        EditableImage eager = new EditableImage();
+        eager.open(file.getPath());
+        eager.setLazy(false);
+        eager.apply(new InvertColour());
+        eager.apply(new BrightnessAndContrast(10, 20));
+        assertArrayEquals(eager.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20),
+                lazy.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void testFailingOperationIsDropped() throws Exception {
+        File file = new File(dir, "failing.png");
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        ImageIO.write(image, "png", file);
+        int[] calls = new int[1];
+        ImageOperation failing = new ImageOperation() {
+            public BufferedImage apply(BufferedImage input) {
+                calls[0]++;
+                throw new IllegalStateException("failing on purpose");
+            }
+        };
+        int[] inverted = new InvertColour().apply(ImageIO.read(file)).getRGB(0, 0, 20, 10, null, 0, 20);
+        int[] plain = ImageIO.read(file).getRGB(0, 0, 20, 10, null, 0, 20);
+
+        for (boolean lazy : new boolean[] { true, false }) {
+            calls[0] = 0;
+            EditableImage editable = new EditableImage();
+            editable.open(file.getPath());
+            editable.setLazy(lazy);
+            editable.apply(new InvertColour());
+            editable.apply(failing);
+            // rendering again, as every repaint does, does not run it again
+            assertArrayEquals(inverted, editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+            assertArrayEquals(inverted, editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+            assertEquals(1, calls[0]);
+
+            // it was dropped, so undo takes off the invert, and there is nothing to redo it
+            editable.undo();
+            assertArrayEquals(plain, editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+            editable.redo();
+            assertArrayEquals(inverted, editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+            editable.redo();
+            assertArrayEquals(inverted, editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20));
+            assertEquals(1, calls[0]);
+        }
+    }
+
+    @Test
+    public void testProgressiveOpenShowsPreviewFirst() throws Exception {
+        File file = GatedReader.create(dir, GatedReader.THUMBNAIL);
+        EditableImage editable = new EditableImage();
+        CountDownLatch shown = new CountDownLatch(1);
+        CountDownLatch ready = new CountDownLatch(1);
+        BufferedImage[] preview = new BufferedImage[1];
+        boolean[] loading = new boolean[1];
+        SwingUtilities.invokeAndWait(() -> {
+            editable.openProgressive(file.getPath(), shown::countDown, ready::countDown);
+            loading[0] = editable.isLoading();
+            preview[0] = editable.getLoadingPreview();
+        });
+        // only the size is read straight away, nothing is read on the event thread
+        assertTrue(loading[0]);
+        assertNull(preview[0]);
+        assertEquals(GatedReader.WIDTH, editable.getWidth());
+
+        // the thumbnail is shown while the whole image is still held back
+        assertTrue(shown.await(60, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+            loading[0] = editable.isLoading();
+            preview[0] = editable.getLoadingPreview();
+        });
+        assertTrue(loading[0]);
+        assertEquals(GatedReader.THUMBNAIL_WIDTH, preview[0].getWidth());
+
+        GatedReader.gate.countDown();
+        assertTrue(ready.await(60, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+            loading[0] = editable.isLoading();
+            preview[0] = editable.getCurrentImage();
+        });
+        assertFalse(loading[0]);
+        assertEquals(GatedReader.WIDTH, preview[0].getWidth());
+        assertEquals(0xFF123456, preview[0].getRGB(GatedReader.WIDTH - 1, GatedReader.HEIGHT - 1));
+    }
+
+    @Test
+    public void testFailedProgressiveOpenKeepsProject() throws Exception {
+        File small = new File(dir, "small.png");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB), "png", small);
+        EditableImage editable = new EditableImage();
+        editable.open(small.getPath());
+        editable.apply(new InvertColour());
+        editable.save();
+        int[] inverted = editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20);
+        File ops = new File(small.getPath() + ".ops");
+        byte[] saved = Files.readAllBytes(ops.toPath());
+
+        // big enough to open progressively, but the whole image cannot be read
+        File broken = GatedReader.create(dir, GatedReader.BROKEN);
+        CountDownLatch ready = new CountDownLatch(1);
+        boolean[] state = new boolean[2];
+        SwingUtilities.invokeAndWait(() -> {
+            editable.openProgressive(broken.getPath(), null, ready::countDown);
+            state[0] = editable.isLoading();
+            state[1] = editable.getLoadingPreview() == null;
+        });
+        // no thumbnail and not a JPEG, so only a placeholder is shown meanwhile
+        assertTrue(state[0]);
+        assertTrue(state[1]);
+        GatedReader.gate.countDown();
+        assertTrue(ready.await(60, TimeUnit.SECONDS));
+
+        int[][] current = new int[1][];
+        SwingUtilities.invokeAndWait(() -> {
+            state[0] = editable.isLoading();
+            state[1] = editable.hasImage();
+            current[0] = editable.getCurrentImage().getRGB(0, 0, 20, 10, null, 0, 20);
+            editable.save();
+        });
+        assertFalse(state[0]);
+        assertTrue(state[1]);
+        assertEquals(20, editable.getWidth());
+        assertArrayEquals(inverted, current[0]);
+        assertArrayEquals(saved, Files.readAllBytes(ops.toPath()));
+        editable.undo();
+        assertEquals(0, editable.getCurrentImage().getRGB(0, 0));
+    }
+
+    /**
+     * Reads made up images big enough to open progressively, holding back the whole
+     * image until {@link gate} is opened, so tests can see what is shown meanwhile.
+     */
+    private static class GatedReader extends ImageReader {
+        static final int WIDTH = 5000, HEIGHT = 4000, THUMBNAIL_WIDTH = 50;
+        static final byte THUMBNAIL = 'T', BROKEN = 'B';
+        static final byte[] MAGIC = "ANDIE-GATED".getBytes(StandardCharsets.US_ASCII);
+        static final ImageReaderSpi SPI = new ImageReaderSpi() {
+            {
+                names = new String[] { "gated" };
+                inputTypes = STANDARD_INPUT_TYPE;
+            }
+
+            public boolean canDecodeInput(Object source) throws IOException {
+                if (!(source instanceof ImageInputStream)) {
+                    return false;
+                }
+                ImageInputStream in = (ImageInputStream) source;
+                byte[] magic = new byte[MAGIC.length];
+                in.mark();
+                try {
+                    return in.read(magic) == magic.length && Arrays.equals(magic, MAGIC);
+                } finally {
+                    in.reset();
+                }
+            }
+
+            public ImageReader createReaderInstance(Object extension) {
+                return new GatedReader(this);
+            }
+
+            public String getDescription(Locale locale) {
+                return "gated test image";
+            }
+        };
+        static volatile CountDownLatch gate = new CountDownLatch(0);
+
+        GatedReader(ImageReaderSpi spi) {
+            super(spi);
+        }
+
+        /** Writes a made up image, with a thumbnail or one that cannot be read in full. */
+        static File create(File dir, byte kind) throws IOException {
+            File file = new File(dir, "gated" + (char) kind + ".gated");
+            byte[] bytes = Arrays.copyOf(MAGIC, MAGIC.length + 1);
+            bytes[MAGIC.length] = kind;
+            Files.write(file.toPath(), bytes);
+            return file;
+        }
+
+        private byte kind() throws IOException {
+            ImageInputStream in = (ImageInputStream) getInput();
+            in.seek(MAGIC.length);
+            return in.readByte();
+        }
+
+        public int getNumImages(boolean allowSearch) {
+            return 1;
+        }
+
+        public int getWidth(int imageIndex) {
+            return WIDTH;
+        }
+
+        public int getHeight(int imageIndex) {
+            return HEIGHT;
+        }
+
+        public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) {
+            return List.of(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB)).iterator();
+        }
+
+        public IIOMetadata getStreamMetadata() {
+            return null;
+        }
+
+        public IIOMetadata getImageMetadata(int imageIndex) {
+            return null;
+        }
+
+        public boolean readerSupportsThumbnails() {
+            return true;
+        }
+
+        public int getNumThumbnails(int imageIndex) throws IOException {
+            return kind() == THUMBNAIL ? 1 : 0;
+        }
+
+        public int getThumbnailWidth(int imageIndex, int thumbnailIndex) {
+            return THUMBNAIL_WIDTH;
+        }
+
+        public int getThumbnailHeight(int imageIndex, int thumbnailIndex) {
+            return THUMBNAIL_WIDTH * HEIGHT / WIDTH;
+        }
+
+        public BufferedImage readThumbnail(int imageIndex, int thumbnailIndex) {
+            return new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_WIDTH * HEIGHT / WIDTH, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+            byte kind = kind();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IIOException("stopped waiting for the gate", e);
+            }
+            if (kind == BROKEN) {
+                throw new IIOException("broken on purpose");
+            }
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(WIDTH - 1, HEIGHT - 1, 0xFF123456);
+            return image;
+        }
+    }
+}
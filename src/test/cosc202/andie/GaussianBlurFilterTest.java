@@ -2,10 +2,13 @@ package test.cosc202.andie;
 
 import org.junit.*;
 import static org.junit.Assert.*;
+import java.awt.Rectangle;
 import java.awt.image.*;
 import java.io.*;
+import java.util.Random;
 import javax.imageio.*;
 
+import cosc202.andie.actions.filter.ConvOpEdge;
 import cosc202.andie.actions.filter.GaussianBlurFilter;
 
 public class GaussianBlurFilterTest {
@@ -31,6 +34,80 @@ public class GaussianBlurFilterTest {
         assertTrue(outputFile.length() > 0);
     }
 
+    @Test
+    public void testSeparableMatchesFullKernel() {
+        // Random image with some transparency so every channel gets checked
+        BufferedImage testImage = new BufferedImage(97, 61, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(202);
+        for (int y = 0; y < testImage.getHeight(); y++) {
+            for (int x = 0; x < testImage.getWidth(); x++) {
+                testImage.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        for (int radius = 1; radius <= 10; radius++) {
+            // The full 2D kernel the filter used to be built from
+            int diameter = 2 * radius + 1;
+            double variance = radius / 3.0;
+            float[] kernel = new float[diameter * diameter];
+            float sum = 0;
+            for (int row = 0; row < diameter; row++) {
+                for (int col = 0; col < diameter; col++) {
+                    int x = col - radius;
+                    int y = row - radius;
+                    kernel[row * diameter + col] = (float) Math.exp(-(x * x + y * y) / (2 * variance * variance));
+                    sum += kernel[row * diameter + col];
+                }
+            }
+            for (int i = 0; i < kernel.length; i++) {
+                kernel[i] /= sum;
+            }
+
+            BufferedImage expected = new ConvOpEdge(new Kernel(diameter, diameter, kernel)).filter(testImage);
+            BufferedImage result = new GaussianBlurFilter(radius).apply(testImage);
+
+            // Each channel should be within 1 of the full convolution, edges included
+            for (int y = 0; y < testImage.getHeight(); y++) {
+                for (int x = 0; x < testImage.getWidth(); x++) {
+                    int e = expected.getRGB(x, y);
+                    int r = result.getRGB(x, y);
+                    for (int shift = 0; shift < 32; shift += 8) {
+                        int difference = Math.abs(((e >>> shift) & 0xFF) - ((r >>> shift) & 0xFF));
+                        assertTrue("radius " + radius + " at (" + x + ", " + y + ")", difference <= 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testApplyRegionMatchesWholeImage() {
+        BufferedImage testImage = new BufferedImage(80, 50, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(202);
+        for (int y = 0; y < testImage.getHeight(); y++) {
+            for (int x = 0; x < testImage.getWidth(); x++) {
+                testImage.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        GaussianBlurFilter filter = new GaussianBlurFilter(4);
+        assertEquals(4, filter.getHaloRadius());
+        BufferedImage whole = filter.apply(testImage);
+        // One rectangle in the middle, and one hanging off the bottom right corner
+        Rectangle[] regions = { new Rectangle(20, 10, 30, 25), new Rectangle(60, 40, 40, 40) };
+        for (Rectangle region : regions) {
+            BufferedImage part = filter.applyRegion(testImage, region);
+            Rectangle clipped = region.intersection(new Rectangle(80, 50));
+            assertEquals(clipped.width, part.getWidth());
+            assertEquals(clipped.height, part.getHeight());
+            for (int y = 0; y < part.getHeight(); y++) {
+                for (int x = 0; x < part.getWidth(); x++) {
+                    assertEquals(whole.getRGB(clipped.x + x, clipped.y + y), part.getRGB(x, y));
+                }
+            }
+        }
+    }
+
     // @Test
     // public void testPopulateKernalArray() {
     //     // Create a new Gaussian blur filter with radius 1
@@ -0,0 +1,65 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.util.Random;
+
+import cosc202.andie.actions.filter.MeanFilter;
+
+public class MeanFilterTest {
+
+    @Test
+    public void testMatchesBoxMean() {
+        Random random = new Random(2);
+        // the narrow images are smaller than the window, so every pixel is a border pixel
+        int[][] sizes = { { 37, 23 }, { 3, 11 }, { 1, 1 } };
+        for (int[] size : sizes) {
+            BufferedImage image = randomImage(random, size[0], size[1]);
+            for (int radius = 1; radius <= 4; radius++) {
+                BufferedImage result = new MeanFilter(radius).apply(image);
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        assertEquals("radius " + radius + " at " + x + "," + y,
+                                boxMean(image, x, y, radius), result.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The mean of each channel over the pixels of the window inside the image.
+     */
+    private static int boxMean(BufferedImage image, int x, int y, int radius) {
+        int[] sums = new int[4];
+        int count = 0;
+        for (int j = y - radius; j <= y + radius; j++) {
+            for (int i = x - radius; i <= x + radius; i++) {
+                if (i < 0 || j < 0 || i >= image.getWidth() || j >= image.getHeight()) {
+                    continue;
+                }
+                int argb = image.getRGB(i, j);
+                for (int c = 0; c < 4; c++) {
+                    sums[c] += (argb >>> (24 - 8 * c)) & 0xFF;
+                }
+                count++;
+            }
+        }
+        int argb = 0;
+        for (int c = 0; c < 4; c++) {
+            argb |= sums[c] / count << (24 - 8 * c);
+        }
+        return argb;
+    }
+
+    private static BufferedImage randomImage(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
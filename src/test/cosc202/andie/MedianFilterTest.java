@@ -0,0 +1,78 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import cosc202.andie.actions.filter.MedianFilter;
+
+public class MedianFilterTest {
+
+    @Test
+    public void testMatchesSortedMedian() {
+        Random random = new Random(3);
+        // the borders have even numbers of pixels, and the narrow images are all border
+        int[][] sizes = { { 37, 23 }, { 3, 11 }, { 1, 1 } };
+        for (int[] size : sizes) {
+            BufferedImage image = randomImage(random, size[0], size[1]);
+            for (int radius = 1; radius <= 4; radius++) {
+                BufferedImage result = new MedianFilter(radius).apply(image);
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        assertEquals("radius " + radius + " at " + x + "," + y,
+                                sortedMedian(image, x, y, radius), result.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The median of each channel over the pixels of the window inside the image, by
+     * sorting. With an even number of pixels it is the midpoint of the middle two, as
+     * the filter has always worked it out.
+     */
+    private static int sortedMedian(BufferedImage image, int x, int y, int radius) {
+        List<int[]> pixels = new ArrayList<int[]>();
+        for (int j = y - radius; j <= y + radius; j++) {
+            for (int i = x - radius; i <= x + radius; i++) {
+                if (i >= 0 && j >= 0 && i < image.getWidth() && j < image.getHeight()) {
+                    int argb = image.getRGB(i, j);
+                    pixels.add(new int[] { argb >>> 24, (argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF });
+                }
+            }
+        }
+        int count = pixels.size();
+        int argb = 0;
+        for (int c = 0; c < 4; c++) {
+            int[] values = new int[count];
+            for (int k = 0; k < count; k++) {
+                values[k] = pixels.get(k)[c];
+            }
+            Arrays.sort(values);
+            int median;
+            if (count % 2 == 0) {
+                // the midpoint of the values shifted to be signed, rounded towards 128
+                median = ((values[count / 2 - 1] - 128) + (values[count / 2] - 128)) / 2 + 128;
+            } else {
+                median = values[count / 2];
+            }
+            argb |= median << (24 - 8 * c);
+        }
+        return argb;
+    }
+
+    private static BufferedImage randomImage(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
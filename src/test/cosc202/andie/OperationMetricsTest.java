@@ -0,0 +1,60 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import cosc202.andie.OperationMetrics;
+import cosc202.andie.OperationStats;
+import cosc202.andie.actions.filter.MeanFilter;
+
+public class OperationMetricsTest {
+
+    @Before
+    public void setUp() {
+        OperationMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void testRecordsPerOperationClass() {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_ARGB);
+        MeanFilter filter = new MeanFilter(2);
+        for (int i = 0; i < 3; i++) {
+            OperationMetrics.Sample sample = OperationMetrics.start();
+            filter.apply(image);
+            sample.stop("apply", filter, image);
+        }
+        OperationMetrics.start().stop("open", null, null);
+
+        Map<String, OperationStats> stats = OperationMetrics.getInstance().getOperations();
+        assertEquals(2, stats.size());
+        OperationStats apply = stats.get("apply:MeanFilter");
+        assertEquals(3, apply.getCount());
+        assertEquals(64, apply.getLastWidth());
+        assertEquals(48, apply.getLastHeight());
+        assertEquals(3, java.util.Arrays.stream(apply.getLatencyHistogram()).sum());
+        assertTrue(apply.getMaxMillis() >= apply.getMeanMillis());
+        assertTrue(apply.getP99Millis() >= apply.getP50Millis());
+        assertEquals(4, OperationMetrics.getInstance().getCount());
+    }
+
+    @Test
+    public void testReadableOverJmx() throws Exception {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        OperationMetrics.start().stop("export", null, image);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OperationMetrics.NAME);
+        assertEquals(1L, server.getAttribute(name, "Count"));
+        TabularData operations = (TabularData) server.getAttribute(name, "Operations");
+        CompositeData export = (CompositeData) operations.get(new Object[] { "export" }).get("value");
+        assertEquals(1L, export.get("count"));
+        assertEquals(10, export.get("lastWidth"));
+    }
+}
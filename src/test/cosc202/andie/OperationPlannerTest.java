@@ -0,0 +1,77 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.util.*;
+
+import cosc202.andie.FusedPointOperation;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.OperationPlanner;
+import cosc202.andie.PointOperation;
+import cosc202.andie.actions.colour.*;
+import cosc202.andie.actions.filter.MeanFilter;
+
+public class OperationPlannerTest {
+
+    @Test
+    public void testPlanMatchesApplyingInOrder() {
+        Random random = new Random(5);
+        BufferedImage image = new BufferedImage(23, 19, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        for (int chain = 0; chain < 300; chain++) {
+            List<ImageOperation> ops = new ArrayList<ImageOperation>();
+            int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                switch (random.nextInt(4)) {
+                    case 0 -> ops.add(new InvertColour());
+                    case 1 -> ops.add(new ConvertToGrey());
+                    case 2 -> ops.add(new BrightnessAndContrast(random.nextInt(201) - 100, random.nextInt(201) - 100));
+                    // now and then something that cannot be fused, which splits the run
+                    default -> ops.add(random.nextInt(4) == 0 ? new MeanFilter(1)
+                            : new BrightnessAndContrast(random.nextInt(21) - 10, random.nextInt(21) - 10));
+                }
+            }
+
+            BufferedImage expected = image;
+            for (ImageOperation op : ops) {
+                expected = op instanceof PointOperation ? pixelByPixel((PointOperation) op, expected) : op.apply(expected);
+            }
+
+            List<ImageOperation> steps = OperationPlanner.plan(ops);
+            int size = 0;
+            BufferedImage planned = image;
+            for (ImageOperation step : steps) {
+                size += OperationPlanner.size(step);
+                planned = step.apply(planned);
+            }
+            assertEquals(ops.size(), size);
+            assertArrayEquals("chain " + ops, pixels(expected), pixels(planned));
+
+            // the same run fused in one go
+            if (ops.stream().allMatch(op -> op instanceof PointOperation)) {
+                List<PointOperation> run = new ArrayList<PointOperation>();
+                ops.forEach(op -> run.add((PointOperation) op));
+                assertArrayEquals("chain " + ops, pixels(expected), pixels(new FusedPointOperation(run).apply(image)));
+            }
+        }
+    }
+
+    private static BufferedImage pixelByPixel(PointOperation op, BufferedImage input) {
+        BufferedImage output = new BufferedImage(input.getWidth(), input.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < input.getHeight(); y++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                output.setRGB(x, y, op.applyPixel(input.getRGB(x, y)));
+            }
+        }
+        return output;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,134 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+import cosc202.andie.ImageOperation;
+import cosc202.andie.OpsFile;
+import cosc202.andie.actions.colour.*;
+import cosc202.andie.actions.filter.*;
+import cosc202.andie.actions.tool.*;
+
+public class OpsFileTest {
+
+    private static BufferedImage testImage() {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(202);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static Stack<ImageOperation> testOps() {
+        Stack<ImageOperation> ops = new Stack<ImageOperation>();
+        ops.add(new InvertColour());
+        ops.add(new BrightnessAndContrast(20, -10));
+        ops.add(new GaussianBlurFilter(2));
+        ops.add(new MedianFilter(1));
+        ops.add(new NegativeFilter(NegativeFilter.EDGE_VERTICAL));
+        ops.add(new RotateTool(270));
+        ops.add(new ImageFlip(false));
+        ops.add(new AlphaMask(testImage()));
+        Crop crop = new Crop();
+        crop.setStart(2, 3);
+        crop.setEnd(20, 25);
+        ops.add(crop);
+        RegionSelector region = new RegionSelector("oval", new Color(10, 20, 30, 40), true, 2);
+        region.setStart(1, 1);
+        region.setEnd(10, 8);
+        ops.add(region);
+        return ops;
+    }
+
+    private static BufferedImage applyAll(List<ImageOperation> ops) {
+        BufferedImage image = testImage();
+        for (ImageOperation op : ops) {
+            image = op.apply(image);
+        }
+        return image;
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Stack<ImageOperation> ops = testOps();
+        File file = File.createTempFile("opsfile", ".ops");
+        file.deleteOnExit();
+        OpsFile.write(file.getPath(), ops);
+
+        Stack<ImageOperation> read = OpsFile.read(file.getPath());
+        assertEquals(ops.size(), read.size());
+        for (int i = 0; i < ops.size(); i++) {
+            assertEquals(ops.get(i).getClass(), read.get(i).getClass());
+        }
+        assertSameImage(applyAll(ops), applyAll(read));
+    }
+
+    @Test
+    public void testReadsSerializedFiles() throws Exception {
+        Stack<ImageOperation> ops = testOps();
+        File file = File.createTempFile("opsfile", ".ops");
+        file.deleteOnExit();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(ops);
+        }
+
+        Stack<ImageOperation> read = OpsFile.read(file.getPath());
+        assertEquals(ops.size(), read.size());
+        assertSameImage(applyAll(ops), applyAll(read));
+    }
+
+    @Test
+    public void testSharesAlphaMasks() throws Exception {
+        Stack<ImageOperation> ops = new Stack<ImageOperation>();
+        ops.add(new AlphaMask(testImage()));
+        ops.add(new InvertColour());
+        ops.add(new AlphaMask(testImage()));
+        assertSame(((AlphaMask) ops.get(0)).getMaskData(), ((AlphaMask) ops.get(2)).getMaskData());
+
+        File file = File.createTempFile("opsfile", ".ops");
+        file.deleteOnExit();
+        OpsFile.write(file.getPath(), ops);
+        Stack<ImageOperation> read = OpsFile.read(file.getPath());
+        assertSame(((AlphaMask) ops.get(0)).getMaskData(), ((AlphaMask) read.get(0)).getMaskData());
+        assertSame(((AlphaMask) read.get(0)).getMaskData(), ((AlphaMask) read.get(2)).getMaskData());
+    }
+
+    @Test
+    public void testRejectsMaskNotMatchingItsHash() {
+        int[] grey = new int[40 * 30];
+        Arrays.fill(grey, 0xFF808080);
+        MaskData live = MaskData.intern(40, 30, testImage().getRGB(0, 0, 40, 30, null, 0, 40));
+        MaskData other = MaskData.intern(40, 30, grey);
+        // a file claiming the live mask's hash with other pixels must not get either mask
+        try {
+            MaskData.intern(live.getHash(), 40, 30, other.hasAlpha(), other.getCompressed());
+            fail("mask with the wrong content was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            MaskData.intern(other.getHash(), 40, 30, other.hasAlpha(), new byte[] { 1, 2, 3 });
+            fail("corrupt mask was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+        assertSame(live, MaskData.lookup(live.getHash()));
+    }
+}
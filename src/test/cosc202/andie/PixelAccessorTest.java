@@ -0,0 +1,69 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.util.Random;
+
+import cosc202.andie.PixelAccessor;
+
+public class PixelAccessorTest {
+
+    private static final int[] TYPES = {
+        BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+        BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_565_RGB
+    };
+
+    @Test
+    public void testMatchesGetAndSetRGB() {
+        Random random = new Random(202);
+        for (int type : TYPES) {
+            BufferedImage image = new BufferedImage(23, 17, type);
+            BufferedImage expected = new BufferedImage(23, 17, type);
+            PixelAccessor pixels = PixelAccessor.of(image);
+            for (int y = 0; y < 17; y++) {
+                for (int x = 0; x < 23; x++) {
+                    // include greys, which the grey accessor looks up
+                    int argb = random.nextBoolean() ? random.nextInt() : 0xFF000000 | random.nextInt(256) * 0x010101;
+                    pixels.set(x, y, argb);
+                    expected.setRGB(x, y, argb);
+                }
+            }
+            for (int y = 0; y < 17; y++) {
+                for (int x = 0; x < 23; x++) {
+                    assertEquals("type " + type, expected.getRGB(x, y), image.getRGB(x, y));
+                    assertEquals("type " + type, image.getRGB(x, y), pixels.get(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSubimage() {
+        Random random = new Random(202);
+        for (int type : TYPES) {
+            BufferedImage image = new BufferedImage(30, 20, type);
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 30; x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            BufferedImage sub = image.getSubimage(4, 5, 12, 9);
+            PixelAccessor pixels = PixelAccessor.of(sub);
+            assertArrayEquals(sub.getRGB(0, 0, 12, 9, null, 0, 12), pixels.getPixels(0, 0, 12, 9, null));
+
+            // writing to the sub-image leaves the rest of the image alone
+            int[] before = image.getRGB(0, 0, 30, 20, null, 0, 30);
+            pixels.setPixels(0, 0, 12, 9, new int[12 * 9]);
+            int[] after = image.getRGB(0, 0, 30, 20, null, 0, 30);
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 30; x++) {
+                    boolean inside = x >= 4 && x < 16 && y >= 5 && y < 14;
+                    if (!inside) {
+                        assertEquals(before[y * 30 + x], after[y * 30 + x]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import cosc202.andie.EditableImage;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.OperationMetrics;
+import cosc202.andie.OperationStats;
+import cosc202.andie.PixelArrays;
+import cosc202.andie.actions.colour.InvertColour;
+
+public class PreviewExecutorTest {
+
+    private File file;
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /** Waits until released, then stops if it was interrupted meanwhile. */
+    private static class Blocking implements ImageOperation {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean interrupted;
+        final boolean check;
+
+        Blocking(boolean check) {
+            this.check = check;
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            try {
+                started.countDown();
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (check) {
+                    PixelArrays.checkInterrupted();
+                }
+                return input;
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyNewestPreviewIsShown() throws Exception {
+        file = Files.createTempFile("andie-preview", ".png").toFile();
+        BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(3, 4, 0xFF102030);
+        ImageIO.write(image, "png", file);
+        EditableImage editable = new EditableImage();
+        editable.open(file.getPath());
+        int[] inverted = new InvertColour().apply(ImageIO.read(file)).getRGB(0, 0, 20, 10, null, 0, 20);
+
+        OperationMetrics.getInstance().reset();
+        AtomicInteger staleCalls = new AtomicInteger();
+        ImageOperation stale = input -> {
+            staleCalls.incrementAndGet();
+            return input;
+        };
+        AtomicInteger[] published = { new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+        CountDownLatch newest = new CountDownLatch(1);
+
+        Blocking first = new Blocking(true);
+        SwingUtilities.invokeAndWait(() -> editable.applyTempAsync(first, 1.0, null, published[0]::incrementAndGet));
+        assertTrue(first.started.await(10, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+            // the first is interrupted, the second is stale before it gets to start
+            editable.applyTempAsync(stale, 1.0, null, published[1]::incrementAndGet);
+            editable.applyTempAsync(new InvertColour(), 1.0, null, () -> {
+                published[2].incrementAndGet();
+                newest.countDown();
+            });
+        });
+        first.release.countDown();
+        assertTrue(newest.await(10, TimeUnit.SECONDS));
+
+        assertTrue(first.interrupted);
+        assertEquals(0, staleCalls.get());
+        assertEquals(0, published[0].get());
+        assertEquals(0, published[1].get());
+        assertEquals(1, published[2].get());
+        int[][] shown = new int[1][];
+        SwingUtilities.invokeAndWait(() -> shown[0] = editable.getDisplayImage().getRGB(0, 0, 20, 10, null, 0, 20));
+        assertArrayEquals(inverted, shown[0]);
+        // timed on the worker, the interrupted render never finished
+        OperationStats rendered = OperationMetrics.getInstance().getOperations().get("preview:InvertColour");
+        assertEquals(1, rendered.getCount());
+        assertEquals(20, rendered.getLastWidth());
+
+        // finishing after a cancel, without checking for the interrupt, is not shown either
+        Blocking cancelled = new Blocking(false);
+        AtomicInteger afterCancel = new AtomicInteger();
+        SwingUtilities.invokeAndWait(() -> editable.applyTempAsync(cancelled, 1.0, null, afterCancel::incrementAndGet));
+        assertTrue(cancelled.started.await(10, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(editable::revert);
+        cancelled.release.countDown();
+        assertTrue(cancelled.done.await(10, TimeUnit.SECONDS));
+        // anything it queued on the event thread has run by the second of these
+        SwingUtilities.invokeAndWait(() -> { });
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(0, afterCancel.get());
+    }
+}
@@ -0,0 +1,125 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.EditableImage;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.OpsFile;
+import cosc202.andie.RenderCache;
+import cosc202.andie.actions.colour.*;
+
+public class RenderCacheTest {
+
+    /** Where each test writes its image, and the ops and render files saved beside it. */
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("andie-render").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAll(dir);
+    }
+
+    /** Deletes a temporary directory and everything written in it. */
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Inverts, counting how many times it is run. Has no encoder, so it is stored serialised. */
+    public static class CountedInvert implements ImageOperation, Serializable {
+        private static final long serialVersionUID = 1L;
+        static int calls;
+
+        public BufferedImage apply(BufferedImage input) {
+            calls++;
+            return new InvertColour().apply(input);
+        }
+    }
+
+    /** Always fails, and has no encoder either. */
+    public static class Failing implements ImageOperation, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public BufferedImage apply(BufferedImage input) {
+            throw new IllegalStateException("failing on purpose");
+        }
+    }
+
+    @Test
+    public void testSaveLeavesOutFailingOperations() throws Exception {
+        File file = new File(dir, "render.png");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB), "png", file);
+
+        EditableImage editable = new EditableImage();
+        editable.open(file.getPath());
+        editable.setLazy(true);
+        editable.apply(new InvertColour());
+        editable.apply(new Failing());
+        // nothing has been rendered yet, so the failure is found while saving
+        editable.save();
+
+        List<ImageOperation> saved = OpsFile.read(file.getPath() + ".ops");
+        assertEquals(1, saved.size());
+        assertTrue(saved.get(0) instanceof InvertColour);
+    }
+
+    @Test
+    public void testReopenUsesSavedRender() throws Exception {
+        File file = new File(dir, "render.png");
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(24);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ImageIO.write(image, "png", file);
+
+        EditableImage editable = new EditableImage();
+        editable.open(file.getPath());
+        for (int i = 0; i < 9; i++) {
+            editable.apply(i % 3 == 0 ? new CountedInvert() : new BrightnessAndContrast(i, -i));
+        }
+        editable.apply(new CountedInvert());
+        int[] expected = editable.getCurrentImage().getRGB(0, 0, 40, 30, null, 0, 40);
+        editable.save();
+
+        String ops = file.getPath() + ".ops";
+        List<RenderCache.Entry> entries = RenderCache.read(file.getPath(), ops);
+        assertFalse(entries.isEmpty());
+        assertEquals(10, entries.get(0).depth);
+        assertArrayEquals(expected, entries.get(0).image.getRGB(0, 0, 40, 30, null, 0, 40));
+
+        CountedInvert.calls = 0;
+        EditableImage reopened = new EditableImage();
+        reopened.open(file.getPath());
+        assertArrayEquals(expected, reopened.getCurrentImage().getRGB(0, 0, 40, 30, null, 0, 40));
+        // shown straight from the saved render, nothing was replayed
+        assertEquals(0, CountedInvert.calls);
+
+        // a different ops file makes the saved images stale
+        List<ImageOperation> fewer = OpsFile.read(ops).subList(0, 5);
+        OpsFile.write(ops, fewer);
+        assertTrue(RenderCache.read(file.getPath(), ops).isEmpty());
+        EditableImage replayed = new EditableImage();
+        replayed.open(file.getPath());
+        replayed.getCurrentImage();
+        assertEquals(2, CountedInvert.calls);
+    }
+}
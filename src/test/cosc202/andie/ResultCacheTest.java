@@ -0,0 +1,41 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+
+import cosc202.andie.ResultCache;
+import cosc202.andie.actions.colour.*;
+
+public class ResultCacheTest {
+
+    @Test
+    public void testReapplyIsAHit() {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        ResultCache cache = new ResultCache(1 << 20);
+        BufferedImage first = cache.apply(new BrightnessAndContrast(10, 20), image);
+        assertSame(first, cache.apply(new BrightnessAndContrast(10, 20), image));
+        // the same pixels in another image are the same input
+        BufferedImage copy = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        assertSame(first, cache.apply(new BrightnessAndContrast(10, 20), copy));
+        assertNotSame(first, cache.apply(new BrightnessAndContrast(10, 30), image));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsOverBudget() {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        // room for two 4KB results
+        ResultCache cache = new ResultCache(9 * 1024);
+        cache.apply(new BrightnessAndContrast(1, 0), image);
+        cache.apply(new BrightnessAndContrast(2, 0), image);
+        cache.apply(new BrightnessAndContrast(3, 0), image);
+        assertEquals(2, cache.size());
+        assertTrue(cache.getUsed() <= cache.getBudget());
+        cache.apply(new BrightnessAndContrast(3, 0), image);
+        assertEquals(1, cache.getHits());
+        cache.apply(new BrightnessAndContrast(1, 0), image);
+        assertEquals(1, cache.getHits());
+    }
+}
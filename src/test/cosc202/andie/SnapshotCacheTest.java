@@ -0,0 +1,53 @@
+package test.cosc202.andie;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.awt.image.*;
+
+import cosc202.andie.SnapshotCache;
+
+public class SnapshotCacheTest {
+
+    private static BufferedImage image() {
+        return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Test
+    public void testStaysWithinBudget() {
+        long size = SnapshotCache.sizeOf(image());
+        SnapshotCache cache = new SnapshotCache(3 * size, 4);
+        for (int depth = 1; depth <= 10; depth++) {
+            cache.put(depth, image(), 1);
+            assertTrue(cache.getUsed() <= cache.getBudget());
+        }
+        assertEquals(3, cache.size());
+        // the newest snapshot is never the one evicted
+        assertNotNull(cache.get(10));
+    }
+
+    @Test
+    public void testKeepsCheckpoints() {
+        long size = SnapshotCache.sizeOf(image());
+        SnapshotCache cache = new SnapshotCache(3 * size, 4);
+        for (int depth = 1; depth <= 9; depth++) {
+            cache.put(depth, image(), 1);
+        }
+        assertNotNull(cache.get(4));
+        assertNotNull(cache.get(8));
+        assertEquals(8, cache.floor(8));
+        assertEquals(4, cache.floor(7));
+    }
+
+    @Test
+    public void testTruncate() {
+        SnapshotCache cache = new SnapshotCache(Long.MAX_VALUE, 4);
+        for (int depth = 1; depth <= 6; depth++) {
+            cache.put(depth, image(), 1);
+        }
+        cache.truncate(3);
+        assertEquals(3, cache.size());
+        assertNull(cache.get(4));
+        assertEquals(3, cache.floor(6));
+        assertEquals(3 * SnapshotCache.sizeOf(image()), cache.getUsed());
+    }
+}
@@ -0,0 +1,429 @@
+package test.cosc202.andie.bench;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.EditableImage;
+import cosc202.andie.FusedPointOperation;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.OpsFile;
+import cosc202.andie.PointOperation;
+import cosc202.andie.actions.colour.*;
+import cosc202.andie.actions.filter.*;
+import cosc202.andie.actions.tool.*;
+
+/**
+ * <p>
+ * Benchmarks every image operation and the main {@link EditableImage} paths.
+ * </p>
+ *
+ * <p>
+ * Each benchmark runs a few warmup iterations, so the JIT has compiled the hot loops,
+ * then a few measured ones. An iteration calls the benchmark repeatedly for a fixed
+ * time and records the average time per call. Results are folded into a sink so the
+ * JIT cannot drop the work. The operations are run over every combination of image
+ * size, image type and, for the neighbourhood filters, radius. Images come from
+ * {@link SyntheticImages}, so different builds are measured on the same pixels.
+ * </p>
+ *
+ * <pre>
+ * java -Djava.awt.headless=true test.cosc202.andie.bench.Benchmarks [regex]
+ *     [--sizes 512,2048] [--types INT_ARGB,INT_RGB,3BYTE_BGR,4BYTE_ABGR,BYTE_GRAY]
+ *     [--radii 1,4,10] [--warmup 2] [--iterations 5] [--time ms] [--json file]
+ * </pre>
+ *
+ * <p>
+ * Only benchmarks whose name contains a match for the regex are run. With
+ * {@code --json} the results are also written in the layout JMH uses for its JSON
+ * results, so the usual JMH result viewers can compare two builds. The score error
+ * is the standard deviation of the measured iterations.
+ * </p>
+ *
+ * <p>
+ * {@link Revert} is not benchmarked, as it reads the original image from the editor's
+ * window.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @author agent
+ * @version 1.0
+ */
+public final class Benchmarks {
+
+    /** One call of a benchmark, returning something to sink. */
+    private interface Body {
+        Object run() throws Exception;
+    }
+
+    /** Prepares a benchmark's state, once per benchmark. */
+    private interface Setup {
+        Body create() throws Exception;
+    }
+
+    /** A benchmark with its parameters. */
+    private static final class Case {
+        final String name;
+        final Map<String, String> params;
+        final Setup setup;
+
+        Case(String name, Map<String, String> params, Setup setup) {
+            this.name = name;
+            this.params = params;
+            this.setup = setup;
+        }
+    }
+
+    /** Where results go so the work is not optimised away. */
+    private static volatile int sink;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args An optional name regex and the options described above
+     * @throws IOException If the JSON results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Pattern include = Pattern.compile("");
+        List<Integer> sizes = List.of(512, 2048);
+        List<String> types = List.of("INT_ARGB", "INT_RGB", "3BYTE_BGR", "4BYTE_ABGR", "BYTE_GRAY");
+        List<Integer> radii = List.of(1, 4, 10);
+        int warmup = 2;
+        int iterations = 5;
+        long time = 500;
+        File json = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = ints(args[++i]);
+                case "--types" -> types = List.of(args[++i].split(","));
+                case "--radii" -> radii = ints(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--time" -> time = Long.parseLong(args[++i]);
+                case "--json" -> json = new File(args[++i]);
+                default -> include = Pattern.compile(args[i]);
+            }
+        }
+
+        List<Case> cases = new ArrayList<Case>();
+        addOperations(cases, sizes, types, radii);
+        addEditableImage(cases, sizes);
+
+        StringBuilder results = new StringBuilder("[");
+        for (Case c : cases) {
+            if (!include.matcher(c.name).find()) {
+                continue;
+            }
+            double[] samples;
+            try {
+                samples = measure(c, warmup, iterations, time * 1_000_000);
+            } catch (Exception e) {
+                System.out.printf(Locale.ROOT, "%-44s %-36s FAILED %s%n", c.name, c.params, e);
+                continue;
+            }
+            double mean = Arrays.stream(samples).average().orElse(0);
+            double deviation = Math.sqrt(Arrays.stream(samples).map(s -> (s - mean) * (s - mean)).sum()
+                    / Math.max(1, samples.length - 1));
+            System.out.printf(Locale.ROOT, "%-44s %-36s %10.3f +- %8.3f ms/op%n", c.name, c.params, mean, deviation);
+            if (results.length() > 1) {
+                results.append(',');
+            }
+            results.append(toJson(c, samples, mean, deviation, warmup, time));
+        }
+        results.append("\n]\n");
+
+        if (json != null) {
+            try (PrintWriter out = new PrintWriter(json, "UTF-8")) {
+                out.print(results);
+            }
+        }
+    }
+
+    /**
+     * Adds a benchmark for every operation on every size and type of image.
+     *
+     * @param cases where to add them
+     * @param sizes image widths, the height is three quarters of the width
+     * @param types image type names
+     * @param radii radii for the neighbourhood filters
+     */
+    private static void addOperations(List<Case> cases, List<Integer> sizes, List<String> types, List<Integer> radii) {
+        for (int size : sizes) {
+            for (String type : types) {
+                Map<String, ImageOperation> ops = new LinkedHashMap<String, ImageOperation>();
+                ops.put("InvertColour", new InvertColour());
+                ops.put("ConvertToGrey", new ConvertToGrey());
+                ops.put("BrightnessAndContrast", new BrightnessAndContrast(20, 30));
+                ops.put("FusedPointOperation", new FusedPointOperation(List.<PointOperation>of(
+                        new InvertColour(), new ConvertToGrey(), new BrightnessAndContrast(20, 30))));
+                ops.put("AlphaMask", new AlphaMask(SyntheticImages.photo(size / 2, size * 3 / 8, BufferedImage.TYPE_BYTE_GRAY, 7)));
+                ops.put("NegativeFilter.emboss", new NegativeFilter(NegativeFilter.EMBOSS_LEFT));
+                ops.put("NegativeFilter.edge", new NegativeFilter(NegativeFilter.EDGE_VERTICAL));
+                ops.put("SharpenFilter", new SharpenFilter());
+                ops.put("SoftBlurFilter", new SoftBlurFilter());
+                ops.put("ImageFlip", new ImageFlip(true));
+                ops.put("ResizeTool", new ResizeTool(150));
+                ops.put("RotateTool", new RotateTool(90));
+                Crop crop = new Crop();
+                crop.setStart(size / 4, size / 8);
+                crop.setEnd(size * 3 / 4, size * 5 / 8);
+                ops.put("Crop", crop);
+                RegionSelector region = new RegionSelector("oval", new Color(200, 40, 40, 128), true, 3);
+                region.setStart(size / 4, size / 8);
+                region.setEnd(size * 3 / 4, size * 5 / 8);
+                ops.put("RegionSelector", region);
+                for (Map.Entry<String, ImageOperation> op : ops.entrySet()) {
+                    cases.add(operation(op.getKey(), op.getValue(), size, type, null));
+                }
+
+                for (int radius : radii) {
+                    cases.add(operation("GaussianBlurFilter", new GaussianBlurFilter(radius), size, type, radius));
+                    cases.add(operation("MeanFilter", new MeanFilter(radius), size, type, radius));
+                    cases.add(operation("MedianFilter", new MedianFilter(radius), size, type, radius));
+                    // the general convolution, with a box kernel of the same size
+                    int diameter = 2 * radius + 1;
+                    float[] box = new float[diameter * diameter];
+                    Arrays.fill(box, 1f / box.length);
+                    ConvOpEdge convolution = new ConvOpEdge(new Kernel(diameter, diameter, box));
+                    cases.add(operation("ConvOpEdge", convolution::filter, size, type, radius));
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a benchmark of one operation on one image.
+     *
+     * @param name   the benchmark name
+     * @param op     the operation
+     * @param size   the image width
+     * @param type   the image type name
+     * @param radius the radius, or null if the operation has none
+     * @return the benchmark
+     */
+    private static Case operation(String name, ImageOperation op, int size, String type, Integer radius) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("size", size + "x" + size * 3 / 4);
+        params.put("type", type);
+        if (radius != null) {
+            params.put("radius", radius.toString());
+        }
+        return new Case("op." + name, params, () -> {
+            BufferedImage image = SyntheticImages.photo(size, size * 3 / 4, SyntheticImages.type(type), 202);
+            return () -> op.apply(image);
+        });
+    }
+
+    /**
+     * Adds benchmarks of the editor's apply, undo, redo, refresh, open and export.
+     *
+     * @param cases where to add them
+     * @param sizes image widths, the height is three quarters of the width
+     */
+    private static void addEditableImage(List<Case> cases, List<Integer> sizes) {
+        List<ImageOperation> history = List.of(new GaussianBlurFilter(2), new InvertColour(),
+                new BrightnessAndContrast(10, 10), new SharpenFilter());
+        for (int size : sizes) {
+            Map<String, String> params = new LinkedHashMap<String, String>();
+            params.put("size", size + "x" + size * 3 / 4);
+
+            cases.add(new Case("EditableImage.apply", params, () -> {
+                EditableImage image = open(size, null);
+                return () -> {
+                    image.apply(new InvertColour());
+                    return image.getCurrentImage();
+                };
+            }));
+            // every step is still snapshotted, so this is the cost of the snapshot lookups
+            cases.add(new Case("EditableImage.undoRedo", params, () -> {
+                EditableImage image = open(size, null);
+                for (ImageOperation op : history) {
+                    image.apply(op);
+                }
+                return () -> {
+                    image.undo();
+                    image.redo();
+                    return image.getCurrentImage();
+                };
+            }));
+            cases.add(new Case("EditableImage.open", params, () -> {
+                File file = write(size, null);
+                return () -> {
+                    EditableImage image = new EditableImage();
+                    image.open(file.getPath());
+                    return image.getCurrentImage();
+                };
+            }));
+            // opening an image with an ops file replays the operations to refresh it
+            cases.add(new Case("EditableImage.openRefresh", params, () -> {
+                File file = write(size, history);
+                return () -> {
+                    EditableImage image = new EditableImage();
+                    image.open(file.getPath());
+                    return image.getCurrentImage();
+                };
+            }));
+            for (String extension : List.of("png", "jpg")) {
+                cases.add(new Case("EditableImage.export." + extension, params, () -> {
+                    EditableImage image = open(size, null);
+                    File out = new File(Files.createTempDirectory("bench").toFile(), "export");
+                    out.getParentFile().deleteOnExit();
+                    return () -> {
+                        image.export(out.getPath(), extension);
+                        new File(out.getPath() + "." + extension).deleteOnExit();
+                        return image.getCurrentImage();
+                    };
+                }));
+            }
+        }
+    }
+
+    /**
+     * Writes a synthetic image, and optionally its ops file, to a temporary file.
+     *
+     * @param size the image width
+     * @param ops  the operations to save alongside, or null
+     * @return the image file
+     * @throws IOException if it cannot be written
+     */
+    private static File write(int size, List<ImageOperation> ops) throws IOException {
+        File file = File.createTempFile("bench", ".png");
+        file.deleteOnExit();
+        ImageIO.write(SyntheticImages.photo(size, size * 3 / 4, BufferedImage.TYPE_INT_RGB, 202), "png", file);
+        if (ops != null) {
+            OpsFile.write(file.getPath() + ".ops", ops);
+            new File(file.getPath() + ".ops").deleteOnExit();
+        }
+        return file;
+    }
+
+    /**
+     * Opens a synthetic image in the editor.
+     *
+     * @param size the image width
+     * @param ops  the operations to save alongside, or null
+     * @return the open image
+     * @throws IOException if it cannot be written
+     */
+    private static EditableImage open(int size, List<ImageOperation> ops) throws IOException {
+        EditableImage image = new EditableImage();
+        image.open(write(size, ops).getPath());
+        return image;
+    }
+
+    /**
+     * Runs the warmup and measured iterations of a benchmark.
+     *
+     * @param c              the benchmark
+     * @param warmup         the number of warmup iterations
+     * @param iterations     the number of measured iterations
+     * @param iterationNanos how long each iteration runs for
+     * @return the milliseconds per call in each measured iteration
+     * @throws Exception if the benchmark fails
+     */
+    private static double[] measure(Case c, int warmup, int iterations, long iterationNanos) throws Exception {
+        Body body = c.setup.create();
+        System.gc();
+        for (int i = 0; i < warmup; i++) {
+            iterate(body, iterationNanos);
+        }
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            samples[i] = iterate(body, iterationNanos);
+        }
+        return samples;
+    }
+
+    /**
+     * Calls a benchmark repeatedly for at least the given time.
+     *
+     * @param body           the benchmark
+     * @param iterationNanos how long to run for
+     * @return the average milliseconds per call
+     * @throws Exception if the benchmark fails
+     */
+    private static double iterate(Body body, long iterationNanos) throws Exception {
+        long calls = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            consume(body.run());
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return elapsed / 1e6 / calls;
+    }
+
+    private static void consume(Object result) {
+        if (result instanceof BufferedImage) {
+            BufferedImage image = (BufferedImage) result;
+            sink ^= image.getRGB(image.getWidth() / 2, image.getHeight() / 2);
+        } else {
+            sink ^= System.identityHashCode(result);
+        }
+    }
+
+    /**
+     * Formats one result like an entry of JMH's JSON output.
+     *
+     * @param c         the benchmark
+     * @param samples   the measured iterations, in ms per call
+     * @param mean      the mean of the samples
+     * @param deviation the standard deviation of the samples
+     * @param warmup    the number of warmup iterations
+     * @param time      the length of each iteration, in ms
+     * @return the JSON object
+     */
+    private static String toJson(Case c, double[] samples, double mean, double deviation, int warmup, long time) {
+        StringBuilder json = new StringBuilder();
+        json.append("\n  {\n    \"benchmark\": \"").append(c.name).append("\",\n");
+        json.append("    \"mode\": \"avgt\",\n    \"threads\": 1,\n    \"forks\": 1,\n");
+        json.append("    \"jdkVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("    \"vmName\": \"").append(System.getProperty("java.vm.name")).append("\",\n");
+        json.append("    \"warmupIterations\": ").append(warmup).append(",\n");
+        json.append("    \"warmupTime\": \"").append(time).append(" ms\",\n");
+        json.append("    \"measurementIterations\": ").append(samples.length).append(",\n");
+        json.append("    \"measurementTime\": \"").append(time).append(" ms\",\n");
+        json.append("    \"params\": {");
+        String separator = "";
+        for (Map.Entry<String, String> param : c.params.entrySet()) {
+            json.append(separator).append('"').append(param.getKey()).append("\": \"").append(param.getValue()).append('"');
+            separator = ", ";
+        }
+        json.append("},\n    \"primaryMetric\": {\n");
+        json.append(String.format(Locale.ROOT, "      \"score\": %.6f,\n      \"scoreError\": %.6f,\n", mean, deviation));
+        json.append("      \"scoreUnit\": \"ms/op\",\n      \"rawData\": [[");
+        for (int i = 0; i < samples.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.6f", samples[i]));
+        }
+        json.append("]]\n    }\n  }");
+        return json.toString();
+    }
+
+    private static List<Integer> ints(String list) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (String value : list.split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+}